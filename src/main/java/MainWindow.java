@@ -1,6 +1,10 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 import barry.Barry;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
+import javafx.scene.control.ListView;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
@@ -24,8 +28,11 @@ public class MainWindow extends AnchorPane {
     private TextField userInput; // Input field where the user types their commands.
     @FXML
     private Button sendButton; // Button to send the user's command.
+    @FXML
+    private ListView<String> taskPanel; // Side panel that always shows the current tasks.
 
     private Barry barry; // Instance of the Barry class, which handles logic related to task management.
+    private final StringBuilder responseBuffer = new StringBuilder(); // Reused for every response.
 
     // Image representing the user and Barry in the dialog box.
     private Image userImage = new Image(this.getClass().getResourceAsStream("/images/pfp.png"));
@@ -53,6 +60,8 @@ public class MainWindow extends AnchorPane {
      */
     public void setBarry(Barry b) {
         this.barry = b;
+        // The panel follows each change to the task list instead of being redrawn from a list command
+        taskPanel.setItems(new TaskListView(b.getTaskList()));
     }
 
     /**
@@ -68,8 +77,14 @@ public class MainWindow extends AnchorPane {
         // Get the user's input from the text field.
         String input = userInput.getText();
 
-        // Generate a response from Barry based on the user's input.
-        String response = this.barry.getResponse(input);
+        // Generate a response from Barry based on the user's input, reusing the buffer of the last response.
+        responseBuffer.setLength(0);
+        try {
+            this.barry.getResponse(input, responseBuffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // A StringBuilder is never closed or full
+        }
+        String response = responseBuffer.toString();
 
         // Add the user's dialog and Barry's response as dialog boxes to the
         // dialogContainer.
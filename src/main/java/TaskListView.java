@@ -0,0 +1,123 @@
+import java.util.ArrayDeque;
+
+import barry.BarryException;
+import barry.TaskList;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+/**
+ * An observable view of a TaskList for the task panel, which holds no copy of the tasks. Each change to the
+ * list arrives as an insertion, removal or update at one position, and is passed on to the ListView as a change
+ * to that one row, so applying it costs the same however many tasks there are. Rows are rendered from the
+ * TaskList only when the ListView asks for them, which it does for the rows on screen.
+ *
+ * Tasks can change on other threads, such as when a replica applies changes, so changes are applied on the
+ * JavaFX thread, in the order they were made. The view keeps its own size, which moves only as changes are
+ * applied, so the ListView never sees a size that disagrees with the changes it was told about. Until a change
+ * is applied, rows are mapped through it to their position in the TaskList, so no row shows its neighbour.
+ */
+public class TaskListView extends ObservableListBase<String> implements TaskList.PositionListener {
+    private final TaskList tasks;
+    private int size;
+    // Insertions and removals made to the TaskList but not yet applied here, oldest first. Guarded by tasks.
+    private final ArrayDeque<PendingChange> pending;
+
+    /**
+     * Constructs a TaskListView that follows the given task list from now on.
+     *
+     * @param tasks The task list to show.
+     */
+    public TaskListView(TaskList tasks) {
+        this.tasks = tasks;
+        this.pending = new ArrayDeque<>();
+        synchronized (tasks) {
+            this.size = tasks.size();
+            tasks.addPositionListener(this);
+        }
+    }
+
+    @Override
+    public String get(int index) {
+        synchronized (tasks) {
+            int position = index;
+            for (PendingChange change : pending) {
+                if (change.isInsertion && position >= change.position) {
+                    position++;
+                } else if (!change.isInsertion && position > change.position) {
+                    position--;
+                } else if (!change.isInsertion && position == change.position) {
+                    return ""; // The task is gone from the list, and the row goes once the removal is applied
+                }
+            }
+            try {
+                return (index + 1) + ". " + tasks.describeTask(position);
+            } catch (BarryException e) {
+                return "";
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void taskInserted(int position) {
+        synchronized (tasks) {
+            pending.add(new PendingChange(position, true));
+        }
+        Platform.runLater(() -> {
+            applied();
+            size++;
+            beginChange();
+            nextAdd(position, position + 1);
+            endChange();
+        });
+    }
+
+    @Override
+    public void taskRemoved(int position) {
+        synchronized (tasks) {
+            pending.add(new PendingChange(position, false));
+        }
+        Platform.runLater(() -> {
+            applied();
+            size--;
+            beginChange();
+            nextRemove(position, (String) null);
+            endChange();
+        });
+    }
+
+    @Override
+    public void taskUpdated(int position) {
+        Platform.runLater(() -> {
+            beginChange();
+            nextUpdate(position);
+            endChange();
+        });
+    }
+
+    /**
+     * Stops mapping rows through the oldest pending change, which is being applied to the view.
+     */
+    private void applied() {
+        synchronized (tasks) {
+            pending.poll();
+        }
+    }
+
+    /**
+     * An insertion or removal at one position of the TaskList.
+     */
+    private static class PendingChange {
+        private final int position;
+        private final boolean isInsertion;
+
+        private PendingChange(int position, boolean isInsertion) {
+            this.position = position;
+            this.isInsertion = isInsertion;
+        }
+    }
+}
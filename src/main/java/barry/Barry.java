@@ -1,7 +1,13 @@
 package barry;
 
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 
 /**
  * The main class for the Barry application, a simple task management
@@ -17,6 +23,12 @@ public class Barry {
     private Storage storage;
     private TaskList tasks;
     private Ui ui;
+    private ResultCache resultCache;
+    // The day the automatic archiving policy was last applied
+    private LocalDate archivedOn;
+    // The task file read in place when Barry is started read-only, or null
+    private MappedTasks mapped;
+    private boolean isReadOnly;
 
     /**
      * Constructs a new instance of the Barry application, initializing its
@@ -27,8 +39,33 @@ public class Barry {
      *                 they are loaded.
      */
     public Barry(String filePath) {
+        this(filePath, false);
+    }
+
+    /**
+     * Constructs a new instance of the Barry application, which either loads its tasks or, started read-only,
+     * reads them in place from the task file mapped into memory. Read-only, commands that change tasks are
+     * refused, and the tasks take next to no heap however many there are.
+     *
+     * @param filePath   The path to the file where tasks are saved and from which
+     *                   they are loaded.
+     * @param isReadOnly Whether to read the tasks in place instead of loading them.
+     */
+    public Barry(String filePath, boolean isReadOnly) {
         this.ui = new Ui();
+        this.resultCache = new ResultCache();
         this.storage = new Storage(filePath);
+        this.isReadOnly = isReadOnly;
+
+        if (isReadOnly) {
+            this.tasks = new TaskList();
+            try {
+                this.mapped = storage.openMapped();
+            } catch (IOException e) {
+                System.err.println("Failed to open the task file read-only: " + e.getMessage());
+            }
+            return;
+        }
 
         try {
             // Load existing tasks from storage. If file is not found, initialize an empty
@@ -40,6 +77,15 @@ public class Barry {
             this.ui.showLoadingError();
             this.tasks = new TaskList();
         }
+
+        archiveDueTasks();
+
+        try {
+            // Pick up changes that other programs make to the task file while Barry is running
+            this.storage.startWatching();
+        } catch (IOException e) {
+            System.err.println("Failed to watch the task file for changes: " + e.getMessage());
+        }
     }
 
     /**
@@ -54,13 +100,166 @@ public class Barry {
      *         exception occurs.
      */
     public String getResponse(String input) {
+        StringBuilder response = new StringBuilder();
+        try {
+            getResponse(input, response);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // A StringBuilder is never closed or full
+        }
+        return response.toString();
+    }
+
+    /**
+     * Processes user input and writes the response to the given sink as it is produced, so that long
+     * responses are never built in full. Errors in the command are written to the sink as well.
+     *
+     * @param input The user input command as a string.
+     * @param out   The sink the response is written to.
+     * @throws IOException If the sink cannot be written to.
+     */
+    public void getResponse(String input, Appendable out) throws IOException {
+        if (isReadOnly) {
+            getReadOnlyResponse(input, out);
+            return;
+        }
+        // Replication reads and changes the task list on its own threads, holding the same lock
+        synchronized (tasks) {
+            try {
+                // Apply changes other programs made to the task file first, so they are not overwritten.
+                int reloaded = storage.applyExternalChanges(tasks);
+                if (!LocalDate.now().equals(archivedOn) && !isFollowing()) {
+                    archiveDueTasks();
+                }
+                if (reloaded > 0) {
+                    out.append("(Picked up " + reloaded + " change(s) made to the task file elsewhere.)\n");
+                }
+                // Parse the user input to create a command, then execute it.
+                ParseResult<Command> parsed = Parser.tryParse(input);
+                if (!parsed.isValid()) {
+                    out.append(parsed.getError());
+                    return;
+                }
+                Command command = parsed.getValue();
+                if (command.changesTasks() && isFollowing()) {
+                    out.append(ui.showMessage("This instance follows another one, so its tasks can only be changed"
+                            + " there. Use 'replicate /stop' to change them here."));
+                    return;
+                }
+                Events.ExecuteEvent event = new Events.ExecuteEvent();
+                event.begin();
+                long hits = resultCache.getHits();
+                try {
+                    if (command.isCacheable()) {
+                        // Repeated lists and finds are answered from the cache until the task list changes
+                        resultCache.execute(input.trim(), command, tasks, ui, storage, out);
+                    } else {
+                        command.execute(tasks, ui, storage, out);
+                    }
+                } finally {
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.command = command.getClass().getSimpleName();
+                        event.taskCount = tasks.size();
+                        event.cacheHit = resultCache.getHits() > hits;
+                        event.commit();
+                    }
+                }
+            } catch (BarryException | IOException e) {
+                // Write the exception message if any errors occur during parsing or execution.
+                out.append(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Processes user input when Barry was started read-only, running the command over the mapped task file after
+     * mapping again any file that changed.
+     */
+    private void getReadOnlyResponse(String input, Appendable out) throws IOException {
+        ParseResult<Command> parsed = Parser.tryParse(input);
+        if (!parsed.isValid()) {
+            out.append(parsed.getError());
+            return;
+        }
         try {
-            // Parse the user input to create a command, then execute it.
-            Command command = Parser.parse(input);
-            return command.execute(tasks, ui, storage);
+            if (mapped == null) {
+                mapped = storage.openMapped();
+            } else {
+                mapped.refresh();
+            }
+            parsed.getValue().execute(mapped, ui, out);
         } catch (BarryException | IOException e) {
-            // Return the exception message if any errors occur during parsing or execution.
-            return e.getMessage();
+            out.append(e.getMessage());
+        }
+    }
+
+    /**
+     * Checks if this instance follows another in replication, applying its changes by task position, so that
+     * its tasks must not be changed here.
+     */
+    private boolean isFollowing() {
+        return storage.getReplication() instanceof Replication.Follower;
+    }
+
+    /**
+     * Moves the tasks that have been done for longer than the automatic archiving policy allows to the archive,
+     * if there is such a policy. This runs at start-up and then once a day, as completion dates are days.
+     */
+    private void archiveDueTasks() {
+        archivedOn = LocalDate.now();
+        int afterDays = storage.getArchiveAfterDays();
+        if (afterDays < 0) {
+            return;
+        }
+        try {
+            storage.archive(tasks, archivedOn.minusDays(afterDays));
+        } catch (IOException e) {
+            System.err.println("Failed to archive completed tasks: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the task list, for views that follow its changes. Changes to it must hold its lock.
+     *
+     * @return The task list.
+     */
+    public TaskList getTaskList() {
+        return tasks;
+    }
+
+    /**
+     * Returns the cache of responses to read-only commands, whose counters show how often it is hit.
+     *
+     * @return The result cache.
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Runs Barry in the terminal without the GUI. Each response is written to standard output as it is
+     * produced, through one reused buffer.
+     *
+     * @param args Optionally, --read-only to read the tasks in place without changing them, followed by the
+     *             path of the task file, which defaults to data/tasks.txt.
+     * @throws IOException If standard output cannot be written to.
+     */
+    public static void main(String[] args) throws IOException {
+        boolean isReadOnly = args.length > 0 && args[0].equals("--read-only");
+        int pathIndex = isReadOnly ? 1 : 0;
+        Barry barry = new Barry(args.length > pathIndex ? args[pathIndex] : "data/tasks.txt", isReadOnly);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        out.write(barry.ui.showWelcomeMessage());
+        out.flush();
+        while (barry.ui.hasCommand()) {
+            String input = barry.ui.readCommand();
+            if (input.isBlank()) {
+                continue;
+            }
+            barry.getResponse(input, out);
+            // Responses are shown in separate dialog boxes in the GUI; here a line break keeps them apart
+            out.write(System.lineSeparator());
+            out.flush();
         }
     }
 }
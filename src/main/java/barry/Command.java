@@ -1,8 +1,19 @@
 package barry;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 /**
  * Represents a command that can be executed in the Barry application.
@@ -29,6 +40,141 @@ public interface Command {
      */
     boolean isExit();
 
+    /**
+     * Executes the command, writing the response to the given sink as it is produced instead of returning it.
+     * Commands whose responses can grow with the task list override this, so that a caller streaming to a
+     * console or socket never holds the whole response. The others write the String that execute returns.
+     *
+     * @param tasks   The TaskList to execute the command on.
+     * @param ui      The Ui instance for user interaction.
+     * @param storage The Storage instance for saving/loading tasks.
+     * @param out     The sink the response is written to.
+     * @throws BarryException If there is an error in the task operations.
+     * @throws IOException    If there is an error in input/output operations, including writing to the sink.
+     */
+    default void execute(TaskList tasks, Ui ui, Storage storage, Appendable out) throws BarryException, IOException {
+        out.append(execute(tasks, ui, storage));
+    }
+
+    /**
+     * Executes the command on tasks read in place from a task file mapped read-only, for Barry started read-only.
+     * Only commands that read tasks can run this way; the rest reply that they cannot.
+     *
+     * @param tasks The mapped tasks to execute the command on.
+     * @param ui    The Ui instance for user interaction.
+     * @param out   The sink the response is written to.
+     * @throws BarryException If the command cannot run on read-only tasks.
+     * @throws IOException    If there is an error in input/output operations, including writing to the sink.
+     */
+    default void execute(MappedTasks tasks, Ui ui, Appendable out) throws BarryException, IOException {
+        throw new BarryException("Barry was started read-only, so tasks can only be listed and found.");
+    }
+
+    /**
+     * Checks if the command adds, removes or changes tasks. A follower in replication refuses such commands, as
+     * the changes it receives from its leader refer to tasks by position.
+     *
+     * @return true if the command changes the task list, false otherwise.
+     */
+    default boolean changesTasks() {
+        return false;
+    }
+
+    /**
+     * Checks if the response to the command can be reused until the task list changes, which holds for
+     * commands that only read the list and whose response depends on nothing else, such as the time.
+     *
+     * @return true if the response can be cached, false otherwise.
+     */
+    default boolean isCacheable() {
+        return false;
+    }
+
+    /**
+     * Represents a command whose response is written piece by piece to a sink. Asking for the response as a
+     * String collects the pieces in a StringBuilder. These commands only read the task list, apart from loading
+     * older month segments into it, so their responses are cacheable unless a subclass says otherwise.
+     */
+    public abstract static class StreamingCommand implements Command {
+
+        @Override
+        public abstract void execute(TaskList tasks, Ui ui, Storage storage, Appendable out)
+                throws BarryException, IOException;
+
+        @Override
+        public String execute(TaskList tasks, Ui ui, Storage storage) throws BarryException, IOException {
+            StringBuilder response = new StringBuilder();
+            execute(tasks, ui, storage, response);
+            return response.toString();
+        }
+
+        @Override
+        public boolean isCacheable() {
+            return true;
+        }
+
+        @Override
+        public boolean isExit() {
+            return false;
+        }
+
+        /**
+         * Writes the tasks of the month segments that are not loaded and pass a filter, reading the segments one
+         * task at a time rather than loading them into the task list. They follow the tasks in the list, where
+         * loading them would have put them.
+         *
+         * @return Whether any task was written.
+         */
+        protected static boolean appendUnloaded(Storage storage, Predicate<Task> filter, Appendable out)
+                throws IOException {
+            boolean found = false;
+            try (Storage.SegmentReader older = storage.readUnloadedSegments()) {
+                while (older.hasNext()) {
+                    Task task = older.next();
+                    if (filter.test(task)) {
+                        out.append(task.toString()).append('\n');
+                        found = true;
+                        if (task instanceof Task.RecurringTask) {
+                            ResultCache.markTimeDependent(out);
+                        }
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause(); // Raised by the segment reader, which cannot throw checked exceptions
+            }
+            return found;
+        }
+
+        /**
+         * Writes the archived tasks that pass a filter under a heading of their own, reading the archive one task
+         * at a time.
+         *
+         * @return Whether any archived task was written.
+         */
+        protected static boolean appendArchived(Storage storage, Predicate<Task> filter, Appendable out)
+                throws IOException {
+            boolean found = false;
+            try (Storage.ArchiveReader archived = storage.readArchive()) {
+                while (archived.hasNext()) {
+                    Task task = archived.next();
+                    if (filter.test(task)) {
+                        if (!found) {
+                            out.append("From the archive:\n");
+                            found = true;
+                        }
+                        out.append(task.toString()).append('\n');
+                        if (task instanceof Task.RecurringTask) {
+                            ResultCache.markTimeDependent(out);
+                        }
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause(); // Raised by the archive reader, which cannot throw checked exceptions
+            }
+            return found;
+        }
+    }
+
     /**
      * Represents the command to exit the Barry application.
      */
@@ -46,6 +192,11 @@ public interface Command {
             return ui.showGoodbyeMessage();
         }
 
+        @Override
+        public void execute(MappedTasks tasks, Ui ui, Appendable out) {
+            System.exit(0);
+        }
+
         @Override
         public boolean isExit() {
             return true;
@@ -55,35 +206,91 @@ public interface Command {
     /**
      * Represents the command to list all tasks in the task list.
      */
-    public static class ListCommand implements Command {
+    public static class ListCommand extends StreamingCommand {
+        private TaskList.SortOrder order;
+        private boolean includesOlder;
 
         /**
-         * Constructs a ListCommand.
+         * Constructs a ListCommand that lists tasks in the order they were added.
          */
         public ListCommand() {
+            this(null, false);
+        }
+
+        /**
+         * Constructs a ListCommand that lists tasks in the given sort order.
+         *
+         * @param order The order to list the tasks in.
+         */
+        public ListCommand(TaskList.SortOrder order) {
+            this(order, false);
+        }
+
+        /**
+         * Constructs a ListCommand.
+         *
+         * @param order         The order to list the tasks in, or null for the order they were added.
+         * @param includesOlder Whether to load and list the completed tasks of earlier months too.
+         */
+        public ListCommand(TaskList.SortOrder order, boolean includesOlder) {
+            this.order = order;
+            this.includesOlder = includesOlder;
         }
 
         @Override
-        public String execute(TaskList tasks, Ui ui, Storage storage) {
-            if (tasks.isEmpty()) {
-                return ui.showMessage("There are no tasks in your list.");
+        public void execute(TaskList tasks, Ui ui, Storage storage, Appendable out)
+                throws BarryException, IOException {
+            if (includesOlder) {
+                storage.loadSegments(tasks);
+            }
+            boolean hasOlder = storage.hasUnloadedSegments();
+            if (tasks.isEmpty() && !hasOlder) {
+                out.append(ui.showMessage("There are no tasks in your list."));
+                return;
+            }
+            if (order != null) {
+                // Walk the maintained sorted view, keeping each task's list number so it can be marked or deleted
+                Iterator<Integer> positions = tasks.sortedPositions(order);
+                while (positions.hasNext()) {
+                    int i = positions.next();
+                    out.append(String.valueOf(i + 1)).append(". ").append(tasks.getTask(i).toString()).append('\n');
+                }
             } else {
                 int N = tasks.size();
-                String message = "";
                 for (int i = 0; i < N; i++) {
-                    try {
-                        message += ((i + 1) + ". " + tasks.getTask(i).toString()) + "\n";
-                    } catch (BarryException e) {
-                        return ui.showMessage("Error retrieving task: " + e.getMessage());
-                    }
+                    out.append(String.valueOf(i + 1)).append(". ").append(tasks.getTask(i).toString()).append('\n');
                 }
-                return ui.showMessage(message);
             }
+            if (hasOlder) {
+                out.append("Completed tasks from earlier months are not shown; 'list /all' shows them too.\n");
+            }
+            ui.endMessage(out);
         }
 
         @Override
-        public boolean isExit() {
-            return false;
+        public void execute(MappedTasks tasks, Ui ui, Appendable out) throws BarryException, IOException {
+            if (order != null) {
+                throw new BarryException("Barry was started read-only, so tasks are listed in the order they were"
+                        + " added.");
+            }
+            boolean hasOlder = tasks.hasOlder() && !includesOlder;
+            boolean[] isEmpty = {true};
+            tasks.forEach(includesOlder, record -> {
+                Task task = record.toTask();
+                if (task != null) {
+                    out.append(String.valueOf(record.getPosition() + 1)).append(". ").append(task.toString())
+                            .append('\n');
+                    isEmpty[0] = false;
+                }
+            });
+            if (isEmpty[0] && !hasOlder) {
+                out.append(ui.showMessage("There are no tasks in your list."));
+                return;
+            }
+            if (hasOlder) {
+                out.append("Completed tasks from earlier months are not shown; 'list /all' shows them too.\n");
+            }
+            ui.endMessage(out);
         }
     }
 
@@ -113,6 +320,11 @@ public interface Command {
         public boolean isExit() {
             return false;
         }
+
+        @Override
+        public boolean changesTasks() {
+            return true;
+        }
     }
 
     /**
@@ -142,42 +354,82 @@ public interface Command {
         public boolean isExit() {
             return false;
         }
+
+        @Override
+        public boolean changesTasks() {
+            return true;
+        }
     }
 
     /**
-     * Represents the command to add a new todo task.
+     * Represents a command that adds a new task, optionally with tags.
      */
-    public static class AddTodoCommand implements Command {
-        private String description;
+    public abstract static class AddTaskCommand implements Command {
+        private List<String> tags = List.of();
 
         /**
-         * Constructs an AddTodoCommand with the specified task description.
+         * Sets the tags the new task is given.
          *
-         * @param description The description of the todo task.
+         * @param tags The tags, as returned by Task.normalizeTag.
+         * @return This command.
          */
-        public AddTodoCommand(String description) {
-            this.description = description;
+        public AddTaskCommand withTags(List<String> tags) {
+            this.tags = tags;
+            return this;
         }
 
+        /**
+         * Creates the task to be added, without its tags.
+         *
+         * @return The new task.
+         */
+        protected abstract Task createTask();
+
         @Override
         public String execute(TaskList tasks, Ui ui, Storage storage) throws IOException {
-            Task.TodoTask task = new Task.TodoTask(description);
+            Task task = createTask();
+            task.getTags().addAll(tags);
             tasks.addTask(task);
             storage.save(tasks.getTasks());
             return ui.showMessage("Got it. I've added this task:\n" + task);
-
         }
 
         @Override
         public boolean isExit() {
             return false;
         }
+
+        @Override
+        public boolean changesTasks() {
+            return true;
+        }
+    }
+
+    /**
+     * Represents the command to add a new todo task.
+     */
+    public static class AddTodoCommand extends AddTaskCommand {
+        private String description;
+
+        /**
+         * Constructs an AddTodoCommand with the specified task description.
+         *
+         * @param description The description of the todo task.
+         */
+        public AddTodoCommand(String description) {
+            this.description = description;
+        }
+
+        @Override
+        protected Task createTask() {
+            return new Task.TodoTask(description);
+        }
     }
 
     /**
      * Represents the command to add a new deadline task.
      */
-    public static class AddDeadlineCommand implements Command {
+    public static class AddDeadlineCommand extends AddTaskCommand {
         private String description;
         private LocalDateTime by;
 
@@ -194,24 +446,15 @@ public interface Command {
         }
 
         @Override
-        public String execute(TaskList tasks, Ui ui, Storage storage) throws IOException {
-            Task.DeadlineTask task = new Task.DeadlineTask(description, by);
-            tasks.addTask(task);
-            storage.save(tasks.getTasks());
-            return ui.showMessage("Got it. I've added this task:\n" + task);
-
-        }
-
-        @Override
-        public boolean isExit() {
-            return false;
+        protected Task createTask() {
+            return new Task.DeadlineTask(description, by);
         }
     }
 
     /**
      * Represents the command to add a new event task.
      */
-    public static class AddEventCommand implements Command {
+    public static class AddEventCommand extends AddTaskCommand {
         private String description;
         private LocalDateTime from;
         private LocalDateTime to;
@@ -231,17 +474,212 @@ public interface Command {
         }
 
         @Override
-        public String execute(TaskList tasks, Ui ui, Storage storage) throws IOException {
-            Task.EventTask task = new Task.EventTask(description, from, to);
-            tasks.addTask(task);
+        protected Task createTask() {
+            return new Task.EventTask(description, from, to);
+        }
+    }
+
+    /**
+     * Represents the command to add a new recurring task.
+     */
+    public static class AddRecurringCommand extends AddTaskCommand {
+        private String description;
+        private LocalDateTime start;
+        private int intervalDays;
+        private LocalDate until;
+
+        /**
+         * Constructs an AddRecurringCommand with the specified task description and
+         * recurrence rule.
+         *
+         * @param description  The description of the recurring task.
+         * @param start        The time of the first occurrence.
+         * @param intervalDays The number of days between occurrences.
+         * @param until        The last date an occurrence may fall on, or null if none.
+         */
+        public AddRecurringCommand(String description, LocalDateTime start, int intervalDays, LocalDate until) {
+            this.description = description;
+            this.start = start;
+            this.intervalDays = intervalDays;
+            this.until = until;
+        }
+
+        @Override
+        protected Task createTask() {
+            return new Task.RecurringTask(description, start, intervalDays, until);
+        }
+    }
+
+    /**
+     * Represents the command to skip a single occurrence of a recurring task.
+     */
+    public static class SkipCommand implements Command {
+        private int index;
+        private LocalDate date;
+
+        /**
+         * Constructs a SkipCommand with the specified task index and occurrence date.
+         *
+         * @param index The index of the recurring task.
+         * @param date  The date of the occurrence to skip.
+         */
+        public SkipCommand(int index, LocalDate date) {
+            this.index = index - 1;
+            this.date = date;
+        }
+
+        @Override
+        public String execute(TaskList tasks, Ui ui, Storage storage) throws BarryException, IOException {
+            Task task = tasks.skipOccurrence(index, date);
             storage.save(tasks.getTasks());
-            return ui.showMessage("Got it. I've added this task:\n" + task);
+            return ui.showMessage("Okay, I'll skip the occurrence on " + date + " for this task:\n" + task);
         }
 
         @Override
         public boolean isExit() {
             return false;
         }
+
+        @Override
+        public boolean changesTasks() {
+            return true;
+        }
+    }
+
+    /**
+     * Represents the command to show what is happening over the next few days,
+     * including each occurrence of recurring tasks.
+     */
+    public static class AgendaCommand extends StreamingCommand {
+        /** The most days an agenda covers. */
+        public static final int MAX_DAYS = 366;
+        /** The most occurrences of one recurring task an agenda shows, which a daily task over MAX_DAYS reaches. */
+        public static final int MAX_OCCURRENCES = MAX_DAYS + 1;
+
+        private int days;
+
+        /**
+         * Constructs an AgendaCommand covering the specified number of days.
+         *
+         * @param days The number of days from now to show, from 1 to MAX_DAYS.
+         */
+        public AgendaCommand(int days) {
+            assert days > 0 && days <= MAX_DAYS : "The agenda should cover 1 to MAX_DAYS days.";
+            this.days = days;
+        }
+
+        @Override
+        public void execute(TaskList tasks, Ui ui, Storage storage, Appendable out) throws IOException {
+            LocalDateTime from = LocalDateTime.now();
+            LocalDateTime to = from.plusDays(days);
+            long fromSeconds = TaskStore.toSeconds(from);
+            long toSeconds = TaskStore.toSeconds(to);
+            // Deadlines and events are read from the store's columns; only recurring tasks are kept as objects
+            TaskStore store = tasks.getStore();
+            TreeMap<LocalDateTime, ArrayList<String>> agenda = new TreeMap<>();
+            for (int i = 0; i < store.size(); i++) {
+                if (store.isCompleted(i)) {
+                    continue;
+                }
+                switch (store.getType(i)) {
+                    case TaskStore.DEADLINE: {
+                        long by = store.getStartSeconds(i);
+                        if (by >= fromSeconds && by < toSeconds) {
+                            agenda.computeIfAbsent(TaskStore.toTime(by), k -> new ArrayList<>())
+                                    .add(store.getDescription(i));
+                        }
+                        break;
+                    }
+                    case TaskStore.EVENT: {
+                        long start = store.getStartSeconds(i);
+                        if (store.getEndSeconds(i) > fromSeconds && start < toSeconds) {
+                            agenda.computeIfAbsent(TaskStore.toTime(start), k -> new ArrayList<>())
+                                    .add(store.getDescription(i));
+                        }
+                        break;
+                    }
+                    case TaskStore.RECURRING: {
+                        Iterator<LocalDateTime> occurrences =
+                                ((Task.RecurringTask) store.get(i)).occurrencesFrom(from);
+                        for (int shown = 0; shown < MAX_OCCURRENCES && occurrences.hasNext(); shown++) {
+                            LocalDateTime occurrence = occurrences.next();
+                            if (!occurrence.isBefore(to)) {
+                                break;
+                            }
+                            agenda.computeIfAbsent(occurrence, k -> new ArrayList<>()).add(store.getDescription(i));
+                        }
+                        break;
+                    }
+                    default:
+                        break;
+                }
+            }
+            if (agenda.isEmpty()) {
+                out.append(ui.showMessage("Nothing is scheduled in the next " + days + " day(s)."));
+                return;
+            }
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM dd yyyy, hh:mm a");
+            out.append("Here is your agenda for the next ").append(String.valueOf(days)).append(" day(s):\n");
+            for (Map.Entry<LocalDateTime, ArrayList<String>> entry : agenda.entrySet()) {
+                String time = entry.getKey().format(formatter);
+                for (String description : entry.getValue()) {
+                    out.append(time).append(": ").append(description).append('\n');
+                }
+            }
+            ui.endMessage(out);
+        }
+
+        @Override
+        public boolean isCacheable() {
+            return false; // The agenda starts from the current time
+        }
+    }
+
+    /**
+     * Represents the command to show the deadlines and events that are due soonest.
+     */
+    public static class NextCommand extends StreamingCommand {
+        private int count;
+
+        /**
+         * Constructs a NextCommand.
+         *
+         * @param count The number of tasks to show.
+         */
+        public NextCommand(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public void execute(TaskList tasks, Ui ui, Storage storage, Appendable out)
+                throws BarryException, IOException {
+            List<Integer> positions = tasks.nextDue(count);
+            if (positions.isEmpty()) {
+                out.append(ui.showMessage("There are no deadlines or events left to do."));
+                return;
+            }
+            out.append("Here is what is due next:\n");
+            for (int position : positions) {
+                out.append(String.valueOf(position + 1)).append(". ").append(tasks.getTask(position).toString())
+                        .append('\n');
+            }
+            ui.endMessage(out);
+        }
+
+        @Override
+        public void execute(MappedTasks tasks, Ui ui, Appendable out) throws IOException {
+            Map<Integer, Task> due = tasks.nextDue(count);
+            if (due.isEmpty()) {
+                out.append(ui.showMessage("There are no deadlines or events left to do."));
+                return;
+            }
+            out.append("Here is what is due next:\n");
+            for (Map.Entry<Integer, Task> entry : due.entrySet()) {
+                out.append(String.valueOf(entry.getKey() + 1)).append(". ").append(entry.getValue().toString())
+                        .append('\n');
+            }
+            ui.endMessage(out);
+        }
     }
 
     /**
@@ -272,12 +710,17 @@ public interface Command {
         public boolean isExit() {
             return false;
         }
+
+        @Override
+        public boolean changesTasks() {
+            return true;
+        }
     }
 
     /**
      * Represents the command to find a task.
      */
-    public static class FindCommand implements Command {
+    public static class FindCommand extends StreamingCommand {
         private String searchTerm;
 
         /**
@@ -290,15 +733,611 @@ public interface Command {
         }
 
         @Override
-        public String execute(TaskList tasks, Ui ui, Storage storage) throws BarryException, IOException {
+        public void execute(TaskList tasks, Ui ui, Storage storage, Appendable out) throws IOException {
             ArrayList<Task> answer = tasks.findTasks(this.searchTerm);
-            String message = "I've found the following tasks with your given searchterm:\n";
+            out.append("I've found the following tasks with your given searchterm:\n");
             for (Task task : answer) {
-                message += task.toString() + "\n";
+                out.append(task.toString()).append('\n');
+            }
+            appendUnloaded(storage, task -> task.getDescription().contains(searchTerm), out);
+            appendArchived(storage, task -> task.getDescription().contains(searchTerm), out);
+            ui.endMessage(out);
+        }
+
+        @Override
+        public void execute(MappedTasks tasks, Ui ui, Appendable out) throws IOException {
+            // Descriptions are searched as they are in the files, and only the matches are decoded
+            byte[] term = searchTerm.getBytes(StandardCharsets.UTF_8);
+            out.append("I've found the following tasks with your given searchterm:\n");
+            tasks.forEach(true, record -> {
+                Task task = decodeIfContains(record, term);
+                if (task != null) {
+                    out.append(task.toString()).append('\n');
+                }
+            });
+            boolean[] hasArchived = {false};
+            tasks.forEachArchived(record -> {
+                Task task = decodeIfContains(record, term);
+                if (task != null) {
+                    if (!hasArchived[0]) {
+                        out.append("From the archive:\n");
+                        hasArchived[0] = true;
+                    }
+                    out.append(task.toString()).append('\n');
+                }
+            });
+            ui.endMessage(out);
+        }
+
+        private static Task decodeIfContains(MappedTasks.Record record, byte[] term) {
+            return record.descriptionContains(term) ? record.toTask() : null;
+        }
+    }
+
+    /**
+     * Represents the command to add tags to or remove tags from a task.
+     */
+    public static class TagCommand implements Command {
+        private int index;
+        private List<String> tags;
+        private boolean isAdding;
+
+        /**
+         * Constructs a TagCommand.
+         *
+         * @param index    The number of the task, starting from 1.
+         * @param tags     The tags, as returned by Task.normalizeTag.
+         * @param isAdding Whether the tags are added, rather than removed.
+         */
+        public TagCommand(int index, List<String> tags, boolean isAdding) {
+            this.index = index - 1;
+            this.tags = tags;
+            this.isAdding = isAdding;
+        }
+
+        @Override
+        public String execute(TaskList tasks, Ui ui, Storage storage) throws BarryException, IOException {
+            boolean isChanged = false;
+            for (String tag : tags) {
+                isChanged |= isAdding ? tasks.tagTask(index, tag) : tasks.untagTask(index, tag);
+            }
+            if (!isChanged) {
+                return ui.showMessage("Nothing to change:\n" + tasks.getTask(index));
+            }
+            storage.save(tasks.getTasks());
+            return ui.showMessage((isAdding ? "I've tagged this task:\n" : "I've untagged this task:\n")
+                    + tasks.getTask(index));
+        }
+
+        @Override
+        public boolean isExit() {
+            return false;
+        }
+
+        @Override
+        public boolean changesTasks() {
+            return true;
+        }
+    }
+
+    /**
+     * Represents the command to find tasks by their tags, answered from the tag index alone.
+     */
+    public static class TagFindCommand extends StreamingCommand {
+        private List<String[]> requiredGroups;
+        private List<String> excluded;
+
+        /**
+         * Constructs a TagFindCommand.
+         *
+         * @param requiredGroups The groups of tags, each matched if a task has any tag in it.
+         * @param excluded       The tags that matching tasks must not have.
+         */
+        public TagFindCommand(List<String[]> requiredGroups, List<String> excluded) {
+            this.requiredGroups = requiredGroups;
+            this.excluded = excluded;
+        }
+
+        @Override
+        public void execute(TaskList tasks, Ui ui, Storage storage, Appendable out)
+                throws BarryException, IOException {
+            storage.loadSegments(tasks);
+            Iterator<Integer> positions = tasks.findTasksByTags(requiredGroups, excluded);
+            boolean found = positions.hasNext();
+            if (found) {
+                out.append("Here are the tasks with those tags:\n");
+            }
+            while (positions.hasNext()) {
+                int position = positions.next();
+                out.append(String.valueOf(position + 1)).append(". ").append(tasks.getTask(position).toString())
+                        .append('\n');
+            }
+            // The archive has no tag index, so archived tasks are checked one by one as they are read
+            found |= appendArchived(storage, this::hasTags, out);
+            if (!found) {
+                out.append(ui.showMessage("No tasks have those tags."));
+                return;
+            }
+            ui.endMessage(out);
+        }
+
+        private boolean hasTags(Task task) {
+            for (String[] group : requiredGroups) {
+                boolean hasAny = false;
+                for (String tag : group) {
+                    hasAny |= task.getTags().contains(tag);
+                }
+                if (!hasAny) {
+                    return false;
+                }
+            }
+            for (String tag : excluded) {
+                if (task.getTags().contains(tag)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Represents the command to run a structured query and show one page of the results.
+     */
+    public static class QueryCommand extends StreamingCommand {
+        /** The number of results on each page. */
+        public static final int PAGE_SIZE = 20;
+
+        private Query query;
+        private String queryText;
+        private int page;
+
+        /**
+         * Constructs a QueryCommand.
+         *
+         * @param query     The parsed query.
+         * @param queryText The query as the user typed it, used to tell them how to get the next page.
+         * @param page      The page of results to show, starting from 1.
+         */
+        public QueryCommand(Query query, String queryText, int page) {
+            this.query = query;
+            this.queryText = queryText;
+            this.page = page;
+        }
+
+        @Override
+        public void execute(TaskList tasks, Ui ui, Storage storage, Appendable out)
+                throws BarryException, IOException {
+            // Older month segments are only loaded while the matches found so far do not reach past this page
+            long skip = (long) (page - 1) * PAGE_SIZE;
+            while (storage.hasUnloadedSegments() && countMatches(tasks, skip + PAGE_SIZE + 1) <= skip + PAGE_SIZE) {
+                storage.loadOlderSegment(tasks);
+            }
+            // Results are read from the iterator as they are printed, so later pages are never looked at
+            Iterator<Integer> matches = query.positions(tasks);
+            for (long i = 0; i < skip && matches.hasNext(); i++) {
+                matches.next();
+            }
+            if (!matches.hasNext()) {
+                out.append(ui.showMessage(page == 1 ? "No tasks match your query." : "There are no more matches."));
+                return;
+            }
+            out.append("Here are the matching tasks (page " + page + "):\n");
+            for (int i = 0; i < PAGE_SIZE && matches.hasNext(); i++) {
+                int position = matches.next();
+                out.append(String.valueOf(position + 1)).append(". ").append(tasks.getTask(position).toString())
+                        .append('\n');
+            }
+            if (matches.hasNext()) {
+                out.append("There are more matches: 'query ").append(queryText).append(" page:")
+                        .append(String.valueOf(page + 1)).append("' shows the next page.");
+            }
+            ui.endMessage(out);
+        }
+
+        private long countMatches(TaskList tasks, long limit) {
+            Iterator<Integer> matches = query.positions(tasks);
+            long count = 0;
+            while (count < limit && matches.hasNext()) {
+                matches.next();
+                count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Represents the command to find tasks matching a regular expression or a case-insensitive term.
+     */
+    public static class PatternFindCommand extends StreamingCommand {
+        private Pattern pattern;
+
+        /**
+         * Constructs a PatternFindCommand with the specified precompiled pattern
+         *
+         * @param pattern The pattern to be searched for
+         */
+        public PatternFindCommand(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public void execute(TaskList tasks, Ui ui, Storage storage, Appendable out) throws IOException {
+            ArrayList<Task> answer = tasks.findTasks(this.pattern);
+            out.append("I've found the following tasks with your given searchterm:\n");
+            for (Task task : answer) {
+                out.append(task.toString()).append('\n');
+            }
+            appendUnloaded(storage, task -> pattern.matcher(task.getDescription()).find(), out);
+            appendArchived(storage, task -> pattern.matcher(task.getDescription()).find(), out);
+            ui.endMessage(out);
+        }
+    }
+
+    /**
+     * Represents the command to find tasks with a search term that may contain typos.
+     */
+    public static class FuzzyFindCommand extends StreamingCommand {
+        private String searchTerm;
+
+        /**
+         * Constructs a FuzzyFindCommand with the specified search term
+         *
+         * @param term The term to be searched, which may be misspelt
+         */
+        public FuzzyFindCommand(String term) {
+            this.searchTerm = term;
+        }
+
+        @Override
+        public void execute(TaskList tasks, Ui ui, Storage storage, Appendable out) throws IOException {
+            ArrayList<Task> answer = tasks.findTasksFuzzy(this.searchTerm);
+            if (answer.size() < TaskList.FUZZY_RESULT_LIMIT) {
+                answer.addAll(closestUnloaded(storage, TaskList.FUZZY_RESULT_LIMIT - answer.size()));
+            }
+            if (answer.isEmpty()) {
+                out.append(ui.showMessage("I couldn't find any tasks close to \"" + searchTerm + "\"."));
+                return;
+            }
+            out.append("I've found the following tasks close to your given searchterm:\n");
+            for (Task task : answer) {
+                out.append(task.toString()).append('\n');
+                if (task instanceof Task.RecurringTask) {
+                    ResultCache.markTimeDependent(out);
+                }
+            }
+            ui.endMessage(out);
+        }
+
+        /**
+         * Finds the closest matches among the tasks of the month segments that are not loaded, which have no
+         * trigram index, by reading the segments one task at a time within the fuzzy search's time budget.
+         *
+         * @param limit The most tasks to return.
+         * @return The closest tasks, best match first.
+         */
+        private ArrayList<Task> closestUnloaded(Storage storage, int limit) throws IOException {
+            long deadline = System.nanoTime() + TaskList.FUZZY_BUDGET_NANOS;
+            ArrayList<Task> matches = new ArrayList<>();
+            ArrayList<Integer> distances = new ArrayList<>();
+            try (Storage.SegmentReader older = storage.readUnloadedSegments()) {
+                while (older.hasNext() && System.nanoTime() <= deadline) {
+                    Task task = older.next();
+                    int distance = TrigramIndex.distance(searchTerm, task.getDescription());
+                    if (distance >= 0) {
+                        // Insert after the matches that are as close, so equally close tasks keep their order
+                        int at = matches.size();
+                        while (at > 0 && distances.get(at - 1) > distance) {
+                            at--;
+                        }
+                        if (at < limit) {
+                            matches.add(at, task);
+                            distances.add(at, distance);
+                            if (matches.size() > limit) {
+                                matches.remove(limit);
+                                distances.remove(limit);
+                            }
+                        }
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause(); // Raised by the segment reader, which cannot throw checked exceptions
+            }
+            return matches;
+        }
+    }
+
+    /**
+     * Represents the command to summarise how many tasks there are of each type and state.
+     */
+    public static class SummaryCommand implements Command {
+
+        /**
+         * Constructs a SummaryCommand.
+         */
+        public SummaryCommand() {
+        }
+
+        @Override
+        public String execute(TaskList tasks, Ui ui, Storage storage) throws IOException {
+            // Tasks in segments that are not loaded are counted from the segments' kept counts, not loaded
+            Storage.SegmentCounts unloaded = storage.countUnloadedSegments();
+            String[] typeNames = { "Todos", "Deadlines", "Events", "Recurring" };
+            int total = 0;
+            int done = 0;
+            StringBuilder breakdown = new StringBuilder();
+            for (byte type = TaskStore.TODO; type <= TaskStore.RECURRING; type++) {
+                int count = tasks.countTasks(type) + unloaded.countTasks(type);
+                int completed = tasks.countCompleted(type) + unloaded.countCompleted(type);
+                total += count;
+                done += completed;
+                breakdown.append(typeNames[type]).append(": ").append(count).append(" (").append(completed)
+                        .append(" done)\n");
+            }
+            return ui.showMessage("You have " + total + " task(s): " + (total - done) + " open, " + done
+                    + " done, " + tasks.countOverdue(LocalDateTime.now()) + " overdue.\n" + breakdown);
+        }
+
+        @Override
+        public boolean isExit() {
+            return false;
+        }
+    }
+
+    /**
+     * Represents the command to export all tasks to a CSV or JSON file.
+     */
+    public static class ExportCommand implements Command {
+        private String exportPath;
+        private TaskTransfer.Format format;
+
+        /**
+         * Constructs an ExportCommand with the specified file and format.
+         *
+         * @param exportPath The path of the file to export to.
+         * @param format     The format to export in.
+         */
+        public ExportCommand(String exportPath, TaskTransfer.Format format) {
+            this.exportPath = exportPath;
+            this.format = format;
+        }
+
+        @Override
+        public String execute(TaskList tasks, Ui ui, Storage storage) throws IOException {
+            storage.loadSegments(tasks);
+            int count = storage.exportTasks(tasks.getTasks(), exportPath, format);
+            return ui.showMessage("I've exported " + count + " task(s) to " + exportPath + ".");
+        }
+
+        @Override
+        public boolean isExit() {
+            return false;
+        }
+    }
+
+    /**
+     * Represents the command to import tasks from a CSV or JSON file.
+     */
+    public static class ImportCommand implements Command {
+        /** The number of imported tasks added to the list and appended to the task file at a time. */
+        public static final int BATCH_SIZE = 10_000;
+
+        private String importPath;
+
+        /**
+         * Constructs an ImportCommand with the specified file.
+         *
+         * @param importPath The path of the file to import from.
+         */
+        public ImportCommand(String importPath) {
+            this.importPath = importPath;
+        }
+
+        @Override
+        public String execute(TaskList tasks, Ui ui, Storage storage) throws BarryException, IOException {
+            int imported = 0;
+            int skipped = 0;
+            ArrayList<Task> batch = new ArrayList<>();
+            String readError = null;
+            try (TaskTransfer.RecordReader records = storage.openImport(importPath)) {
+                while (true) {
+                    String[] fields;
+                    try {
+                        fields = records.next();
+                    } catch (BarryException | IOException e) {
+                        readError = e.getMessage();
+                        break;
+                    }
+                    if (fields == null) {
+                        break;
+                    }
+                    try {
+                        batch.add(TaskTransfer.fromFields(fields));
+                    } catch (BarryException e) {
+                        skipped++;
+                    }
+                    if (batch.size() == BATCH_SIZE) {
+                        imported += addBatch(batch, tasks, storage);
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                throw new BarryException("I couldn't find the file " + importPath + ".");
+            }
+            // Keep whatever was read before a read error, so a bad file does not lose the records before it
+            imported += addBatch(batch, tasks, storage);
+            String message = "I've imported " + imported + " task(s) from " + importPath
+                    + (readError == null ? "." : " before this error: " + readError);
+            if (skipped > 0) {
+                message += "\n" + skipped + " record(s) were invalid and have been skipped.";
             }
             return ui.showMessage(message);
         }
 
+        /**
+         * Adds a batch of tasks to the list and appends them to the task file in one write.
+         */
+        private static int addBatch(ArrayList<Task> batch, TaskList tasks, Storage storage) throws IOException {
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            for (Task task : batch) {
+                tasks.addTask(task);
+            }
+            storage.append(batch, tasks.size() - batch.size());
+            int count = batch.size();
+            batch.clear();
+            return count;
+        }
+
+        @Override
+        public boolean isExit() {
+            return false;
+        }
+
+        @Override
+        public boolean changesTasks() {
+            return true;
+        }
+    }
+
+    /**
+     * Represents the command to switch compression of the task file on or off.
+     */
+    public static class CompressCommand implements Command {
+        private boolean compressed;
+
+        /**
+         * Constructs a CompressCommand.
+         *
+         * @param compressed Whether the task file should be compressed.
+         */
+        public CompressCommand(boolean compressed) {
+            this.compressed = compressed;
+        }
+
+        @Override
+        public String execute(TaskList tasks, Ui ui, Storage storage) throws IOException {
+            storage.setCompressed(compressed);
+            storage.save(tasks.getTasks());
+            return ui.showMessage(compressed ? "Your task file is now compressed." : "Your task file is now plain text.");
+        }
+
+        @Override
+        public boolean isExit() {
+            return false;
+        }
+    }
+
+    /**
+     * Represents the command to move completed tasks to the archive, now or automatically some days after they
+     * are done.
+     */
+    public static class ArchiveCommand implements Command {
+        private boolean isSettingPolicy;
+        private int afterDays;
+
+        /**
+         * Constructs an ArchiveCommand that archives every completed task now.
+         */
+        public ArchiveCommand() {
+            this.isSettingPolicy = false;
+        }
+
+        /**
+         * Constructs an ArchiveCommand that sets how long completed tasks stay in the list before they are
+         * archived automatically, and archives those that are already due.
+         *
+         * @param afterDays The number of days after completion, or -1 to stop archiving automatically.
+         */
+        public ArchiveCommand(int afterDays) {
+            this.isSettingPolicy = true;
+            this.afterDays = afterDays;
+        }
+
+        @Override
+        public String execute(TaskList tasks, Ui ui, Storage storage) throws IOException {
+            // Completed tasks of earlier months are archived as well, so they are loaded first
+            storage.loadSegments(tasks);
+            if (!isSettingPolicy) {
+                int archived = storage.archive(tasks, null);
+                return ui.showMessage("I've archived " + archived + " completed task(s). "
+                        + "find and export still include archived tasks.");
+            }
+            storage.setArchiveAfterDays(afterDays);
+            if (afterDays < 0) {
+                return ui.showMessage("Completed tasks will no longer be archived automatically.");
+            }
+            int archived = storage.archive(tasks, LocalDate.now().minusDays(afterDays));
+            return ui.showMessage("Completed tasks will be archived " + afterDays + " day(s) after they are done. "
+                    + "I've archived " + archived + " task(s) already.");
+        }
+
+        @Override
+        public boolean isExit() {
+            return false;
+        }
+
+        @Override
+        public boolean changesTasks() {
+            return true;
+        }
+    }
+
+    /**
+     * Represents the command to publish changes to follower instances, follow another instance, or show how
+     * replication is doing.
+     */
+    public static class ReplicateCommand implements Command {
+        /**
+         * The role this instance takes in replication.
+         */
+        public enum Role {
+            SERVE, FOLLOW, STOP, STATUS
+        }
+
+        private Role role;
+        private int port;
+
+        /**
+         * Constructs a ReplicateCommand.
+         *
+         * @param role The role to take, or STATUS to show the current state.
+         * @param port The port to publish changes on or to follow; ignored for STOP and STATUS.
+         */
+        public ReplicateCommand(Role role, int port) {
+            this.role = role;
+            this.port = port;
+        }
+
+        @Override
+        public String execute(TaskList tasks, Ui ui, Storage storage) throws BarryException, IOException {
+            Replication replication = storage.getReplication();
+            if (role == Role.STATUS || role == Role.STOP) {
+                if (replication == null) {
+                    return ui.showMessage("This instance is not replicating.");
+                }
+                if (role == Role.STATUS) {
+                    return ui.showMessage(replication.describeStatus());
+                }
+                replication.close();
+                storage.setReplication(null);
+                return ui.showMessage("Stopped replicating.");
+            }
+            if (replication != null) {
+                throw new BarryException("This instance is already replicating. Use 'replicate /stop' first.");
+            }
+            if (role == Role.FOLLOW) {
+                storage.setReplication(new Replication.Follower(tasks, storage, port));
+                return ui.showMessage("Following the instance on port " + port + ". Its tasks will replace"
+                        + " the tasks here.");
+            }
+            try {
+                storage.setReplication(new Replication.Leader(tasks, port));
+            } catch (IOException e) {
+                throw new BarryException("Could not publish changes on port " + port + ": " + e.getMessage());
+            }
+            return ui.showMessage("Publishing changes on port " + port + ".");
+        }
+
         @Override
         public boolean isExit() {
             return false;
@@ -319,19 +1358,44 @@ public interface Command {
         @Override
         public String execute(TaskList tasks, Ui ui, Storage storage) {
             String helpMessage = "Here are the available commands:\n"
-                    + "1. list - List all tasks\n"
+                    + "1. list /all /sort [deadline|type|status] - List all tasks (/all adds the completed tasks of"
+                    + " earlier months; both are optional)\n"
                     + "2. mark [task number] - Mark a task as done\n"
                     + "3. unmark [task number] - Unmark a task as not done\n"
                     + "4. todo [description] - Add a new todo task\n"
                     + "5. deadline [description] /by [d/M/yyyy HHmm] - Add a new deadline task\n"
                     + "6. event [description] /from [d/M/yyyy HHmm] /to [d/M/yyyy HHmm] - Add a new event task\n"
-                    + "7. delete [task number] - Delete a task\n"
-                    + "8. find [keyword] - Find tasks with the specified keyword\n"
-                    + "9. bye - Exit the application\n"
-                    + "10. help - Display this list of commands";
+                    + "7. recur [description] /from [d/M/yyyy HHmm] /every [day|week|N days] /until [d/M/yyyy]"
+                    + " - Add a recurring task (/until is optional)\n"
+                    + "8. skip [task number] /on [d/M/yyyy] - Skip one occurrence of a recurring task\n"
+                    + "9. agenda [days] - Show what is scheduled over the next few days\n"
+                    + "10. next [count] - Show the deadlines and events that are due soonest\n"
+                    + "11. delete [task number] - Delete a task\n"
+                    + "12. find [keyword] - Find tasks with the specified keyword (find ~[keyword] tolerates typos,"
+                    + " find /i [keyword] ignores case, find /re [regex] matches a regular expression)\n"
+                    + "13. tag [task number] [tag]... | untag [task number] [tag]... - Add or remove tags"
+                    + " (todo, deadline, event and recur also take /tag [tag] at the end; find /tag work /tag a|b"
+                    + " /tag -done finds tasks by tag)\n"
+                    + "14. query [type:T|D|E|R] [done:true|false] [before|after:d/M/yyyy] [text:word] [tag:word]"
+                    + " [page:N] - Find tasks matching all the terms ('or' between terms, '-' before a term negates it)\n"
+                    + "15. export [file] /format [csv|json] - Export all tasks to a file\n"
+                    + "16. import [file] - Import tasks from a CSV or JSON file\n"
+                    + "17. compress [on|off] - Compress the task file or store it as plain text\n"
+                    + "18. archive [/after days|off] - Move done tasks to the archive file (/after archives them"
+                    + " automatically once they have been done that many days)\n"
+                    + "19. summary - Count open, done and overdue tasks of each type\n"
+                    + "20. replicate /serve [port] | /follow [port] | /stop - Keep a copy of the tasks in another"
+                    + " instance (replicate alone shows the lag)\n"
+                    + "21. bye - Exit the application\n"
+                    + "22. help - Display this list of commands";
             return ui.showMessage(helpMessage);
         }
 
+        @Override
+        public void execute(MappedTasks tasks, Ui ui, Appendable out) throws IOException {
+            out.append(execute((TaskList) null, ui, null));
+        }
+
         @Override
         public boolean isExit() {
             return false;
@@ -0,0 +1,97 @@
+package barry;
+
+import java.io.File;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Events class holds the Java Flight Recorder events Barry emits, so that a recording can tie pauses and I/O
+ * to the commands that caused them. Each event is begun before the work it times and committed after it. While
+ * nothing is recording, committing does nothing and the JIT removes the event objects altogether, so the fields
+ * are only filled in once shouldCommit says the event will be kept.
+ */
+public class Events {
+
+    /**
+     * Records the parsing of one line of input into a command.
+     */
+    @Name("barry.Parse")
+    @Label("Parse Command")
+    @Category("Barry")
+    @StackTrace(false)
+    static class ParseEvent extends Event {
+        @Label("Command Word")
+        String commandWord;
+
+        @Label("Valid")
+        @Description("Whether the input was parsed into a command rather than rejected")
+        boolean valid;
+    }
+
+    /**
+     * Records the execution of one command, including writing its response.
+     */
+    @Name("barry.Execute")
+    @Label("Execute Command")
+    @Category("Barry")
+    @StackTrace(false)
+    static class ExecuteEvent extends Event {
+        @Label("Command")
+        String command;
+
+        @Label("Task Count")
+        @Description("The number of tasks in the list after the command")
+        int taskCount;
+
+        @Label("Cache Hit")
+        @Description("Whether the response was taken from the result cache")
+        boolean cacheHit;
+    }
+
+    /**
+     * Records one read or write of a task, segment or archive file.
+     */
+    @Name("barry.Storage")
+    @Label("Storage Access")
+    @Category("Barry")
+    @StackTrace(false)
+    static class StorageEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Path")
+        String path;
+
+        @Label("Records")
+        int records;
+
+        @Label("File Size")
+        @Description("The size of the file once the operation finished")
+        @DataAmount
+        long bytes;
+
+        /**
+         * Ends the event and commits it if it is being recorded, reading the size of the file only then.
+         *
+         * @param operation What was done to the file.
+         * @param file      The file that was read or written.
+         * @param records   The number of records read or written.
+         */
+        void commit(String operation, File file, int records) {
+            end();
+            if (shouldCommit()) {
+                this.operation = operation;
+                this.path = file.getPath();
+                this.records = records;
+                this.bytes = file.length();
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package barry;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * The IdBitmap class is a compressed set of task IDs, used to index tags. IDs are split by their upper 16 bits
+ * into chunks. A chunk is kept as a sorted array while it holds few IDs and as a plain bitmap once it holds many,
+ * so that rare and common tags both take little memory. Set operations work chunk by chunk, and skip chunks that
+ * only one side has.
+ */
+public class IdBitmap {
+    /** Chunks holding more IDs than this are kept as bitmaps, which are then the smaller form. */
+    static final int ARRAY_LIMIT = 4096;
+    private static final int CHUNK_WORDS = 1 << 16 >>> 6;
+
+    // For each chunk, in increasing order of key: the upper 16 bits shared by its IDs, its IDs as either a
+    // sorted char[] of lower 16 bits or a long[] bitmap, and the number of IDs in it
+    private int[] keys;
+    private Object[] chunks;
+    private int[] counts;
+    private int size;
+
+    /**
+     * Constructs an empty IdBitmap.
+     */
+    public IdBitmap() {
+        this.keys = new int[4];
+        this.chunks = new Object[4];
+        this.counts = new int[4];
+    }
+
+    /**
+     * Adds an ID to the set.
+     *
+     * @param id The ID to add, which must not be negative.
+     * @return Whether the ID was not already in the set.
+     */
+    public boolean add(int id) {
+        assert id >= 0 : "Task IDs should not be negative.";
+        int index = Arrays.binarySearch(keys, 0, size, id >>> 16);
+        if (index < 0) {
+            index = -index - 1;
+            insertChunk(index, id >>> 16, new char[4], 0);
+        }
+        char low = (char) id;
+        if (chunks[index] instanceof long[]) {
+            long[] words = (long[]) chunks[index];
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) != 0) {
+                return false;
+            }
+            words[low >>> 6] |= bit;
+            counts[index]++;
+            return true;
+        }
+        char[] values = (char[]) chunks[index];
+        int position = Arrays.binarySearch(values, 0, counts[index], low);
+        if (position >= 0) {
+            return false;
+        }
+        if (counts[index] == ARRAY_LIMIT) {
+            long[] words = toWords(values, counts[index]);
+            words[low >>> 6] |= 1L << low;
+            chunks[index] = words;
+            counts[index]++;
+            return true;
+        }
+        position = -position - 1;
+        if (counts[index] == values.length) {
+            values = Arrays.copyOf(values, Math.min(values.length * 2, ARRAY_LIMIT));
+            chunks[index] = values;
+        }
+        System.arraycopy(values, position, values, position + 1, counts[index] - position);
+        values[position] = low;
+        counts[index]++;
+        return true;
+    }
+
+    /**
+     * Removes an ID from the set.
+     *
+     * @param id The ID to remove.
+     * @return Whether the ID was in the set.
+     */
+    public boolean remove(int id) {
+        int index = Arrays.binarySearch(keys, 0, size, id >>> 16);
+        if (index < 0) {
+            return false;
+        }
+        char low = (char) id;
+        if (chunks[index] instanceof long[]) {
+            long[] words = (long[]) chunks[index];
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                return false;
+            }
+            words[low >>> 6] &= ~bit;
+            if (--counts[index] == ARRAY_LIMIT) {
+                chunks[index] = toArray(words, counts[index]);
+            }
+            return true;
+        }
+        char[] values = (char[]) chunks[index];
+        int position = Arrays.binarySearch(values, 0, counts[index], low);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(values, position + 1, values, position, counts[index] - position - 1);
+        if (--counts[index] == 0) {
+            removeChunk(index);
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether an ID is in the set.
+     *
+     * @param id The ID to look for.
+     * @return Whether the ID is in the set.
+     */
+    public boolean contains(int id) {
+        int index = Arrays.binarySearch(keys, 0, size, id >>> 16);
+        if (index < 0) {
+            return false;
+        }
+        char low = (char) id;
+        if (chunks[index] instanceof long[]) {
+            return (((long[]) chunks[index])[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) chunks[index], 0, counts[index], low) >= 0;
+    }
+
+    /**
+     * Returns the number of IDs in the set.
+     *
+     * @return The number of IDs.
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += counts[i];
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the IDs in both this set and the other.
+     *
+     * @param other The other set.
+     * @return A new set holding the intersection.
+     */
+    public IdBitmap and(IdBitmap other) {
+        IdBitmap result = new IdBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.combine(keys[i], chunks[i], counts[i], other.chunks[j], other.counts[j], Operation.AND);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IDs in either this set or the other.
+     *
+     * @param other The other set.
+     * @return A new set holding the union.
+     */
+    public IdBitmap or(IdBitmap other) {
+        IdBitmap result = new IdBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.appendCopy(keys[i], chunks[i], counts[i]);
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.appendCopy(other.keys[j], other.chunks[j], other.counts[j]);
+                j++;
+            } else {
+                result.combine(keys[i], chunks[i], counts[i], other.chunks[j], other.counts[j], Operation.OR);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IDs in this set that are not in the other.
+     *
+     * @param other The other set.
+     * @return A new set holding the difference.
+     */
+    public IdBitmap andNot(IdBitmap other) {
+        IdBitmap result = new IdBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.size && other.keys[j] == keys[i]) {
+                result.combine(keys[i], chunks[i], counts[i], other.chunks[j], other.counts[j], Operation.AND_NOT);
+            } else {
+                result.appendCopy(keys[i], chunks[i], counts[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IDs in the set in increasing order.
+     *
+     * @return An iterator over the IDs.
+     */
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int chunk = 0;
+            // Position within an array chunk, or the next bit to look at within a bitmap chunk
+            private int offset = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (chunk < size) {
+                    if (chunks[chunk] instanceof char[]) {
+                        if (offset < counts[chunk]) {
+                            return true;
+                        }
+                    } else {
+                        long[] words = (long[]) chunks[chunk];
+                        while (offset < (1 << 16)) {
+                            long word = words[offset >>> 6] >>> offset;
+                            if (word != 0) {
+                                offset += Long.numberOfTrailingZeros(word);
+                                return true;
+                            }
+                            offset = (offset | 63) + 1;
+                        }
+                    }
+                    chunk++;
+                    offset = 0;
+                }
+                return false;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int low = chunks[chunk] instanceof char[] ? ((char[]) chunks[chunk])[offset] : offset;
+                offset++;
+                return keys[chunk] << 16 | low;
+            }
+        };
+    }
+
+    private enum Operation {
+        AND, OR, AND_NOT
+    }
+
+    /**
+     * Combines two chunks with the same key and appends the result, unless it is empty. Two arrays are merged
+     * directly; otherwise the chunks are combined as bitmaps.
+     */
+    private void combine(int key, Object left, int leftCount, Object right, int rightCount, Operation operation) {
+        if (left instanceof char[] && right instanceof char[]) {
+            char[] a = (char[]) left;
+            char[] b = (char[]) right;
+            char[] merged = new char[operation == Operation.OR ? leftCount + rightCount : leftCount];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < leftCount || j < rightCount) {
+                if (j == rightCount || (i < leftCount && a[i] < b[j])) {
+                    if (operation != Operation.AND) {
+                        merged[count++] = a[i];
+                    }
+                    i++;
+                } else if (i == leftCount || a[i] > b[j]) {
+                    if (operation == Operation.OR) {
+                        merged[count++] = b[j];
+                    }
+                    j++;
+                } else {
+                    if (operation != Operation.AND_NOT) {
+                        merged[count++] = a[i];
+                    }
+                    i++;
+                    j++;
+                }
+            }
+            if (count > ARRAY_LIMIT) {
+                appendChunk(key, toWords(merged, count), count);
+            } else if (count > 0) {
+                appendChunk(key, merged, count);
+            }
+            return;
+        }
+        long[] a = left instanceof long[] ? (long[]) left : toWords((char[]) left, leftCount);
+        long[] b = right instanceof long[] ? (long[]) right : toWords((char[]) right, rightCount);
+        long[] words = new long[CHUNK_WORDS];
+        int count = 0;
+        for (int w = 0; w < CHUNK_WORDS; w++) {
+            switch (operation) {
+                case AND:
+                    words[w] = a[w] & b[w];
+                    break;
+                case OR:
+                    words[w] = a[w] | b[w];
+                    break;
+                default:
+                    words[w] = a[w] & ~b[w];
+            }
+            count += Long.bitCount(words[w]);
+        }
+        if (count > ARRAY_LIMIT) {
+            appendChunk(key, words, count);
+        } else if (count > 0) {
+            appendChunk(key, toArray(words, count), count);
+        }
+    }
+
+    private void appendCopy(int key, Object chunk, int count) {
+        appendChunk(key, chunk instanceof long[] ? ((long[]) chunk).clone() : Arrays.copyOf((char[]) chunk, count),
+                count);
+    }
+
+    private void appendChunk(int key, Object chunk, int count) {
+        insertChunk(size, key, chunk, count);
+    }
+
+    private void insertChunk(int index, int key, Object chunk, int count) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            chunks = Arrays.copyOf(chunks, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(chunks, index, chunks, index + 1, size - index);
+        System.arraycopy(counts, index, counts, index + 1, size - index);
+        keys[index] = key;
+        chunks[index] = chunk;
+        counts[index] = count;
+        size++;
+    }
+
+    private void removeChunk(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(chunks, index + 1, chunks, index, size - index - 1);
+        System.arraycopy(counts, index + 1, counts, index, size - index - 1);
+        size--;
+        chunks[size] = null;
+    }
+
+    private static long[] toWords(char[] values, int count) {
+        long[] words = new long[CHUNK_WORDS];
+        for (int i = 0; i < count; i++) {
+            words[values[i] >>> 6] |= 1L << values[i];
+        }
+        return words;
+    }
+
+    private static char[] toArray(long[] words, int count) {
+        char[] values = new char[count];
+        int next = 0;
+        for (int w = 0; w < words.length; w++) {
+            long word = words[w];
+            while (word != 0) {
+                values[next++] = (char) (w << 6 | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,425 @@
+package barry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.PriorityQueue;
+
+/**
+ * The MappedTasks class reads a task file, its month segments and its archive in place, for Barry started
+ * read-only. The files are mapped into memory instead of loaded, so they take no heap however large they are,
+ * and the operating system shares their pages between all the processes reading them. Records are read through
+ * one reused Record, which finds the fields a command asks about in the mapped bytes; only the records a command
+ * shows are decoded into tasks.
+ *
+ * Barry only ever replaces these files whole, by renaming a new file over them, or appends to them, so a
+ * mapping always holds one complete version of a file. Each command first maps again the files that changed.
+ */
+public class MappedTasks {
+    // The most bytes mapped as one region; larger files are mapped as several regions split at line breaks
+    private static final int MAX_REGION_BYTES = 1 << 30;
+
+    private final Storage storage;
+    private MappedFile taskFile;
+    private ArrayList<MappedFile> segments = new ArrayList<>();
+    private MappedFile archive;
+    private final Record record = new Record();
+
+    /**
+     * Constructs a MappedTasks over the files of the given storage. Nothing is mapped until refresh is called.
+     *
+     * @param storage The storage whose files to read.
+     */
+    MappedTasks(Storage storage) {
+        this.storage = storage;
+        this.taskFile = new MappedFile(storage.taskFile());
+        this.archive = new MappedFile(storage.archiveFile());
+    }
+
+    /**
+     * Maps the files that changed since they were last mapped, including segments that were added or removed.
+     *
+     * @throws IOException If a file cannot be mapped, such as because it is compressed.
+     */
+    public void refresh() throws IOException {
+        taskFile.refresh();
+        ArrayList<MappedFile> refreshed = new ArrayList<>();
+        for (File file : storage.segmentFiles()) {
+            MappedFile segment = null;
+            for (MappedFile known : segments) {
+                if (known.file.equals(file)) {
+                    segment = known;
+                }
+            }
+            segment = segment == null ? new MappedFile(file) : segment;
+            segment.refresh();
+            refreshed.add(segment);
+        }
+        segments = refreshed;
+        archive.refresh();
+    }
+
+    /**
+     * Checks whether there are completed tasks from earlier months, kept in month segments.
+     *
+     * @return Whether there is a segment.
+     */
+    public boolean hasOlder() {
+        return !segments.isEmpty();
+    }
+
+    /**
+     * Visits the records of the task file and then, if asked to, those of the month segments, most recent first,
+     * in the order the task list holds them once it has loaded every segment.
+     *
+     * @param includesOlder Whether to visit the records in the month segments too.
+     * @param visitor       The visitor, which must not keep the record it is given.
+     * @throws IOException If the visitor fails to write its output.
+     */
+    public void forEach(boolean includesOlder, RecordVisitor visitor) throws IOException {
+        int position = taskFile.forEach(record, 0, visitor);
+        if (includesOlder) {
+            for (MappedFile segment : segments) {
+                position = segment.forEach(record, position, visitor);
+            }
+        }
+    }
+
+    /**
+     * Visits the records of the archive.
+     *
+     * @param visitor The visitor, which must not keep the record it is given.
+     * @throws IOException If the visitor fails to write its output.
+     */
+    public void forEachArchived(RecordVisitor visitor) throws IOException {
+        archive.forEach(record, 0, visitor);
+    }
+
+    /**
+     * Returns the deadlines and events that are not done, soonest first, by due time for deadlines and start time
+     * for events, as TaskList.nextDue does. Only the task file is read, as segments hold only completed tasks,
+     * and only the tasks returned are decoded.
+     *
+     * @param count The greatest number of tasks to return.
+     * @return The tasks by their positions, most urgent first.
+     * @throws IOException If the task file cannot be read.
+     */
+    public LinkedHashMap<Integer, Task> nextDue(int count) throws IOException {
+        // The most urgent so far, least urgent at the head, as {due seconds, position}
+        Comparator<long[]> urgency = Comparator.<long[]>comparingLong(entry -> entry[0])
+                .thenComparingLong(entry -> entry[1]);
+        PriorityQueue<long[]> soonest = new PriorityQueue<>(urgency.reversed());
+        taskFile.forEach(record, 0, candidate -> {
+            char type = candidate.getType();
+            if ((type != 'D' && type != 'E') || candidate.isCompleted()) {
+                return;
+            }
+            long due = candidate.getDueSeconds();
+            if (due == Long.MAX_VALUE) {
+                return;
+            }
+            // Records come in order of position, so a later one is only more urgent if it is due sooner
+            if (soonest.size() < count || (count > 0 && due < soonest.peek()[0])) {
+                soonest.add(new long[] {due, candidate.getPosition()});
+                if (soonest.size() > count) {
+                    soonest.poll();
+                }
+            }
+        });
+        long[][] entries = soonest.toArray(new long[0][]);
+        Arrays.sort(entries, urgency);
+        LinkedHashMap<Integer, Task> tasks = new LinkedHashMap<>();
+        for (long[] entry : entries) {
+            tasks.put((int) entry[1], null);
+        }
+        // A second pass decodes just the chosen records, which are few
+        taskFile.forEach(record, 0, chosen -> {
+            if (tasks.containsKey(chosen.getPosition())) {
+                tasks.put(chosen.getPosition(), chosen.toTask());
+            }
+        });
+        tasks.values().removeIf(task -> task == null);
+        return tasks;
+    }
+
+    /**
+     * Receives the records of a mapped file one at a time.
+     */
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void visit(Record record) throws IOException;
+    }
+
+    /**
+     * A record of a mapped file, read in place. One Record is moved from record to record, so it must not be kept
+     * past the call it was given in. Fields are found only when they are asked for.
+     */
+    public static class Record {
+        private ByteBuffer buffer;
+        private int start;
+        // The end of the record without its checksum, and the end of the line
+        private int end;
+        private int lineEnd;
+        private int position;
+        private int descriptionStart;
+        private int descriptionEnd;
+
+        private Record() {
+        }
+
+        /**
+         * Moves to the line between two offsets of a region.
+         *
+         * @return Whether the line holds a record of a known task type.
+         */
+        private boolean moveTo(ByteBuffer buffer, int start, int lineEnd, int position) {
+            if (lineEnd > start && buffer.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            this.buffer = buffer;
+            this.start = start;
+            this.lineEnd = lineEnd;
+            this.position = position;
+            this.end = lineEnd;
+            if (lineEnd - start > 9 && buffer.get(lineEnd - 9) == '\t' && isHex(lineEnd - 8, lineEnd)) {
+                this.end = lineEnd - 9;
+            }
+            this.descriptionStart = -1;
+            return end - start >= 5 && TaskCodec.isKnownTag((char) buffer.get(start))
+                    && separatorAt(start + 1);
+        }
+
+        private boolean isHex(int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (Character.digit(buffer.get(i), 16) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean separatorAt(int i) {
+            return i + 2 < end && buffer.get(i) == ' ' && buffer.get(i + 1) == '|' && buffer.get(i + 2) == ' ';
+        }
+
+        /**
+         * Returns the offset of the next separator from an offset on, or the end of the record if there is none.
+         */
+        private int nextSeparator(int from) {
+            for (int i = from; i + 2 < end; i++) {
+                if (separatorAt(i)) {
+                    return i;
+                }
+            }
+            return end;
+        }
+
+        private void findDescription() {
+            if (descriptionStart < 0) {
+                descriptionStart = Math.min(nextSeparator(start + 4) + 3, end);
+                descriptionEnd = nextSeparator(descriptionStart);
+            }
+        }
+
+        /**
+         * Returns the position of the task in the task list, counting the records before it.
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        /**
+         * Returns the letter of the task's type, such as 'D' for a deadline.
+         */
+        public char getType() {
+            return (char) buffer.get(start);
+        }
+
+        public boolean isCompleted() {
+            return buffer.get(start + 4) == '1';
+        }
+
+        /**
+         * Checks whether the description contains a term, comparing the UTF-8 bytes in place, which matches
+         * exactly when the decoded description would contain the decoded term.
+         *
+         * @param term The term, encoded as UTF-8.
+         * @return Whether the description contains the term.
+         */
+        public boolean descriptionContains(byte[] term) {
+            findDescription();
+            int last = descriptionEnd - term.length;
+            for (int i = descriptionStart; i <= last; i++) {
+                int j = 0;
+                while (j < term.length && buffer.get(i + j) == term[j]) {
+                    j++;
+                }
+                if (j == term.length) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the time a deadline is due or an event starts, in the seconds TaskStore keeps times in. The
+         * usual whole minutes are read digit by digit; anything else is decoded.
+         *
+         * @return The time, or Long.MAX_VALUE if the record has none or it cannot be read.
+         */
+        public long getDueSeconds() {
+            findDescription();
+            int field = descriptionEnd + 3;
+            if (field + 16 <= end && buffer.get(field + 4) == '-' && buffer.get(field + 7) == '-'
+                    && buffer.get(field + 10) == 'T' && buffer.get(field + 13) == ':'
+                    && (field + 16 == end || separatorAt(field + 16))) {
+                int year = digits(field, 4);
+                int month = digits(field + 5, 2);
+                int day = digits(field + 8, 2);
+                int hour = digits(field + 11, 2);
+                int minute = digits(field + 14, 2);
+                if (year >= 0 && month >= 1 && month <= 12 && day >= 1
+                        && day <= Month.of(month).length(Year.isLeap(year)) && hour >= 0 && hour < 24
+                        && minute >= 0 && minute < 60) {
+                    return LocalDate.of(year, month, day).toEpochDay() * 86400 + hour * 3600 + minute * 60;
+                }
+            }
+            Task task = toTask();
+            if (task instanceof Task.DeadlineTask) {
+                return TaskStore.toSeconds(((Task.DeadlineTask) task).getBy());
+            }
+            if (task instanceof Task.EventTask) {
+                return TaskStore.toSeconds(((Task.EventTask) task).getFrom());
+            }
+            return Long.MAX_VALUE;
+        }
+
+        /**
+         * Returns the number written in digits at an offset, or -1 if there is anything else there.
+         */
+        private int digits(int from, int width) {
+            int value = 0;
+            for (int i = from; i < from + width; i++) {
+                byte b = buffer.get(i);
+                if (b < '0' || b > '9') {
+                    return -1;
+                }
+                value = value * 10 + (b - '0');
+            }
+            return value;
+        }
+
+        /**
+         * Decodes the record into a task, checking it against its checksum.
+         *
+         * @return The task, or null if the record is damaged or cannot be parsed.
+         */
+        public Task toTask() {
+            byte[] bytes = new byte[lineEnd - start];
+            buffer.get(start, bytes);
+            String line = Storage.checkedRecord(new String(bytes, StandardCharsets.UTF_8));
+            if (line == null) {
+                return null;
+            }
+            try {
+                return Storage.parseLine(line);
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * One mapped file, as one or more regions that each end with a line break.
+     */
+    private static class MappedFile {
+        private final File file;
+        private ArrayList<MappedByteBuffer> regions = new ArrayList<>();
+        private long length = -1;
+        private long modified;
+
+        private MappedFile(File file) {
+            this.file = file;
+        }
+
+        /**
+         * Maps the file again if its length or modification time changed since it was mapped.
+         */
+        private void refresh() throws IOException {
+            long currentLength = file.length();
+            long currentModified = file.lastModified();
+            if (currentLength == length && currentModified == modified) {
+                return;
+            }
+            ArrayList<MappedByteBuffer> mapped = new ArrayList<>();
+            if (currentLength > 0) {
+                if (Storage.isGzipFile(file)) {
+                    throw new IOException(file + " is compressed, so it cannot be read in place. "
+                            + "Run 'compress off' in Barry first.");
+                }
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    long size = channel.size();
+                    for (long start = 0; start < size; ) {
+                        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                Math.min(size - start, MAX_REGION_BYTES));
+                        int limit = region.limit();
+                        if (start + limit < size) {
+                            while (limit > 0 && region.get(limit - 1) != '\n') {
+                                limit--;
+                            }
+                            if (limit == 0) {
+                                throw new IOException("A record in " + file + " is too long to be mapped.");
+                            }
+                            region.limit(limit);
+                        }
+                        mapped.add(region);
+                        start += limit;
+                    }
+                }
+            }
+            // The mapping stays valid once the channel is closed
+            regions = mapped;
+            length = currentLength;
+            modified = currentModified;
+        }
+
+        /**
+         * Visits the records of the file in order. A last line without a line break after it is skipped, as it
+         * is what a write cut off part way leaves.
+         *
+         * @return The position after the last record visited.
+         */
+        private int forEach(Record record, int position, RecordVisitor visitor) throws IOException {
+            for (MappedByteBuffer region : regions) {
+                int end = region.limit();
+                int lineStart = 0;
+                while (lineStart < end) {
+                    int lineEnd = lineStart;
+                    while (lineEnd < end && region.get(lineEnd) != '\n') {
+                        lineEnd++;
+                    }
+                    if (lineEnd == end) {
+                        break;
+                    }
+                    if (record.moveTo(region, lineStart, lineEnd, position)) {
+                        visitor.visit(record);
+                        position++;
+                    }
+                    lineStart = lineEnd + 1;
+                }
+            }
+            return position;
+        }
+    }
+}
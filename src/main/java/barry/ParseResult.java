@@ -0,0 +1,86 @@
+package barry;
+
+/**
+ * The ParseResult class holds the outcome of parsing user input: either the value parsed, such as a command, or
+ * the message telling the user why the input could not be parsed. Invalid input is returned rather than thrown,
+ * as scripts can send a great deal of it, and throwing fills in a stack trace for every line rejected.
+ *
+ * @param <T> The type of the value parsed.
+ */
+public class ParseResult<T> {
+    private final T value;
+    private final String error;
+
+    private ParseResult(T value, String error) {
+        this.value = value;
+        this.error = error;
+    }
+
+    /**
+     * Returns a result holding a parsed value.
+     *
+     * @param value The value parsed, which must not be null.
+     * @return The result.
+     */
+    static <T> ParseResult<T> of(T value) {
+        assert value != null : "A parsed value should not be null";
+        return new ParseResult<>(value, null);
+    }
+
+    /**
+     * Returns a result for input that could not be parsed.
+     *
+     * @param message The message telling the user what is wrong with the input.
+     * @return The result.
+     */
+    static <T> ParseResult<T> error(String message) {
+        return new ParseResult<>(null, message);
+    }
+
+    public boolean isValid() {
+        return error == null;
+    }
+
+    /**
+     * Returns the parsed value.
+     *
+     * @return The value, or null if the input could not be parsed.
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * Returns why the input could not be parsed.
+     *
+     * @return The message for the user, or null if the input was parsed.
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Returns the parsed value, for callers that handle invalid input as an exception.
+     *
+     * @return The value.
+     * @throws BarryException If the input could not be parsed.
+     */
+    public T getOrThrow() throws BarryException {
+        if (error != null) {
+            throw new BarryException(error);
+        }
+        return value;
+    }
+
+    /**
+     * Returns this error as the result of parsing something larger that it was a part of.
+     *
+     * @param <U> The type of the larger value.
+     * @return A result holding the same message.
+     */
+    @SuppressWarnings("unchecked")
+    <U> ParseResult<U> asError() {
+        assert error != null : "Only an error can stand for the result of a larger value";
+        return (ParseResult<U>) this;
+    }
+}
@@ -1,14 +1,29 @@
 package barry;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.text.ParsePosition;
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * The Parser class is responsible for interpreting user input and converting it into executable commands.
  * It parses different types of user commands and provides the appropriate Command object to be executed.
+ * Input that is not a valid command is reported in a ParseResult rather than by throwing, and is checked
+ * without relying on exceptions from the parsing methods of the JDK, so rejecting input costs about as much
+ * as accepting it.
  */
 public class Parser {
+    private static final String DATE_TIME_MESSAGE = "The date and time format is incorrect. Please use d/M/yyyy HHmm format.";
+    private static final String DATE_MESSAGE = "The date format is incorrect. Please use d/M/yyyy format.";
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("d/M/yyyy HHmm");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("d/M/yyyy");
 
     /**
      * Parses the user input and returns the corresponding Command object.
@@ -18,84 +33,623 @@ public class Parser {
      * @throws BarryException If the input does not correspond to any known command, or if there is an error in the input format.
      */
     public static Command parse(String input) throws BarryException {
-        assert input != null && !input.isEmpty() : "Input should not be null or empty";  // Assumption that the input should not be null or empty
-        
+        return tryParse(input).getOrThrow();
+    }
+
+    /**
+     * Parses the user input into a command, without throwing if it is not a valid command.
+     *
+     * @param input The user input string to parse.
+     * @return The command, or the message telling the user what is wrong with the input.
+     */
+    public static ParseResult<Command> tryParse(String input) {
+        assert input != null : "Input should not be null";
+
+        Events.ParseEvent event = new Events.ParseEvent();
+        event.begin();
+        ParseResult<Command> result = parseCommand(input);
+        event.end();
+        if (event.shouldCommit()) {
+            int end = input.indexOf(' ');
+            event.commandWord = end < 0 ? input : input.substring(0, end);
+            event.valid = result.isValid();
+            event.commit();
+        }
+        return result;
+    }
+
+    private static ParseResult<Command> parseCommand(String input) {
         String[] parts = input.split(" ", 2);
         String commandWord = parts[0];
         String arguments = parts.length > 1 ? parts[1] : "";
 
         switch (commandWord) {
-            case "bye":
-                return new Command.ExitCommand();
-            case "list":
-                return new Command.ListCommand();
-            case "mark":
-                assert isInteger(arguments) : "Arguments for 'mark' command should be an integer";  // Assumption that the argument for mark is a valid integer
-                return new Command.MarkCommand(Integer.parseInt(arguments));
-            case "unmark":
-                assert isInteger(arguments) : "Arguments for 'unmark' command should be an integer";  // Assumption that the argument for unmark is a valid integer
-                return new Command.UnmarkCommand(Integer.parseInt(arguments));
             case "todo":
-                assert !arguments.isEmpty() : "Arguments for 'todo' should not be empty";  // Assumption that todo has a description
-                return new Command.AddTodoCommand(arguments);
-            case "find":
-                assert !arguments.isEmpty() : "Arguments for 'find' should not be empty";  // Assumption that find command has a search term
-                return new Command.FindCommand(arguments);
+            case "deadline":
+            case "event":
+            case "recur":
+                // Tags come last, so they are taken off before the rest of the task is parsed
+                ArrayList<String> tags = new ArrayList<>();
+                int tagStart = arguments.indexOf(" /tag ");
+                if (tagStart >= 0) {
+                    for (String tag : arguments.substring(tagStart + 6).split(" /tag ")) {
+                        String normalized = Task.normalizeTagOrNull(tag.trim());
+                        if (normalized == null) {
+                            return ParseResult.error(Task.INVALID_TAG_MESSAGE);
+                        }
+                        tags.add(normalized);
+                    }
+                    arguments = arguments.substring(0, tagStart);
+                }
+                if (!Task.isValidDescription(arguments)) {
+                    return ParseResult.error(Task.INVALID_DESCRIPTION_MESSAGE);
+                }
+                ParseResult<Command.AddTaskCommand> add = parseAddCommand(commandWord, arguments);
+                return add.isValid() ? ParseResult.of(add.getValue().withTags(tags)) : add.asError();
+            case "tag":
+            case "untag":
+                String[] tagParts = arguments.trim().split("\\s+");
+                if (tagParts.length < 2 || !isInteger(tagParts[0])) {
+                    return ParseResult.error("Tag command should follow the format: '" + commandWord
+                            + " [task number] [tag]...'.");
+                }
+                ArrayList<String> tagNames = new ArrayList<>();
+                for (int i = 1; i < tagParts.length; i++) {
+                    String normalized = Task.normalizeTagOrNull(tagParts[i]);
+                    if (normalized == null) {
+                        return ParseResult.error(Task.INVALID_TAG_MESSAGE);
+                    }
+                    tagNames.add(normalized);
+                }
+                return ParseResult.of(new Command.TagCommand(Integer.parseInt(tagParts[0]), tagNames,
+                        commandWord.equals("tag")));
+            default:
+                return parseOtherCommand(commandWord, arguments);
+        }
+    }
+
+    /**
+     * Parses a command that adds a task, once its tags have been taken off.
+     */
+    private static ParseResult<Command.AddTaskCommand> parseAddCommand(String commandWord, String arguments) {
+        switch (commandWord) {
+            case "todo":
+                if (arguments.isBlank()) {
+                    return ParseResult.error("Todo command should follow the format: 'todo [description]'.");
+                }
+                return ParseResult.of(new Command.AddTodoCommand(arguments));
             case "deadline":
                 String[] deadlineParts = arguments.split(" /by ");
-                assert deadlineParts.length == 2 : "Deadline command should follow the format: 'task /by date'";  // Assumption that deadline follows the correct format
+                if (deadlineParts.length != 2) {
+                    return ParseResult.error(
+                            "Deadline command should follow the format: 'deadline [description] /by d/M/yyyy HHmm'.");
+                }
                 LocalDateTime byDateTime = parseDateTime(deadlineParts[1].trim());
-                return new Command.AddDeadlineCommand(deadlineParts[0].trim(), byDateTime);
+                if (byDateTime == null) {
+                    return ParseResult.error(DATE_TIME_MESSAGE);
+                }
+                return ParseResult.of(new Command.AddDeadlineCommand(deadlineParts[0].trim(), byDateTime));
             case "event":
                 String[] eventParts = arguments.split(" /from ");
-                assert eventParts.length == 2 : "Event command should follow the format: 'task /from date /to date'";  // Assumption that event command follows the correct format
-                String[] timeParts = eventParts[1].split(" /to ");
-                assert timeParts.length == 2 : "Event command should contain both 'from' and 'to' times";  // Assumption that the event has both start and end times
+                String[] timeParts = eventParts.length == 2 ? eventParts[1].split(" /to ") : new String[0];
+                if (timeParts.length != 2) {
+                    return ParseResult.error("Event command should follow the format: "
+                            + "'event [description] /from d/M/yyyy HHmm /to d/M/yyyy HHmm'.");
+                }
                 LocalDateTime fromTime = parseDateTime(timeParts[0].trim());
                 LocalDateTime toTime = parseDateTime(timeParts[1].trim());
-                return new Command.AddEventCommand(eventParts[0].trim(), fromTime, toTime);
+                if (fromTime == null || toTime == null) {
+                    return ParseResult.error(DATE_TIME_MESSAGE);
+                }
+                return ParseResult.of(new Command.AddEventCommand(eventParts[0].trim(), fromTime, toTime));
+            default:
+                String[] recurParts = arguments.split(" /from ");
+                String[] ruleParts = recurParts.length == 2 ? recurParts[1].split(" /every ") : new String[0];
+                if (ruleParts.length != 2) {
+                    return ParseResult.error(
+                            "Recurring tasks need a rule, e.g. 'recur gym /from 1/1/2025 1800 /every week'.");
+                }
+                String[] untilParts = ruleParts[1].split(" /until ");
+                LocalDateTime startTime = parseDateTime(ruleParts[0].trim());
+                if (startTime == null) {
+                    return ParseResult.error(DATE_TIME_MESSAGE);
+                }
+                int intervalDays = parseInterval(untilParts[0].trim());
+                if (intervalDays <= 0) {
+                    return ParseResult.error("The recurrence rule should be 'day', 'week' or '[N] days'.");
+                }
+                LocalDate until = null;
+                if (untilParts.length > 1) {
+                    until = parseDate(untilParts[1].trim());
+                    if (until == null) {
+                        return ParseResult.error(DATE_MESSAGE);
+                    }
+                }
+                return ParseResult.of(
+                        new Command.AddRecurringCommand(recurParts[0].trim(), startTime, intervalDays, until));
+        }
+    }
+
+    /**
+     * Parses a command that neither adds a task nor changes its tags.
+     */
+    private static ParseResult<Command> parseOtherCommand(String commandWord, String arguments) {
+        switch (commandWord) {
+            case "bye":
+                return ParseResult.of(new Command.ExitCommand());
+            case "list":
+                // /all also lists the completed tasks of earlier months, which are otherwise only loaded when needed
+                boolean includesOlder = arguments.equals("/all") || arguments.startsWith("/all ");
+                if (includesOlder) {
+                    arguments = arguments.substring(4).trim();
+                }
+                if (arguments.isEmpty()) {
+                    return ParseResult.of(new Command.ListCommand(null, includesOlder));
+                }
+                TaskList.SortOrder order = arguments.startsWith("/sort ")
+                        ? parseSortOrder(arguments.substring(6).trim()) : null;
+                if (order == null) {
+                    return ParseResult.error(arguments.startsWith("/sort ")
+                            ? "Tasks can only be sorted by deadline, type or status."
+                            : "List command should follow the format: 'list [/all] [/sort deadline|type|status]'.");
+                }
+                return ParseResult.of(new Command.ListCommand(order, includesOlder));
+            case "mark":
+                if (!isInteger(arguments)) {
+                    return ParseResult.error("Mark command should follow the format: 'mark [task number]'.");
+                }
+                return ParseResult.of(new Command.MarkCommand(Integer.parseInt(arguments)));
+            case "unmark":
+                if (!isInteger(arguments)) {
+                    return ParseResult.error("Unmark command should follow the format: 'unmark [task number]'.");
+                }
+                return ParseResult.of(new Command.UnmarkCommand(Integer.parseInt(arguments)));
+            case "find":
+                if (arguments.isEmpty()) {
+                    return ParseResult.error("Find command should follow the format: 'find [keyword]'.");
+                }
+                if (arguments.startsWith("/tag ")) {
+                    return parseTagFind(arguments);
+                }
+                if (arguments.startsWith("~") && arguments.length() > 1) {
+                    return ParseResult.of(new Command.FuzzyFindCommand(arguments.substring(1).trim()));
+                }
+                if (arguments.startsWith("/re ")) {
+                    ParseResult<Pattern> pattern = parsePattern(arguments.substring(4).trim());
+                    return pattern.isValid()
+                            ? ParseResult.of(new Command.PatternFindCommand(pattern.getValue()))
+                            : pattern.asError();
+                }
+                if (arguments.startsWith("/i ")) {
+                    Pattern pattern = Pattern.compile(Pattern.quote(arguments.substring(3).trim()),
+                            Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+                    return ParseResult.of(new Command.PatternFindCommand(pattern));
+                }
+                return ParseResult.of(new Command.FindCommand(arguments));
+            case "skip":
+                String[] skipParts = arguments.split(" /on ");
+                if (skipParts.length != 2 || !isInteger(skipParts[0].trim())) {
+                    return ParseResult.error(
+                            "Skip command should follow the format: 'skip [task number] /on d/M/yyyy'.");
+                }
+                LocalDate skipped = parseDate(skipParts[1].trim());
+                if (skipped == null) {
+                    return ParseResult.error(DATE_MESSAGE);
+                }
+                return ParseResult.of(new Command.SkipCommand(Integer.parseInt(skipParts[0].trim()), skipped));
+            case "agenda":
+                if (!arguments.isEmpty() && (!isInteger(arguments) || Integer.parseInt(arguments) <= 0
+                        || Integer.parseInt(arguments) > Command.AgendaCommand.MAX_DAYS)) {
+                    return ParseResult.error("Agenda command should follow the format: 'agenda [number of days]', "
+                            + "with at most " + Command.AgendaCommand.MAX_DAYS + " days.");
+                }
+                return ParseResult.of(new Command.AgendaCommand(arguments.isEmpty() ? 7 : Integer.parseInt(arguments)));
+            case "next":
+                if (!arguments.isEmpty() && (!isInteger(arguments) || Integer.parseInt(arguments) <= 0)) {
+                    return ParseResult.error("Next command should follow the format: 'next [number of tasks]'.");
+                }
+                return ParseResult.of(new Command.NextCommand(arguments.isEmpty() ? 5 : Integer.parseInt(arguments)));
+            case "export":
+                if (arguments.isEmpty()) {
+                    return ParseResult.error(
+                            "Export command should follow the format: 'export [file] /format csv|json'.");
+                }
+                String[] exportParts = arguments.split(" /format ");
+                String exportPath = exportParts[0].trim();
+                if (exportParts.length < 2) {
+                    return ParseResult.of(
+                            new Command.ExportCommand(exportPath, TaskTransfer.Format.fromFileName(exportPath)));
+                }
+                switch (exportParts[1].trim()) {
+                    case "csv":
+                        return ParseResult.of(new Command.ExportCommand(exportPath, TaskTransfer.Format.CSV));
+                    case "json":
+                        return ParseResult.of(new Command.ExportCommand(exportPath, TaskTransfer.Format.JSON));
+                    default:
+                        return ParseResult.error("Tasks can only be exported as csv or json.");
+                }
+            case "import":
+                if (arguments.isEmpty()) {
+                    return ParseResult.error("Import command should follow the format: 'import [file]'.");
+                }
+                return ParseResult.of(new Command.ImportCommand(arguments.trim()));
+            case "archive":
+                if (arguments.isEmpty()) {
+                    return ParseResult.of(new Command.ArchiveCommand());
+                }
+                String policy = arguments.startsWith("/after ") ? arguments.substring(7).trim() : "";
+                if (policy.equals("off")) {
+                    return ParseResult.of(new Command.ArchiveCommand(-1));
+                }
+                if (!isInteger(policy) || Integer.parseInt(policy) < 0) {
+                    return ParseResult.error(
+                            "Archive command should follow the format: 'archive [/after days|off]'.");
+                }
+                return ParseResult.of(new Command.ArchiveCommand(Integer.parseInt(policy)));
+            case "compress":
+                if (!arguments.equals("on") && !arguments.equals("off")) {
+                    return ParseResult.error("Compress command should follow the format: 'compress on|off'.");
+                }
+                return ParseResult.of(new Command.CompressCommand(arguments.equals("on")));
             case "delete":
-                assert isInteger(arguments) : "Arguments for 'delete' command should be an integer";  // Assumption that the argument for delete is a valid integer
-                return new Command.DeleteCommand(Integer.parseInt(arguments));
+                if (!isInteger(arguments)) {
+                    return ParseResult.error("Delete command should follow the format: 'delete [task number]'.");
+                }
+                return ParseResult.of(new Command.DeleteCommand(Integer.parseInt(arguments)));
+            case "query":
+                if (arguments.isEmpty()) {
+                    return ParseResult.error("Query command should follow the format: "
+                            + "'query type:D done:false before:d/M/yyyy text:word [page:N]'.");
+                }
+                int page = 1;
+                StringBuilder queryText = new StringBuilder();
+                for (String term : arguments.trim().split("\\s+")) {
+                    if (term.startsWith("page:")) {
+                        String pageNumber = term.substring(5);
+                        if (!isInteger(pageNumber) || Integer.parseInt(pageNumber) < 1) {
+                            return ParseResult.error("The page number should be a positive number.");
+                        }
+                        page = Integer.parseInt(pageNumber);
+                    } else {
+                        queryText.append(queryText.length() == 0 ? "" : " ").append(term);
+                    }
+                }
+                ParseResult<Query> query = tryParseQuery(queryText.toString());
+                if (!query.isValid()) {
+                    return query.asError();
+                }
+                return ParseResult.of(new Command.QueryCommand(query.getValue(), queryText.toString(), page));
+            case "replicate":
+                if (arguments.isEmpty()) {
+                    return ParseResult.of(new Command.ReplicateCommand(Command.ReplicateCommand.Role.STATUS, 0));
+                }
+                if (arguments.equals("/stop")) {
+                    return ParseResult.of(new Command.ReplicateCommand(Command.ReplicateCommand.Role.STOP, 0));
+                }
+                String[] replicateParts = arguments.split(" ");
+                if (replicateParts.length != 2 || !isInteger(replicateParts[1])
+                        || !(replicateParts[0].equals("/serve") || replicateParts[0].equals("/follow"))) {
+                    return ParseResult.error("Replicate command should follow the format: "
+                            + "'replicate /serve [port]', 'replicate /follow [port]' or 'replicate /stop'.");
+                }
+                Command.ReplicateCommand.Role role = replicateParts[0].equals("/serve")
+                        ? Command.ReplicateCommand.Role.SERVE : Command.ReplicateCommand.Role.FOLLOW;
+                int port = Integer.parseInt(replicateParts[1]);
+                // Sockets throw for ports out of range; port 0 picks a free port to serve on, but cannot be followed
+                if (port < (role == Command.ReplicateCommand.Role.SERVE ? 0 : 1) || port > 65535) {
+                    return ParseResult.error("Ports should be between 1 and 65535, or 0 to serve on any free port.");
+                }
+                return ParseResult.of(new Command.ReplicateCommand(role, port));
+            case "summary":
+                return ParseResult.of(new Command.SummaryCommand());
             case "help":
-                return new Command.HelpCommand();
+                return ParseResult.of(new Command.HelpCommand());
             default:
-                throw new BarryException("I'm sorry, but I don't know what that means :-(");
+                return ParseResult.error("I'm sorry, but I don't know what that means :-(");
         }
     }
 
     /**
      * Parses a date and time string in the format "d/M/yyyy HHmm" and converts it to a LocalDateTime object.
+     * Dates are resolved as DateTimeFormatter would resolve them by default: a day past the end of its month
+     * is moved back to the month's last day, and 2400 is midnight at the end of the day.
      *
      * @param dateTimeString The string representing the date and time.
-     * @return A LocalDateTime object representing the parsed date and time.
-     * @throws BarryException If the input string is not in the correct format.
+     * @return A LocalDateTime object representing the parsed date and time, or null if the string is not in
+     *         the correct format.
+     */
+    private static LocalDateTime parseDateTime(String dateTimeString) {
+        TemporalAccessor fields = parseFields(DATE_TIME_FORMAT, dateTimeString);
+        LocalDate date = fields == null ? null : resolveDate(fields);
+        if (date == null) {
+            return null;
+        }
+        long hour = fields.getLong(ChronoField.HOUR_OF_DAY);
+        long minute = fields.getLong(ChronoField.MINUTE_OF_HOUR);
+        if (hour == 24 && minute == 0 && date.isBefore(LocalDate.MAX)) {
+            return date.plusDays(1).atStartOfDay();
+        }
+        if (hour > 23 || minute > 59) {
+            return null;
+        }
+        return date.atTime((int) hour, (int) minute);
+    }
+
+    /**
+     * Parses a date string in the format "d/M/yyyy" and converts it to a LocalDate object.
+     *
+     * @param dateString The string representing the date.
+     * @return A LocalDate object representing the parsed date, or null if the string is not in the correct
+     *         format.
+     */
+    private static LocalDate parseDate(String dateString) {
+        TemporalAccessor fields = parseFields(DATE_FORMAT, dateString);
+        return fields == null ? null : resolveDate(fields);
+    }
+
+    /**
+     * Reads the fields of a date without resolving them, which unlike DateTimeFormatter.parse returns null
+     * for text that does not match the format instead of throwing.
+     */
+    private static TemporalAccessor parseFields(DateTimeFormatter format, String text) {
+        ParsePosition position = new ParsePosition(0);
+        TemporalAccessor fields = format.parseUnresolved(text, position);
+        if (fields == null || position.getErrorIndex() >= 0 || position.getIndex() != text.length()) {
+            return null;
+        }
+        return fields;
+    }
+
+    /**
+     * Resolves the day, month and year read by parseFields into a date, or returns null if they are out of
+     * range.
+     */
+    private static LocalDate resolveDate(TemporalAccessor fields) {
+        long year = fields.getLong(ChronoField.YEAR_OF_ERA);
+        long month = fields.getLong(ChronoField.MONTH_OF_YEAR);
+        long day = fields.getLong(ChronoField.DAY_OF_MONTH);
+        if (year < 1 || year > Year.MAX_VALUE || month < 1 || month > 12 || day < 1 || day > 31) {
+            return null;
+        }
+        YearMonth yearMonth = YearMonth.of((int) year, (int) month);
+        return yearMonth.atDay((int) Math.min(day, yearMonth.lengthOfMonth()));
+    }
+
+    /**
+     * Parses the name of a sort order for the list command.
+     *
+     * @param key The name of the sort order, such as "deadline".
+     * @return The corresponding sort order, or null if the name does not match any sort order.
+     */
+    private static TaskList.SortOrder parseSortOrder(String key) {
+        switch (key) {
+            case "deadline":
+                return TaskList.SortOrder.DEADLINE;
+            case "type":
+                return TaskList.SortOrder.TYPE;
+            case "status":
+                return TaskList.SortOrder.STATUS;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Parses a structured query into a tree of predicates. Terms are combined with "and" unless they are
+     * separated by "or", which binds more loosely, and a term starting with "-" matches tasks that do not
+     * match the rest of it. For example, "type:D done:false or text:urgent" finds the deadlines that are not
+     * done, and any task mentioning "urgent".
+     *
+     * @param query The query, such as "type:D done:false before:1/12/2026 text:report".
+     * @return The query as a tree of predicates.
+     * @throws BarryException If a term is not recognised or its value is not valid.
+     */
+    static Query parseQuery(String query) throws BarryException {
+        return tryParseQuery(query).getOrThrow();
+    }
+
+    /**
+     * Parses a structured query like parseQuery, without throwing if it is not valid.
+     *
+     * @param query The query, such as "type:D done:false before:1/12/2026 text:report".
+     * @return The query as a tree of predicates, or the message telling the user what is wrong with it.
+     */
+    static ParseResult<Query> tryParseQuery(String query) {
+        ArrayList<Query> alternatives = new ArrayList<>();
+        ArrayList<Query> terms = new ArrayList<>();
+        for (String term : query.trim().split("\\s+")) {
+            if (term.equals("or")) {
+                if (terms.isEmpty()) {
+                    return ParseResult.error("'or' should be placed between query terms.");
+                }
+                alternatives.add(terms.size() == 1 ? terms.get(0) : new Query.And(terms.toArray(new Query[0])));
+                terms.clear();
+            } else if (!term.isEmpty()) {
+                ParseResult<Query> parsed = parseQueryTerm(term);
+                if (!parsed.isValid()) {
+                    return parsed;
+                }
+                terms.add(parsed.getValue());
+            }
+        }
+        if (terms.isEmpty()) {
+            return ParseResult.error("The query should end with a term, such as 'text:report'.");
+        }
+        alternatives.add(terms.size() == 1 ? terms.get(0) : new Query.And(terms.toArray(new Query[0])));
+        return ParseResult.of(alternatives.size() == 1
+                ? alternatives.get(0) : new Query.Or(alternatives.toArray(new Query[0])));
+    }
+
+    /**
+     * Parses a search by tags, such as "/tag work /tag urgent|soon /tag -done". Every /tag group must match,
+     * a group matches if the task has any of its tags, and tags starting with '-' must not be present.
+     */
+    private static ParseResult<Command> parseTagFind(String arguments) {
+        ArrayList<String[]> requiredGroups = new ArrayList<>();
+        ArrayList<String> excluded = new ArrayList<>();
+        for (String group : arguments.substring(5).split(" /tag ")) {
+            group = group.trim();
+            if (group.startsWith("-")) {
+                String tag = Task.normalizeTagOrNull(group.substring(1));
+                if (tag == null) {
+                    return ParseResult.error(Task.INVALID_TAG_MESSAGE);
+                }
+                excluded.add(tag);
+                continue;
+            }
+            String[] alternatives = group.split("\\|");
+            for (int i = 0; i < alternatives.length; i++) {
+                alternatives[i] = Task.normalizeTagOrNull(alternatives[i].trim());
+                if (alternatives[i] == null) {
+                    return ParseResult.error(Task.INVALID_TAG_MESSAGE);
+                }
+            }
+            requiredGroups.add(alternatives);
+        }
+        return ParseResult.of(new Command.TagFindCommand(requiredGroups, excluded));
+    }
+
+    /**
+     * Parses a single query term, such as "type:D" or "-done:true".
      */
-    private static LocalDateTime parseDateTime(String dateTimeString) throws BarryException {
-        assert dateTimeString != null && !dateTimeString.isEmpty() : "Date time string should not be null or empty";  // Assumption that the date string is valid
+    private static ParseResult<Query> parseQueryTerm(String term) {
+        if (term.startsWith("-")) {
+            ParseResult<Query> negated = parseQueryTerm(term.substring(1));
+            return negated.isValid() ? ParseResult.of(new Query.Not(negated.getValue())) : negated;
+        }
+        String[] parts = term.split(":", 2);
+        if (parts.length != 2 || parts[1].isEmpty()) {
+            return ParseResult.error("Query terms should look like 'key:value', such as 'type:D'.");
+        }
+        switch (parts[0]) {
+            case "type":
+                byte type = parseTaskType(parts[1]);
+                if (type < 0) {
+                    return ParseResult.error("The task type should be T, D, E or R.");
+                }
+                return ParseResult.of(new Query.TypeIs(type));
+            case "done":
+                if (!parts[1].equals("true") && !parts[1].equals("false")) {
+                    return ParseResult.error("The value of 'done' should be true or false.");
+                }
+                return ParseResult.of(new Query.DoneIs(parts[1].equals("true")));
+            case "before":
+            case "after":
+                LocalDate date = parseDate(parts[1]);
+                if (date == null) {
+                    return ParseResult.error(DATE_MESSAGE);
+                }
+                if (parts[0].equals("before")) {
+                    return ParseResult.of(new Query.TimeBetween(Long.MIN_VALUE,
+                            TaskStore.toSeconds(date.atStartOfDay())));
+                }
+                return ParseResult.of(new Query.TimeBetween(TaskStore.toSeconds(date.plusDays(1).atStartOfDay()),
+                        Long.MAX_VALUE));
+            case "text":
+                return ParseResult.of(new Query.TextContains(parts[1]));
+            case "tag":
+                String tag = Task.normalizeTagOrNull(parts[1]);
+                if (tag == null) {
+                    return ParseResult.error(Task.INVALID_TAG_MESSAGE);
+                }
+                return ParseResult.of(new Query.HasTag(tag));
+            default:
+                return ParseResult.error("Unknown query term '" + parts[0]
+                        + "'. Use type, done, before, after, text or tag.");
+        }
+    }
+
+    /**
+     * Parses a task type given as its letter or its name, such as "D" or "deadline".
+     *
+     * @return The type, or -1 if it is not recognised.
+     */
+    private static byte parseTaskType(String type) {
+        switch (type.toLowerCase()) {
+            case "t":
+            case "todo":
+                return TaskStore.TODO;
+            case "d":
+            case "deadline":
+                return TaskStore.DEADLINE;
+            case "e":
+            case "event":
+                return TaskStore.EVENT;
+            case "r":
+            case "recurring":
+                return TaskStore.RECURRING;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Compiles a regular expression used to search task descriptions. The JDK only reports an invalid
+     * expression by throwing, so this is the one place parsing still catches an exception.
+     *
+     * @param regex The regular expression to compile.
+     * @return The compiled pattern, or the message telling the user why it is not valid.
+     */
+    private static ParseResult<Pattern> parsePattern(String regex) {
         try {
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("d/M/yyyy HHmm");
-            return LocalDateTime.parse(dateTimeString, formatter);
-        } catch (DateTimeParseException e) {
-            throw new BarryException("The date and time format is incorrect. Please use d/M/yyyy HHmm format.");
+            return ParseResult.of(Pattern.compile(regex));
+        } catch (PatternSyntaxException e) {
+            return ParseResult.error("The search pattern is not a valid regular expression: " + e.getDescription());
+        }
+    }
+
+    /**
+     * Parses a recurrence rule such as "day", "week" or "3 days" into a number of days between occurrences.
+     *
+     * @param rule The recurrence rule to parse.
+     * @return The number of days between occurrences, or 0 if the rule is not recognised or the interval is
+     *         not positive.
+     */
+    private static int parseInterval(String rule) {
+        switch (rule) {
+            case "day":
+            case "daily":
+                return 1;
+            case "week":
+            case "weekly":
+                return 7;
+            default:
+                String[] ruleParts = rule.split(" ");
+                if (ruleParts.length == 2 && ruleParts[1].startsWith("day") && isInteger(ruleParts[0])
+                        && Integer.parseInt(ruleParts[0]) > 0) {
+                    return Integer.parseInt(ruleParts[0]);
+                }
+                return 0;
         }
     }
 
     /**
-     * Helper method to check if a string is an integer.
+     * Helper method to check if a string is an integer. It accepts exactly what Integer.parseInt accepts, but
+     * checks the digits itself, as parseInt reports other strings by throwing.
      *
      * @param str The string to check.
      * @return true if the string can be parsed as an integer, false otherwise.
      */
     private static boolean isInteger(String str) {
-        if (str == null) {
+        if (str == null || str.isEmpty()) {
             return false;
         }
-        try {
-            Integer.parseInt(str);
-            return true;
-        } catch (NumberFormatException e) {
+        boolean isNegative = str.charAt(0) == '-';
+        int start = isNegative || str.charAt(0) == '+' ? 1 : 0;
+        if (start == str.length()) {
             return false;
         }
+        long magnitude = 0;
+        for (int i = start; i < str.length(); i++) {
+            int digit = Character.digit(str.charAt(i), 10);
+            if (digit < 0) {
+                return false;
+            }
+            magnitude = magnitude * 10 + digit;
+            if (magnitude > (long) Integer.MAX_VALUE + 1) {
+                return false;
+            }
+        }
+        return isNegative || magnitude <= Integer.MAX_VALUE;
     }
 }
@@ -0,0 +1,539 @@
+package barry;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.stream.IntStream;
+
+/**
+ * Represents a structured search over a task list, such as {@code type:D done:false before:1/12/2026 text:report},
+ * as a tree of predicates.
+ *
+ * Before a query runs, it is planned: each predicate that an index of the TaskList can answer estimates how many
+ * tasks it matches, and the most selective one produces the candidates. The whole query is then checked against
+ * each candidate as the results are consumed. A query that no index can narrow down scans the list once.
+ */
+public abstract class Query {
+    /** The estimate of a predicate that no index can answer. */
+    static final long NOT_INDEXED = Long.MAX_VALUE;
+    /**
+     * Indexes are only used if they narrow the list down to at most this fraction of it. Above that, reading
+     * the list in order is faster than looking up each candidate, and fills a page of results just as soon.
+     */
+    static final double INDEX_SELECTIVITY = 0.25;
+
+    /**
+     * Checks whether the task at the given position matches this predicate.
+     *
+     * @param store    The store holding the task.
+     * @param position The position of the task.
+     * @return Whether the task matches.
+     */
+    abstract boolean test(TaskStore store, int position);
+
+    /**
+     * Estimates how many tasks an index can narrow this predicate down to. Counting may stop at the limit, as
+     * a planner that has already found a smaller estimate does not need the exact number.
+     *
+     * @param tasks The task list to estimate against.
+     * @param limit The estimate above which the exact number does not matter.
+     * @return The estimate, or NOT_INDEXED if no index can answer this predicate.
+     */
+    long estimate(TaskList tasks, long limit) {
+        return NOT_INDEXED;
+    }
+
+    /**
+     * Returns whether estimate has to walk an index rather than read a kept count, so that a planner can
+     * estimate the cheap predicates first and pass the walk a lower limit.
+     */
+    boolean isEstimateCostly() {
+        return false;
+    }
+
+    /**
+     * Returns the IDs of the tasks an index narrows this predicate down to, in increasing order. Some candidates
+     * may not match, so each is tested afterwards. Predicates that no index can answer have every task as a
+     * candidate, although the planner scans the list instead of asking them.
+     *
+     * @param tasks The task list to look up.
+     * @return The IDs of the candidates.
+     */
+    PrimitiveIterator.OfInt candidateIds(TaskList tasks) {
+        TaskStore store = tasks.getStore();
+        return IntStream.range(0, store.size()).map(store::getId).iterator();
+    }
+
+    /**
+     * Returns the positions of the matching tasks in list order. Matches are found as the iterator is consumed,
+     * so taking the first page of results does not look at the rest of the list.
+     *
+     * @param tasks The task list to search.
+     * @return An iterator over the positions of the matching tasks.
+     */
+    public Iterator<Integer> positions(TaskList tasks) {
+        TaskStore store = tasks.getStore();
+        if (!isWorthIndexing(tasks)) {
+            return new Matches(store) {
+                private int position = -1;
+
+                @Override
+                int nextCandidate() {
+                    position++;
+                    return position < store.size() ? position : -1;
+                }
+            };
+        }
+        PrimitiveIterator.OfInt ids = candidateIds(tasks);
+        return new Matches(store) {
+            @Override
+            int nextCandidate() {
+                return ids.hasNext() ? tasks.indexOfId(ids.nextInt()) : -1;
+            }
+        };
+    }
+
+    /**
+     * Describes how the query would run against the given list, naming the index that provides candidates.
+     *
+     * @param tasks The task list to plan against.
+     * @return A short description of the plan.
+     */
+    public String explain(TaskList tasks) {
+        if (!isWorthIndexing(tasks)) {
+            return "scan of all " + tasks.size() + " tasks";
+        }
+        return describeAccess(tasks) + ", about " + estimate(tasks, tasks.size()) + " candidates";
+    }
+
+    private boolean isWorthIndexing(TaskList tasks) {
+        long limit = (long) (tasks.size() * INDEX_SELECTIVITY);
+        return estimate(tasks, limit + 1) <= limit;
+    }
+
+    /**
+     * Names the index this predicate reads its candidates from.
+     */
+    String describeAccess(TaskList tasks) {
+        return "scan";
+    }
+
+    /**
+     * Filters candidate positions through the query, one match ahead of the consumer.
+     */
+    private abstract class Matches implements Iterator<Integer> {
+        private final TaskStore store;
+        private int next = -2;
+
+        private Matches(TaskStore store) {
+            this.store = store;
+        }
+
+        /**
+         * Returns the position of the next candidate, or -1 if there are no more.
+         */
+        abstract int nextCandidate();
+
+        @Override
+        public boolean hasNext() {
+            if (next == -2) {
+                do {
+                    next = nextCandidate();
+                } while (next >= 0 && !test(store, next));
+            }
+            return next >= 0;
+        }
+
+        @Override
+        public Integer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int position = next;
+            next = -2;
+            return position;
+        }
+    }
+
+    /**
+     * Matches tasks of one type, using the type view of the list. The number of tasks of each type is kept
+     * by the list, so the estimate is exact and free.
+     */
+    static class TypeIs extends Query {
+        private byte type;
+
+        /**
+         * Constructs a TypeIs predicate.
+         *
+         * @param type The task type, one of the type constants in TaskStore.
+         */
+        TypeIs(byte type) {
+            this.type = type;
+        }
+
+        @Override
+        boolean test(TaskStore store, int position) {
+            return store.getType(position) == type;
+        }
+
+        @Override
+        long estimate(TaskList tasks, long limit) {
+            return tasks.countTasks(type);
+        }
+
+        @Override
+        PrimitiveIterator.OfInt candidateIds(TaskList tasks) {
+            // Entries with equal keys are ordered by ID
+            return tasks.idsInRange(TaskList.SortOrder.TYPE, type, type + 1);
+        }
+
+        @Override
+        String describeAccess(TaskList tasks) {
+            return "type index";
+        }
+    }
+
+    /**
+     * Matches tasks that are done, or tasks that are not, using the status view of the list.
+     */
+    static class DoneIs extends Query {
+        private boolean completed;
+
+        DoneIs(boolean completed) {
+            this.completed = completed;
+        }
+
+        @Override
+        boolean test(TaskStore store, int position) {
+            return store.isCompleted(position) == completed;
+        }
+
+        @Override
+        long estimate(TaskList tasks, long limit) {
+            long done = 0;
+            for (byte type = TaskStore.TODO; type <= TaskStore.RECURRING; type++) {
+                done += tasks.countCompleted(type);
+            }
+            return completed ? done : tasks.size() - done;
+        }
+
+        @Override
+        PrimitiveIterator.OfInt candidateIds(TaskList tasks) {
+            long key = completed ? 1 : 0;
+            return tasks.idsInRange(TaskList.SortOrder.STATUS, key, key + 1);
+        }
+
+        @Override
+        String describeAccess(TaskList tasks) {
+            return "status index";
+        }
+    }
+
+    /**
+     * Matches deadlines due, and events and recurring tasks starting, at or after one time and before another,
+     * using the deadline view of the list. Todos have no time and never match.
+     */
+    static class TimeBetween extends Query {
+        private long fromSeconds;
+        private long toSeconds;
+
+        /**
+         * Constructs a TimeBetween predicate.
+         *
+         * @param fromSeconds The earliest matching time in epoch seconds, inclusive.
+         * @param toSeconds   The latest matching time in epoch seconds, exclusive.
+         */
+        TimeBetween(long fromSeconds, long toSeconds) {
+            this.fromSeconds = fromSeconds;
+            this.toSeconds = toSeconds;
+        }
+
+        @Override
+        boolean test(TaskStore store, int position) {
+            if (store.getType(position) == TaskStore.TODO) {
+                return false;
+            }
+            long seconds = store.getStartSeconds(position);
+            return seconds >= fromSeconds && seconds < toSeconds;
+        }
+
+        @Override
+        long estimate(TaskList tasks, long limit) {
+            return tasks.countInRange(TaskList.SortOrder.DEADLINE, fromSeconds, toSeconds, limit);
+        }
+
+        @Override
+        boolean isEstimateCostly() {
+            return true;
+        }
+
+        @Override
+        PrimitiveIterator.OfInt candidateIds(TaskList tasks) {
+            // The view is ordered by time, so the IDs are sorted to return results in list order
+            PrimitiveIterator.OfInt inRange = tasks.idsInRange(TaskList.SortOrder.DEADLINE, fromSeconds, toSeconds);
+            int[] ids = new int[16];
+            int count = 0;
+            while (inRange.hasNext()) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+                ids[count++] = inRange.nextInt();
+            }
+            Arrays.sort(ids, 0, count);
+            return Arrays.stream(ids, 0, count).iterator();
+        }
+
+        @Override
+        String describeAccess(TaskList tasks) {
+            return "deadline index";
+        }
+    }
+
+    /**
+     * Matches tasks whose descriptions contain a word, ignoring case, using the trigram index of the list.
+     */
+    static class TextContains extends Query {
+        private String term;
+
+        TextContains(String term) {
+            this.term = term;
+        }
+
+        @Override
+        boolean test(TaskStore store, int position) {
+            String description = store.getDescription(position);
+            for (int i = 0; i + term.length() <= description.length(); i++) {
+                if (description.regionMatches(true, i, term, 0, term.length())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        long estimate(TaskList tasks, long limit) {
+            int estimate = tasks.trigramIndex().estimateContaining(term);
+            return estimate < 0 ? NOT_INDEXED : estimate;
+        }
+
+        @Override
+        PrimitiveIterator.OfInt candidateIds(TaskList tasks) {
+            return Arrays.stream(tasks.trigramIndex().idsContaining(term)).iterator();
+        }
+
+        @Override
+        String describeAccess(TaskList tasks) {
+            return "text index for '" + term + "'";
+        }
+    }
+
+    /**
+     * Matches tasks with a tag, using the tag bitmaps of the list.
+     */
+    static class HasTag extends Query {
+        private String tag;
+
+        HasTag(String tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        boolean test(TaskStore store, int position) {
+            return Arrays.binarySearch(store.getTags(position), tag) >= 0;
+        }
+
+        @Override
+        long estimate(TaskList tasks, long limit) {
+            return tasks.idsWithTag(tag).cardinality();
+        }
+
+        @Override
+        PrimitiveIterator.OfInt candidateIds(TaskList tasks) {
+            return tasks.idsWithTag(tag).iterator();
+        }
+
+        @Override
+        String describeAccess(TaskList tasks) {
+            return "tag index for #" + tag;
+        }
+    }
+
+    /**
+     * Matches tasks that do not match another predicate. No index can answer this, so it is only ever used as a
+     * filter.
+     */
+    static class Not extends Query {
+        private Query operand;
+
+        Not(Query operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean test(TaskStore store, int position) {
+            return !operand.test(store, position);
+        }
+    }
+
+    /**
+     * Matches tasks that match all of its predicates. Candidates come from the most selective of them.
+     */
+    static class And extends Query {
+        private Query[] operands;
+
+        And(Query... operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        boolean test(TaskStore store, int position) {
+            for (Query operand : operands) {
+                if (!operand.test(store, position)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        long estimate(TaskList tasks, long limit) {
+            return operands.length == 0 ? NOT_INDEXED : mostSelective(tasks, limit).estimate(tasks, limit);
+        }
+
+        @Override
+        boolean isEstimateCostly() {
+            for (Query operand : operands) {
+                if (operand.isEstimateCostly()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Picks the operand with the smallest estimate, lowering the limit as smaller estimates are found.
+         * Operands with cheap estimates go first, so that the costly ones stop counting as early as possible.
+         */
+        private Query mostSelective(TaskList tasks, long limit) {
+            Query best = operands[0];
+            long bestEstimate = NOT_INDEXED;
+            for (boolean costly : new boolean[] {false, true}) {
+                for (Query operand : operands) {
+                    if (operand.isEstimateCostly() != costly) {
+                        continue;
+                    }
+                    long estimate = operand.estimate(tasks, Math.min(limit, bestEstimate));
+                    if (estimate < bestEstimate) {
+                        best = operand;
+                        bestEstimate = estimate;
+                    }
+                }
+            }
+            return best;
+        }
+
+        @Override
+        PrimitiveIterator.OfInt candidateIds(TaskList tasks) {
+            return mostSelective(tasks, tasks.size()).candidateIds(tasks);
+        }
+
+        @Override
+        String describeAccess(TaskList tasks) {
+            return mostSelective(tasks, tasks.size()).describeAccess(tasks);
+        }
+    }
+
+    /**
+     * Matches tasks that match any of its predicates. Candidates are the union of its predicates' candidates,
+     * so it can only use indexes if every predicate can.
+     */
+    static class Or extends Query {
+        private Query[] operands;
+
+        Or(Query... operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        boolean test(TaskStore store, int position) {
+            for (Query operand : operands) {
+                if (operand.test(store, position)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        boolean isEstimateCostly() {
+            for (Query operand : operands) {
+                if (operand.isEstimateCostly()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        long estimate(TaskList tasks, long limit) {
+            long total = 0;
+            for (Query operand : operands) {
+                long estimate = operand.estimate(tasks, limit);
+                if (estimate == NOT_INDEXED) {
+                    return NOT_INDEXED;
+                }
+                total += estimate;
+            }
+            return total;
+        }
+
+        @Override
+        PrimitiveIterator.OfInt candidateIds(TaskList tasks) {
+            PrimitiveIterator.OfInt[] sources = new PrimitiveIterator.OfInt[operands.length];
+            int[] heads = new int[operands.length];
+            for (int i = 0; i < operands.length; i++) {
+                sources[i] = operands[i].candidateIds(tasks);
+                heads[i] = sources[i].hasNext() ? sources[i].nextInt() : Integer.MAX_VALUE;
+            }
+            // Merges the sorted candidates of every operand, skipping IDs that several of them produce
+            return new PrimitiveIterator.OfInt() {
+                private int smallest() {
+                    int smallest = Integer.MAX_VALUE;
+                    for (int head : heads) {
+                        smallest = Math.min(smallest, head);
+                    }
+                    return smallest;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return smallest() != Integer.MAX_VALUE;
+                }
+
+                @Override
+                public int nextInt() {
+                    int id = smallest();
+                    if (id == Integer.MAX_VALUE) {
+                        throw new NoSuchElementException();
+                    }
+                    for (int i = 0; i < heads.length; i++) {
+                        while (heads[i] == id) {
+                            heads[i] = sources[i].hasNext() ? sources[i].nextInt() : Integer.MAX_VALUE;
+                        }
+                    }
+                    return id;
+                }
+            };
+        }
+
+        @Override
+        String describeAccess(TaskList tasks) {
+            StringBuilder access = new StringBuilder("union of");
+            for (int i = 0; i < operands.length; i++) {
+                access.append(i == 0 ? " " : " and ").append(operands[i].describeAccess(tasks));
+            }
+            return access.toString();
+        }
+    }
+}
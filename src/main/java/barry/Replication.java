@@ -0,0 +1,561 @@
+package barry;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps a warm copy of a task list in another instance on the same machine by shipping the changes made to
+ * it, rather than having the other instance reload the task file.
+ *
+ * The leader records every change to its TaskList in a log of numbered entries and streams the log to
+ * followers over a local socket. A follower applies the entries in order to its own TaskList and saves them
+ * to its own task file. A follower that connects for the first time, or that has fallen so far behind that
+ * the entries it needs have left the log, is sent a snapshot of the whole list first.
+ *
+ * Both sides apply changes while holding the lock of the TaskList, which Barry also holds while it runs a
+ * command, so replication never sees a list in the middle of a change.
+ */
+public interface Replication {
+
+    /**
+     * Describes the state of replication, including how far the followers lag behind.
+     *
+     * @return A description for the user.
+     */
+    String describeStatus();
+
+    /**
+     * Stops replicating and closes the connections.
+     *
+     * @throws IOException If a socket cannot be closed.
+     */
+    void close() throws IOException;
+
+    /**
+     * Publishes the changes made to a TaskList to any follower that connects to its port.
+     */
+    static class Leader implements Replication, TaskList.ChangeListener {
+        /** The number of entries kept in the log. Followers that fall further behind are sent a snapshot. */
+        public static final int LOG_CAPACITY = 100_000;
+        /** How often an idle leader tells its followers where the log ends. */
+        private static final long HEARTBEAT_MILLIS = 1000;
+
+        private TaskList tasks;
+        private ServerSocket server;
+        // Identifies this run of the leader, so a follower does not resume from a position in an older log
+        private long epoch;
+        // The log is a ring: entry n is at n % LOG_CAPACITY. Guarded by its own lock.
+        private String[] log;
+        private long[] logMillis;
+        private long head;
+        private volatile boolean closed;
+        private CopyOnWriteArrayList<Link> links;
+
+        /**
+         * Starts publishing the changes made to the given task list on a local port.
+         *
+         * @param tasks The task list to replicate.
+         * @param port  The port to listen on, or 0 to pick a free port.
+         * @throws IOException If the port cannot be opened.
+         */
+        public Leader(TaskList tasks, int port) throws IOException {
+            this.tasks = tasks;
+            this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+            this.epoch = System.currentTimeMillis();
+            this.log = new String[LOG_CAPACITY];
+            this.logMillis = new long[LOG_CAPACITY];
+            this.links = new CopyOnWriteArrayList<>();
+            tasks.addListener(this);
+            Thread acceptor = new Thread(this::acceptFollowers, "replication-leader");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        public int getPort() {
+            return server.getLocalPort();
+        }
+
+        @Override
+        public void taskAdded(Task task) {
+            append("ADD\t" + Storage.formatTask(task));
+        }
+
+        @Override
+        public void taskRemoved(int position) {
+            append("DEL\t" + position);
+        }
+
+        @Override
+        public void taskReplaced(int position, Task task) {
+            append("SET\t" + position + "\t" + Storage.formatTask(task));
+        }
+
+        @Override
+        public void taskCompletionChanged(int position, boolean completed) {
+            append((completed ? "MARK\t" : "UNMARK\t") + position);
+        }
+
+        @Override
+        public void occurrenceSkipped(int position, LocalDate date) {
+            append("SKIP\t" + position + "\t" + date);
+        }
+
+        @Override
+        public void taskTagged(int position, String tag, boolean tagged) {
+            append((tagged ? "TAG\t" : "UNTAG\t") + position + "\t" + tag);
+        }
+
+        /**
+         * Adds an entry to the end of the log and wakes the followers' senders.
+         */
+        private void append(String change) {
+            long millis = System.currentTimeMillis();
+            synchronized (log) {
+                head++;
+                int slot = (int) (head % LOG_CAPACITY);
+                log[slot] = head + "\t" + millis + "\t" + change;
+                logMillis[slot] = millis;
+                log.notifyAll();
+            }
+        }
+
+        private void acceptFollowers() {
+            while (!closed) {
+                try {
+                    Link link = new Link(server.accept());
+                    links.add(link);
+                    Thread sender = new Thread(() -> serve(link), "replication-sender");
+                    sender.setDaemon(true);
+                    sender.start();
+                } catch (IOException e) {
+                    if (!closed) {
+                        System.err.println("Failed to accept a replication follower: " + e.getMessage());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Streams the log to one follower until it disconnects. The follower answers the leader's greeting
+         * with the last entry it applied, and acknowledges entries as it applies them.
+         */
+        private void serve(Link link) {
+            try (Socket socket = link.socket;
+                    BufferedReader in = new BufferedReader(
+                            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    Writer out = new BufferedWriter(
+                            new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+                out.write("LEADER\t" + epoch + "\n");
+                out.flush();
+                String[] greeting = readLine(in).split("\t");
+                long next = Long.parseLong(greeting[1]) + 1;
+                link.acked = next - 1;
+                Thread ackReader = new Thread(() -> readAcks(link, in), "replication-acks");
+                ackReader.setDaemon(true);
+                ackReader.start();
+
+                ArrayList<String> batch = new ArrayList<>();
+                while (!closed) {
+                    long end;
+                    boolean inLog;
+                    synchronized (log) {
+                        if (head < next) {
+                            log.wait(HEARTBEAT_MILLIS);
+                        }
+                        end = head;
+                        // Entries before the first one in the ring, or after the end of the log, cannot be sent
+                        inLog = next > 0 && next > end - LOG_CAPACITY && next <= end + 1;
+                        for (long seq = next; inLog && seq <= end; seq++) {
+                            batch.add(log[(int) (seq % LOG_CAPACITY)]);
+                        }
+                    }
+                    if (!inLog) {
+                        next = sendSnapshot(out) + 1;
+                    } else if (batch.isEmpty()) {
+                        out.write("HEAD\t" + end + "\n");
+                    } else {
+                        for (String entry : batch) {
+                            out.write(entry);
+                            out.write('\n');
+                        }
+                        next = end + 1;
+                        batch.clear();
+                    }
+                    out.flush();
+                }
+            } catch (IOException | RuntimeException e) {
+                // The follower disconnected or sent something unreadable; it will reconnect
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                links.remove(link);
+            }
+        }
+
+        private static void readAcks(Link link, BufferedReader in) {
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] parts = line.split("\t");
+                    if (parts[0].equals("ACK")) {
+                        link.acked = Long.parseLong(parts[1]);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // The sender notices the closed socket on its next write
+            }
+        }
+
+        /**
+         * Sends the whole task list, as of the latest entry in the log.
+         *
+         * @return The number of the latest entry, which the snapshot includes.
+         */
+        private long sendSnapshot(Writer out) throws IOException {
+            ArrayList<String> records = new ArrayList<>();
+            long seq;
+            synchronized (tasks) {
+                synchronized (log) {
+                    seq = head;
+                }
+                for (Task task : tasks.getTasks()) {
+                    records.add(Storage.formatTask(task));
+                }
+            }
+            out.write("SNAPSHOT\t" + seq + "\t" + records.size() + "\n");
+            for (String record : records) {
+                out.write(record);
+                out.write('\n');
+            }
+            return seq;
+        }
+
+        @Override
+        public String describeStatus() {
+            long end;
+            long now = System.currentTimeMillis();
+            StringBuilder status = new StringBuilder();
+            synchronized (log) {
+                end = head;
+                status.append("Publishing changes on port ").append(getPort()).append(", ").append(end)
+                        .append(" change(s) so far.");
+                for (Link link : links) {
+                    long acked = link.acked;
+                    status.append("\nFollower ").append(link.socket.getRemoteSocketAddress()).append(": ");
+                    if (acked >= end) {
+                        status.append("up to date");
+                    } else if (acked <= end - LOG_CAPACITY || acked < 0) {
+                        status.append("catching up from a snapshot");
+                    } else {
+                        long oldestUnapplied = logMillis[(int) ((acked + 1) % LOG_CAPACITY)];
+                        status.append(end - acked).append(" change(s) behind, ").append(now - oldestUnapplied)
+                                .append(" ms lag");
+                    }
+                }
+            }
+            if (links.isEmpty()) {
+                status.append("\nNo followers are connected.");
+            }
+            return status.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            tasks.removeListener(this);
+            server.close();
+            for (Link link : links) {
+                link.socket.close();
+            }
+        }
+
+        /**
+         * A connection to one follower.
+         */
+        private static class Link {
+            private final Socket socket;
+            // The last entry the follower has applied, or -1 before its first snapshot
+            private volatile long acked = -1;
+
+            private Link(Socket socket) {
+                this.socket = socket;
+            }
+        }
+    }
+
+    /**
+     * Applies the changes published by a leader to a local task list, reconnecting if the leader goes away.
+     */
+    static class Follower implements Replication {
+        /** How long to wait before connecting to the leader again. */
+        private static final long RETRY_MILLIS = 1000;
+
+        private TaskList tasks;
+        private Storage storage;
+        private int port;
+        private volatile boolean closed;
+        private volatile Socket socket;
+        // The leader run and its last entry that were applied; other runs' entry numbers mean nothing here
+        private long leaderEpoch;
+        private volatile long applied = -1;
+        private volatile long leaderHead = -1;
+        private volatile long lastDelayMillis;
+        // Why following stopped by itself, or null while it has not
+        private volatile String failure;
+
+        /**
+         * Starts following the leader on a local port. Changes are applied to the given task list and saved
+         * with the given storage.
+         *
+         * @param tasks   The task list to keep in step with the leader.
+         * @param storage The storage to save the task list with.
+         * @param port    The port the leader listens on.
+         */
+        public Follower(TaskList tasks, Storage storage, int port) {
+            this.tasks = tasks;
+            this.storage = storage;
+            this.port = port;
+            Thread receiver = new Thread(this::follow, "replication-follower");
+            receiver.setDaemon(true);
+            receiver.start();
+        }
+
+        public long getApplied() {
+            return applied;
+        }
+
+        private void follow() {
+            while (!closed) {
+                try (Socket connection = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                    socket = connection;
+                    receive(connection);
+                } catch (IOException e) {
+                    // The leader is not running yet, or went away
+                } catch (BarryException | RuntimeException e) {
+                    System.err.println("Replication diverged from the leader, fetching a snapshot: "
+                            + e.getMessage());
+                    leaderEpoch = 0;
+                }
+                try {
+                    if (!closed) {
+                        Thread.sleep(RETRY_MILLIS);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Receives entries until the connection closes. Entries that arrive together are applied as one
+         * batch, which is saved and acknowledged once. A batch of heartbeats alone changes nothing, so the
+         * task file is only saved when a batch holds a change or a snapshot. A batch is read, and a snapshot
+         * in it parsed, before the task list is locked, so a large snapshot does not hold up commands or the
+         * task list view while it arrives.
+         */
+        private void receive(Socket connection) throws IOException, BarryException {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(),
+                    StandardCharsets.UTF_8));
+            long epoch = Long.parseLong(readLine(in).split("\t")[1]);
+            if (epoch != leaderEpoch) {
+                applied = -1;
+            }
+            leaderEpoch = epoch;
+            out.write("FROM\t" + applied + "\n");
+            out.flush();
+            while (!closed) {
+                ArrayList<String> batch = new ArrayList<>();
+                ArrayList<Task> snapshot = null;
+                String line = readLine(in);
+                do {
+                    if (line.startsWith("SNAPSHOT\t")) {
+                        // The snapshot replaces the whole list, so the entries before it do not matter
+                        batch.clear();
+                        snapshot = readSnapshot(line, in);
+                        if (snapshot == null) {
+                            return;
+                        }
+                    }
+                    batch.add(line);
+                } while (in.ready() && (line = in.readLine()) != null);
+                synchronized (tasks) {
+                    // Replication may have been stopped while the batch arrived, and the list is then the user's
+                    boolean changed = false;
+                    for (int i = 0; i < batch.size() && !closed; i++) {
+                        changed |= apply(batch.get(i), snapshot);
+                    }
+                    if (changed) {
+                        storage.save(tasks.getTasks());
+                    }
+                }
+                out.write("ACK\t" + applied + "\n");
+                out.flush();
+            }
+        }
+
+        /**
+         * Reads and parses the tasks of a snapshot.
+         *
+         * @param header The line announcing the snapshot.
+         * @return The tasks, or null if one of them cannot be read, in which case following has stopped.
+         */
+        private ArrayList<Task> readSnapshot(String header, BufferedReader in) throws IOException {
+            int count = Integer.parseInt(header.split("\t")[2]);
+            ArrayList<Task> snapshot = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                Task task = parseTask(readLine(in));
+                if (task == null) {
+                    return null;
+                }
+                snapshot.add(task);
+            }
+            return snapshot;
+        }
+
+        /**
+         * Parses a task sent by the leader. Skipping a task this instance cannot read would leave its list
+         * different from the leader's, and fetching a snapshot would only send the task again, so following
+         * stops instead, and describeStatus tells the user why.
+         *
+         * @return The task, or null if it cannot be read.
+         */
+        private Task parseTask(String record) {
+            Task task;
+            try {
+                task = Storage.parseLine(record);
+            } catch (RuntimeException e) {
+                task = null;
+            }
+            if (task == null) {
+                failure = "the leader sent a task this instance cannot read: " + record;
+                closed = true;
+                System.err.println("Stopped following: " + failure);
+            }
+            return task;
+        }
+
+        /**
+         * Applies one entry to the task list.
+         *
+         * @param line     The entry.
+         * @param snapshot The tasks of the snapshot in the entry's batch, if there is one.
+         * @return Whether the entry changed the task list, which a heartbeat does not.
+         */
+        private boolean apply(String line, ArrayList<Task> snapshot) throws BarryException {
+            String[] parts = line.split("\t", 4);
+            switch (parts[0]) {
+                case "HEAD":
+                    leaderHead = Long.parseLong(parts[1]);
+                    return false;
+                case "SNAPSHOT":
+                    tasks.clear();
+                    for (Task task : snapshot) {
+                        tasks.addTask(task);
+                    }
+                    applied = Long.parseLong(parts[1]);
+                    leaderHead = Math.max(leaderHead, applied);
+                    return true;
+                default:
+                    break;
+            }
+            long seq = Long.parseLong(parts[0]);
+            if (seq != applied + 1) {
+                throw new BarryException("Expected change " + (applied + 1) + " but received change " + seq + ".");
+            }
+            String[] arguments = parts[3].split("\t");
+            Task task;
+            switch (parts[2]) {
+                case "ADD":
+                    task = parseTask(parts[3]);
+                    if (task == null) {
+                        return false;
+                    }
+                    tasks.addTask(task);
+                    break;
+                case "DEL":
+                    tasks.removeTask(Integer.parseInt(arguments[0]));
+                    break;
+                case "SET":
+                    task = parseTask(arguments[1]);
+                    if (task == null) {
+                        return false;
+                    }
+                    tasks.replaceTask(Integer.parseInt(arguments[0]), task);
+                    break;
+                case "MARK":
+                    tasks.markTask(Integer.parseInt(arguments[0]));
+                    break;
+                case "UNMARK":
+                    tasks.unmarkTask(Integer.parseInt(arguments[0]));
+                    break;
+                case "SKIP":
+                    tasks.skipOccurrence(Integer.parseInt(arguments[0]), LocalDate.parse(arguments[1]));
+                    break;
+                case "TAG":
+                    tasks.tagTask(Integer.parseInt(arguments[0]), arguments[1]);
+                    break;
+                case "UNTAG":
+                    tasks.untagTask(Integer.parseInt(arguments[0]), arguments[1]);
+                    break;
+                default:
+                    throw new BarryException("Unknown change: " + parts[2]);
+            }
+            applied = seq;
+            leaderHead = Math.max(leaderHead, seq);
+            lastDelayMillis = System.currentTimeMillis() - Long.parseLong(parts[1]);
+            return true;
+        }
+
+        @Override
+        public String describeStatus() {
+            if (failure != null) {
+                return "Stopped following the instance on port " + port + ", as " + failure
+                        + "\nUse 'replicate /stop' to change the tasks here.";
+            }
+            long done = applied;
+            if (done < 0) {
+                return "Waiting for a snapshot from the instance on port " + port + ".";
+            }
+            long behind = Math.max(0, leaderHead - done);
+            return "Following the instance on port " + port + ": applied " + done + " change(s), "
+                    + (behind == 0 ? "up to date" : behind + " change(s) behind")
+                    + ". The last change arrived " + lastDelayMillis + " ms after it was made.";
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            Socket connection = socket;
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Reads a line that must be there.
+     *
+     * @throws SocketException If the other side closed the connection.
+     */
+    private static String readLine(BufferedReader in) throws IOException {
+        String line = in.readLine();
+        if (line == null) {
+            throw new SocketException("Connection closed.");
+        }
+        return line;
+    }
+}
@@ -0,0 +1,165 @@
+package barry;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * The ResultCache class keeps the rendered responses of read-only commands, so that a command repeated before
+ * the task list changes is answered without running it again. Entries are keyed by the command as it was typed
+ * and are only valid for the version of the task list they were rendered from; the first lookup after a change
+ * drops them all. The cache holds a bounded number of characters, evicting the least recently used responses.
+ * A recurring task shows its next occurrence, which moves on with the clock while the task list stays the same,
+ * so nothing is kept while the task list holds a recurring task, nor a response that a command marked as
+ * depending on the time because it showed an archived one.
+ */
+public class ResultCache {
+    /** The most characters of responses kept at once. */
+    static final int MAX_TOTAL_CHARS = 4 << 20;
+    /** Responses longer than this are not kept, so one huge response cannot push out all the others. */
+    static final int MAX_ENTRY_CHARS = MAX_TOTAL_CHARS / 4;
+    /** The most responses kept at once. */
+    static final int MAX_ENTRIES = 256;
+
+    private LinkedHashMap<String, String> entries;
+    private long version;
+    private long totalChars;
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructs an empty ResultCache.
+     */
+    public ResultCache() {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.version = -1;
+    }
+
+    /**
+     * Writes the response to a command to the sink, from the cache if it holds one rendered from the current
+     * version of the task list, or else by executing the command and keeping what it writes.
+     *
+     * @param key     The command as it was typed.
+     * @param command The parsed command, which must not change the task list.
+     * @param tasks   The TaskList to execute the command on.
+     * @param ui      The Ui instance for user interaction.
+     * @param storage The Storage instance for saving/loading tasks.
+     * @param out     The sink the response is written to.
+     * @throws BarryException If there is an error in the task operations.
+     * @throws IOException    If there is an error in input/output operations.
+     */
+    public void execute(String key, Command command, TaskList tasks, Ui ui, Storage storage, Appendable out)
+            throws BarryException, IOException {
+        assert command.isCacheable() : "Only commands that do not change the task list should be cached.";
+        if (tasks.getVersion() != version) {
+            entries.clear();
+            totalChars = 0;
+            version = tasks.getVersion();
+        }
+        String cached = entries.get(key);
+        if (cached != null) {
+            hits++;
+            out.append(cached);
+            return;
+        }
+        misses++;
+        Recorder recorder = new Recorder(out);
+        command.execute(tasks, ui, storage, recorder);
+        if (tasks.getVersion() != version) {
+            // The command loaded older tasks into the list, which leaves the other responses out of date
+            entries.clear();
+            totalChars = 0;
+            version = tasks.getVersion();
+        }
+        if (recorder.recorded != null && !recorder.isTimeDependent && tasks.countTasks(TaskStore.RECURRING) == 0) {
+            put(key, recorder.recorded.toString());
+        }
+    }
+
+    /**
+     * Marks the response being written to a sink as depending on the time, so that it is not cached. Commands
+     * call this when they write a task that is not in the task list, whose type the cache cannot see. Other
+     * sinks are left alone.
+     *
+     * @param out The sink the response is written to.
+     */
+    static void markTimeDependent(Appendable out) {
+        if (out instanceof Recorder) {
+            ((Recorder) out).isTimeDependent = true;
+        }
+    }
+
+    private void put(String key, String response) {
+        entries.put(key, response);
+        totalChars += response.length();
+        Iterator<String> eldest = entries.values().iterator();
+        while (totalChars > MAX_TOTAL_CHARS || entries.size() > MAX_ENTRIES) {
+            totalChars -= eldest.next().length();
+            eldest.remove();
+        }
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the fraction of lookups that were answered from the cache.
+     *
+     * @return The hit rate, or 0 if nothing was looked up yet.
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Passes a response on to the real sink while keeping a copy, until the response grows too long to cache.
+     */
+    private static class Recorder implements Appendable {
+        private final Appendable out;
+        private StringBuilder recorded = new StringBuilder();
+        private boolean isTimeDependent;
+
+        private Recorder(Appendable out) {
+            this.out = out;
+        }
+
+        @Override
+        public Appendable append(CharSequence text) throws IOException {
+            out.append(text);
+            record(text, 0, text.length());
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence text, int start, int end) throws IOException {
+            out.append(text, start, end);
+            record(text, start, end);
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            out.append(c);
+            if (recorded != null && recorded.length() < MAX_ENTRY_CHARS) {
+                recorded.append(c);
+            } else {
+                recorded = null;
+            }
+            return this;
+        }
+
+        private void record(CharSequence text, int start, int end) {
+            if (recorded != null && recorded.length() + end - start <= MAX_ENTRY_CHARS) {
+                recorded.append(text, start, end);
+            } else {
+                recorded = null;
+            }
+        }
+    }
+}
@@ -1,19 +1,101 @@
 package barry;
 
 import java.io.*;
-import java.time.LocalDateTime;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * The Storage class manages reading and writing of tasks to a file.
  * It provides functionality to load tasks from the file and save them back.
  * Tasks are stored as text in the format that includes task type, completion
  * status,
- * and relevant task details.
+ * and relevant task details. The file can optionally be GZIP-compressed, which
+ * is detected when it is read. Changes made to the file by other programs can be
+ * watched for and applied to the task list as a delta. Several processes can
+ * share one file: writes are serialised by a lock file holding a version, and a
+ * writer that missed another's save merges with it instead of overwriting it.
+ *
+ * Completed tasks can be archived: they are moved to a cold file next to the task
+ * file, in the same format, which is only read when a search or export asks for it.
+ *
+ * Completed tasks from before the last few months are kept out of the task file,
+ * in one segment file per month. Segments are not read at start-up, but loaded
+ * into the task list when a command needs them, and a save only rewrites the
+ * segments whose tasks changed.
+ *
+ * Every record is written with a checksum after it, and files are rewritten by
+ * writing a temporary file, forcing it to disk and renaming it over the old one,
+ * so a crash leaves either the old file or the new one. Records whose checksum
+ * does not match are set aside in a quarantine file instead of being loaded.
  */
 public class Storage {
+    /**
+     * The compression level used for compressed task files. The fastest level keeps saves close to the speed of
+     * plain text while still shrinking the repetitive records several times.
+     */
+    public static final int COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // How long a reader waits for a write in progress before checking whether its writer is still alive
+    private static final int STALE_WRITE_CHECK_MILLIS = 1000;
+    private static final String ARCHIVE_AFTER_DAYS = "archive.after.days";
+    // The number of hexadecimal digits of the checksum after each record
+    private static final int CHECKSUM_DIGITS = 8;
+    /**
+     * The number of months, counting the current one, whose completed tasks stay in the task file. Completed
+     * tasks from earlier months are saved in a segment file for their month.
+     */
+    public static final int WINDOW_MONTHS = 3;
+    // The number of task types, and so the offset of the completed counts in an array of segment task counts
+    private static final int TYPE_COUNT = TaskStore.RECURRING + 1;
+
     private String filePath;
+    private boolean compressed;
+
+    // The records as this instance last read or wrote them, in task list order, used to detect external changes
+    private long[] syncedHashes = new long[0];
+    // The task list position of each of those records, as the task list also holds tasks loaded from segments
+    private int[] syncedPositions = new int[0];
+    private long syncedLength;
+    private long syncedModified;
+    private long syncedTailChecksum;
+    private int syncGeneration;
+    // The version of the file, kept in its lock file, as this instance last read or wrote it
+    private long knownVersion;
+    // Kept open for the lifetime of this instance, as closing any channel to the lock file releases the lock
+    private volatile FileChannel lockChannel;
+    private ConcurrentLinkedQueue<ExternalChange> pendingChanges = new ConcurrentLinkedQueue<>();
+    private TaskFileWatcher watcher;
+    private Replication replication;
+    // The days after completion that tasks are archived automatically, or -1, once read from the settings file
+    private Integer archiveAfterDays;
+    // The month segments on disk, by month
+    private TreeMap<YearMonth, Segment> segments = new TreeMap<>();
 
     /**
      * Constructs a Storage object with the specified file path for reading and
@@ -23,14 +105,43 @@ public class Storage {
      *                 from.
      */
     public Storage(String filePath) {
+        this(filePath, false);
+    }
+
+    /**
+     * Constructs a Storage object that saves tasks either as plain text or
+     * GZIP-compressed. Loading detects the format by itself, and an existing
+     * file keeps the format it was loaded in.
+     *
+     * @param filePath   The path to the file where tasks will be saved and loaded
+     *                   from.
+     * @param compressed Whether new task files should be compressed.
+     */
+    public Storage(String filePath, boolean compressed) {
         this.filePath = filePath;
+        this.compressed = compressed;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Sets whether the task file is compressed from the next save onwards.
+     *
+     * @param compressed Whether the task file should be compressed.
+     */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
     }
 
     /**
      * Loads tasks from the file. If the file or directory doesn't exist, it will
      * create them.
-     * If the file is corrupted, it will attempt to delete the corrupted file and
-     * create a new one.
+     * Records that are damaged or cannot be parsed are moved to the quarantine
+     * file next to the task file, and the rest are loaded. If the file cannot be
+     * read to the end, it is copied aside and the tasks read before the error are
+     * kept.
      *
      * @return An ArrayList of Task objects loaded from the file. If the file is
      *         empty or not found,
@@ -39,6 +150,14 @@ public class Storage {
      *                               found.
      */
     public ArrayList<Task> load() throws FileNotFoundException {
+        Events.StorageEvent event = new Events.StorageEvent();
+        event.begin();
+        ArrayList<Task> tasks = loadTasks();
+        event.commit("load", new File(filePath), tasks.size());
+        return tasks;
+    }
+
+    private ArrayList<Task> loadTasks() throws FileNotFoundException {
         ArrayList<Task> tasks = new ArrayList<>();
         File file = new File(filePath);
         File directory = file.getParentFile(); // Parent directory of the file
@@ -65,58 +184,125 @@ public class Storage {
             return tasks; // Return an empty list as no tasks exist in a new file
         }
 
-        // File exists, load tasks from it
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                String[] parts = scanner.nextLine().split(" \\| ");
-                String type = parts[0];
-                boolean isCompleted = parts[1].equals("1");
-                String description = parts[2];
-                Task task;
-
-                // Load a ToDo task
-                if (type.equals("T")) {
-                    task = new Task.TodoTask(description);
-
-                    // Load a Deadline task
-                } else if (type.equals("D")) {
-                    LocalDateTime by = LocalDateTime.parse(parts[3]);
-                    task = new Task.DeadlineTask(description, by);
-
-                    // Load an Event task
-                } else if (type.equals("E")) {
-                    LocalDateTime from = LocalDateTime.parse(parts[3]);
-                    LocalDateTime to = LocalDateTime.parse(parts[4]);
-                    task = new Task.EventTask(description, from, to);
-                } else {
-                    continue;
+        // File exists, load tasks from it, decompressing it if it was saved compressed
+        if (file.length() > 0) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+                compressed = isGzip(in);
+            } catch (IOException e) {
+                System.err.println("Failed to read task file: " + e.getMessage());
+            }
+        }
+        long[] hashes = new long[16];
+        int count = 0;
+        ArrayList<String> damaged = new ArrayList<>();
+        boolean isReadable = true;
+        try {
+            // Read without locking, and read again if another process wrote the file in the meantime
+            long version;
+            do {
+                version = awaitStableVersion();
+                tasks.clear();
+                damaged.clear();
+                count = 0;
+                try (CheckedReader reader = CheckedReader.open(file)) {
+                    while (reader.next()) {
+                        Task task = reader.parse();
+                        if (task == null) {
+                            damaged.add(reader.line());
+                            continue;
+                        }
+                        tasks.add(task);
+                        if (count == hashes.length) {
+                            hashes = Arrays.copyOf(hashes, count * 2);
+                        }
+                        hashes[count++] = reader.hash();
+                    }
                 }
+            } while (readVersion() != version);
+            knownVersion = version;
+        } catch (IOException e) {
+            // A file that ends part way through, such as a truncated compressed file, keeps what was read of it
+            System.err.println("Failed to read the whole task file: " + e.getMessage());
+            isReadable = false;
+        }
 
-                if (isCompleted) {
-                    task.mark();
+        synchronized (this) {
+            try {
+                int[] positions = new int[count];
+                for (int i = 0; i < count; i++) {
+                    positions[i] = i;
                 }
-
-                tasks.add(task);
+                recordSync(Arrays.copyOf(hashes, count), positions, file);
+            } catch (IOException e) {
+                System.err.println("Failed to read task file: " + e.getMessage());
             }
-        } catch (ArrayIndexOutOfBoundsException | IOException e) {
-            // Handle file corruption or invalid content by deleting and recreating the file
-            System.err.println("Error loading tasks from file: " + e.getMessage());
-            if (file.delete()) {
-                System.err.println("Corrupted file deleted: " + filePath);
-            } else {
-                System.err.println("Failed to delete the corrupted file: " + filePath);
+            findSegments();
+            if (!isReadable || !damaged.isEmpty()) {
+                recover(tasks, damaged, isReadable);
             }
+        }
+        return tasks;
+    }
 
-            try {
-                if (file.createNewFile()) {
-                    System.err.println("New empty file created: " + filePath);
+    /**
+     * Saves the tasks that were loaded from a damaged task file, so that the damage
+     * is not met again at the next start. The damaged records are first appended to
+     * the quarantine file, and a file that could not be read to the end is first
+     * copied aside whole, so nothing is lost by saving without them.
+     *
+     * @param tasks      The tasks that were loaded.
+     * @param damaged    The lines that were not loaded.
+     * @param isReadable Whether the file could be read to the end.
+     */
+    private void recover(ArrayList<Task> tasks, ArrayList<String> damaged, boolean isReadable) {
+        try {
+            if (!isReadable) {
+                Path copy = Path.of(filePath + ".damaged");
+                Files.copy(Path.of(filePath), copy, StandardCopyOption.REPLACE_EXISTING);
+                System.err.println("The task file could not be read to the end and was copied to " + copy);
+                // The version was not read, and the file is to be replaced rather than merged with
+                knownVersion = readVersion();
+            }
+            if (!damaged.isEmpty()) {
+                File quarantine = new File(filePath + ".quarantine");
+                try (Writer writer = openWriter(quarantine, true, false)) {
+                    for (String line : damaged) {
+                        writer.write(line);
+                        writer.write('\n');
+                    }
                 }
-            } catch (IOException ioException) {
-                System.err.println("Failed to create new file: " + ioException.getMessage());
+                System.err.println("Moved " + damaged.size() + " damaged record(s) to " + quarantine);
             }
+            save(tasks);
+        } catch (IOException e) {
+            System.err.println("Failed to set the damaged records aside: " + e.getMessage());
         }
+    }
 
-        return tasks;
+    /**
+     * Parses a line of the task file into a task.
+     *
+     * @param line The line to parse.
+     * @return The task on the line, or null if the line has an unknown task type.
+     * @throws ArrayIndexOutOfBoundsException If the line is missing fields.
+     * @throws RuntimeException               If a field cannot be parsed.
+     */
+    static Task parseLine(String line) {
+        return TaskCodec.decode(line);
+    }
+
+    /**
+     * Parses a record that was read back from a file.
+     *
+     * @param record The record, without its checksum.
+     * @return The task, or null if the record cannot be parsed into a task.
+     */
+    private static Task parseRecord(String record) {
+        try {
+            return parseLine(record);
+        } catch (RuntimeException e) {
+            return null;
+        }
     }
 
     /**
@@ -127,21 +313,1676 @@ public class Storage {
      * @param tasks The list of tasks to be saved to the file.
      * @throws IOException If an I/O error occurs during writing.
      */
-    public void save(ArrayList<Task> tasks) throws IOException {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filePath))) {
-            for (Task task : tasks) {
-                if (task instanceof Task.TodoTask) {
-                    writer.println("T | " + (task.isCompleted() ? "1" : "0") + " | " + task.getDescription());
-                } else if (task instanceof Task.DeadlineTask) {
-                    Task.DeadlineTask deadlineTask = (Task.DeadlineTask) task;
-                    writer.println("D | " + (task.isCompleted() ? "1" : "0") + " | " + task.getDescription() + " | "
-                            + deadlineTask.getBy());
-                } else if (task instanceof Task.EventTask) {
-                    Task.EventTask eventTask = (Task.EventTask) task;
-                    writer.println("E | " + (task.isCompleted() ? "1" : "0") + " | " + task.getDescription() + " | "
-                            + eventTask.getFrom() + " | " + eventTask.getTo());
+    public synchronized void save(List<Task> tasks) throws IOException {
+        Events.StorageEvent event = new Events.StorageEvent();
+        event.begin();
+        File file = new File(filePath);
+        // Completed tasks from before the window go to their month's segment, and the rest to the task file
+        YearMonth windowStart = windowStart();
+        TreeMap<YearMonth, ArrayList<String>> segmentLines = new TreeMap<>();
+        int[] positions = new int[tasks.size()];
+        int count = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            YearMonth month = segmentOf(task, windowStart);
+            if (month == null) {
+                positions[count++] = i;
+            } else {
+                segmentLines.computeIfAbsent(month, m -> new ArrayList<>()).add(formatTask(task));
+            }
+        }
+        positions = Arrays.copyOf(positions, count);
+        long[] hashes = new long[count];
+        boolean merged;
+        FileChannel lockChannel = lockChannel();
+        FileLock lock = lockChannel.lock();
+        try {
+            long version = readVersion(lockChannel);
+            merged = version != knownVersion;
+            writeVersion(lockChannel, version + 1);
+            try {
+                // Tasks are written where they move to before they are dropped from where they were, so a task
+                // moving between the task file and a segment is never in neither
+                saveSegments(segmentLines, false);
+                if (merged) {
+                    mergeInto(file, tasks, positions, hashes);
+                } else {
+                    int[] saved = positions;
+                    replaceFile(file, compressed, writer -> writeTasks(writer, tasks, saved, hashes));
+                }
+                saveSegments(segmentLines, true);
+            } finally {
+                writeVersion(lockChannel, version + 2);
+                knownVersion = version + 2;
+            }
+        } finally {
+            lock.release();
+        }
+        recordSync(hashes, positions, file);
+        event.commit(merged ? "merge" : "save", file, count);
+        if (merged) {
+            reconcileAfterMerge();
+        }
+    }
+
+    /**
+     * Writes the records of the tasks at the given positions, each encoded into one
+     * reused buffer and copied to the writer from there.
+     */
+    private static void writeTasks(Writer writer, List<Task> tasks, int[] positions, long[] hashes)
+            throws IOException {
+        StringBuilder record = new StringBuilder(128);
+        char[] chars = new char[128];
+        for (int i = 0; i < positions.length; i++) {
+            record.setLength(0);
+            if (TaskCodec.encode(tasks.get(positions[i]), record)) {
+                hashes[i] = hashLine(record, record.length());
+                appendChecksum(record, hashes[i]);
+                if (chars.length < record.length()) {
+                    chars = new char[record.length() * 2];
+                }
+                record.getChars(0, record.length(), chars, 0);
+                writer.write(chars, 0, record.length());
+            }
+        }
+    }
+
+    /**
+     * Writes the file when another process saved it since this instance last synced
+     * with it. Records are merged by content: starting from the records now in the
+     * file, the records this instance removed (or changed) since the last sync are
+     * taken out and the records it added (or changed) are appended. Must be called
+     * while holding the write lock.
+     *
+     * @param file      The task file.
+     * @param tasks     The tasks as they are in this instance.
+     * @param positions The positions of the tasks that belong in the task file.
+     * @param hashes    Filled with the hashes of those tasks' records.
+     */
+    private void mergeInto(File file, List<Task> tasks, int[] positions, long[] hashes) throws IOException {
+        HashMap<Long, Integer> removedByUs = new HashMap<>();
+        for (long hash : syncedHashes) {
+            removedByUs.merge(hash, 1, Integer::sum);
+        }
+        ArrayList<String> addedByUs = new ArrayList<>();
+        for (int i = 0; i < hashes.length; i++) {
+            String line = formatTask(tasks.get(positions[i]));
+            hashes[i] = hashLine(line);
+            if (!takeOne(removedByUs, hashes[i])) {
+                addedByUs.add(line);
+            }
+        }
+        replaceFile(file, compressed, writer -> {
+            try (CheckedReader reader = CheckedReader.open(file)) {
+                while (reader.next()) {
+                    // Damaged records are kept as they are, for the next load to set aside
+                    if (reader.record() == null || !takeOne(removedByUs, reader.hash())) {
+                        writer.write(reader.line());
+                        writer.write('\n');
+                    }
+                }
+            }
+            for (String added : addedByUs) {
+                writeRecord(writer, added);
+            }
+        });
+    }
+
+    /**
+     * Removes one occurrence of a hash from a multiset.
+     *
+     * @return Whether the hash was present.
+     */
+    private static boolean takeOne(HashMap<Long, Integer> multiset, long hash) {
+        Integer remaining = multiset.get(hash);
+        if (remaining == null) {
+            return false;
+        }
+        if (remaining == 1) {
+            multiset.remove(hash);
+        } else {
+            multiset.put(hash, remaining - 1);
+        }
+        return true;
+    }
+
+    /**
+     * After merging with another process's save, the file holds records this
+     * instance does not have yet. The known records still describe this
+     * instance's tasks, so comparing them with the file yields exactly the other
+     * process's changes, which are queued for applyExternalChanges.
+     */
+    private void reconcileAfterMerge() throws IOException {
+        syncedLength = -1;
+        detectExternalChange();
+    }
+
+    /**
+     * Appends tasks to the end of the file without rewriting the tasks already in it.
+     * The whole batch is written through one buffer and flushed once. A compressed
+     * file gets a new GZIP member, which is read back as part of the same stream.
+     *
+     * @param tasks         The tasks to be appended to the file.
+     * @param firstPosition The position of the first of them in the task list, which holds them in order.
+     * @throws IOException If an I/O error occurs during writing.
+     */
+    public synchronized void append(ArrayList<Task> tasks, int firstPosition) throws IOException {
+        Events.StorageEvent event = new Events.StorageEvent();
+        event.begin();
+        File file = new File(filePath);
+        boolean compressAppend = file.length() > 0 ? isGzipFile(file) : compressed;
+        long[] hashes = Arrays.copyOf(syncedHashes, syncedHashes.length + tasks.size());
+        int[] positions = Arrays.copyOf(syncedPositions, hashes.length);
+        for (int i = 0; i < tasks.size(); i++) {
+            positions[syncedHashes.length + i] = firstPosition + i;
+        }
+        boolean stale;
+        FileChannel lockChannel = lockChannel();
+        FileLock lock = lockChannel.lock();
+        try {
+            long version = readVersion(lockChannel);
+            // Appending our new records to whatever another process saved is already a correct merge
+            stale = version != knownVersion;
+            writeVersion(lockChannel, version + 1);
+            try (Writer writer = openWriter(file, true, compressAppend)) {
+                for (int i = 0; i < tasks.size(); i++) {
+                    String line = formatTask(tasks.get(i));
+                    if (line != null) {
+                        hashes[syncedHashes.length + i] = writeRecord(writer, line);
+                    }
+                }
+            } finally {
+                writeVersion(lockChannel, version + 2);
+                knownVersion = version + 2;
+            }
+        } finally {
+            lock.release();
+        }
+        recordSync(hashes, positions, file);
+        event.commit("append", file, tasks.size());
+        if (stale) {
+            reconcileAfterMerge();
+        }
+    }
+
+    /**
+     * Returns the channel to the lock file that sits next to the task file,
+     * opening it on first use. Writers hold an exclusive lock on it while they
+     * write, and it holds the version of the task file: odd while a write is in
+     * progress, and even otherwise. File locks belong to the whole process and are
+     * released when any channel to the file is closed, so this one channel is used
+     * for every access to the lock file.
+     */
+    private FileChannel lockChannel() throws IOException {
+        FileChannel channel = lockChannel;
+        if (channel == null) {
+            synchronized (pendingChanges) {
+                channel = lockChannel;
+                if (channel == null) {
+                    channel = FileChannel.open(Path.of(filePath + ".lock"), StandardOpenOption.CREATE,
+                            StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    lockChannel = channel;
+                }
+            }
+        }
+        return channel;
+    }
+
+    private static long readVersion(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        int read = channel.read(buffer, 0);
+        return read < Long.BYTES ? 0 : buffer.getLong(0);
+    }
+
+    private static void writeVersion(FileChannel channel, long version) throws IOException {
+        channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, version), 0);
+        channel.force(false);
+    }
+
+    /**
+     * Reads the version of the task file without locking.
+     *
+     * @return The version, or 0 if no process has written the file under a lock yet.
+     */
+    private long readVersion() throws IOException {
+        if (lockChannel == null && !Files.exists(Path.of(filePath + ".lock"))) {
+            return 0;
+        }
+        return readVersion(lockChannel());
+    }
+
+    /**
+     * Waits until no other process is writing the task file, without locking, and
+     * returns the version to read. A reader compares it with the version after it
+     * has read the file and reads again if a write happened in between, so readers
+     * never hold up writers. If the version stays odd although no process holds
+     * the lock, the writer died part way, and the version is made even again.
+     */
+    private long awaitStableVersion() throws IOException {
+        long version = readVersion();
+        for (int waited = 1; version % 2 != 0; waited++) {
+            if (waited % STALE_WRITE_CHECK_MILLIS == 0) {
+                recoverAbandonedWrite();
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for another process to save.");
+            }
+            version = readVersion();
+        }
+        return version;
+    }
+
+    /**
+     * Ends a write that was left unfinished by a process that exited while holding
+     * the lock, so that readers stop waiting for it.
+     */
+    private synchronized void recoverAbandonedWrite() throws IOException {
+        FileChannel channel = lockChannel();
+        try (FileLock lock = channel.tryLock()) {
+            long version = readVersion(channel);
+            if (lock != null && version % 2 != 0) {
+                writeVersion(channel, version + 1);
+            }
+        }
+    }
+
+    /**
+     * Returns the replication this instance takes part in, as a leader or a follower.
+     *
+     * @return The replication, or null if this instance is not replicating.
+     */
+    public Replication getReplication() {
+        return replication;
+    }
+
+    /**
+     * Sets the replication this instance takes part in. The caller closes the previous one first.
+     *
+     * @param replication The replication, or null when replication has stopped.
+     */
+    public void setReplication(Replication replication) {
+        this.replication = replication;
+    }
+
+    /**
+     * Starts watching the task file for changes made by other programs. Changes are
+     * read on a background thread and applied by applyExternalChanges.
+     *
+     * @throws IOException If the directory of the file cannot be watched.
+     */
+    public void startWatching() throws IOException {
+        if (watcher == null) {
+            watcher = new TaskFileWatcher(this, new File(filePath).getAbsoluteFile().toPath());
+            watcher.start();
+        }
+    }
+
+    /**
+     * Remembers what the file holds after this instance read or wrote it, so later
+     * changes by other programs can be told apart from our own.
+     */
+    private void recordSync(long[] hashes, int[] positions, File file) throws IOException {
+        syncedHashes = hashes;
+        syncedPositions = positions;
+        syncedLength = file.length();
+        syncedModified = file.lastModified();
+        syncedTailChecksum = compressed ? 0 : tailChecksum(file, syncedLength);
+        syncGeneration++;
+    }
+
+    /**
+     * Checks the task file for a change made by another program and, if there is
+     * one, queues the difference to be applied by applyExternalChanges. Appended
+     * records are read from where the file used to end; any other change is
+     * compared with the known records by content. This is called from the watcher
+     * thread and only holds the lock while taking a snapshot of the sync state.
+     *
+     * @throws IOException If the file cannot be read.
+     */
+    void detectExternalChange() throws IOException {
+        File file = new File(filePath);
+        long[] knownHashes;
+        long knownLength;
+        long knownTailChecksum;
+        int generation;
+        synchronized (this) {
+            if (!file.exists() || (file.length() == syncedLength && file.lastModified() == syncedModified)) {
+                return;
+            }
+            knownHashes = syncedHashes;
+            knownLength = syncedLength;
+            knownTailChecksum = syncedTailChecksum;
+            generation = syncGeneration;
+        }
+
+        ExternalChange change;
+        long version;
+        do {
+            version = awaitStableVersion();
+            long length = file.length();
+            long modified = file.lastModified();
+            if (!isGzipFile(file) && knownLength > 0 && length > knownLength
+                    && tailChecksum(file, knownLength) == knownTailChecksum) {
+                change = readAppended(file, knownLength);
+            } else {
+                change = diffByContent(file, knownHashes);
+            }
+            change.length = length;
+            change.modified = modified;
+            change.tailChecksum = isGzipFile(file) ? 0 : tailChecksum(file, length);
+        } while (readVersion() != version);
+        change.generation = generation;
+        change.version = version;
+        pendingChanges.add(change);
+    }
+
+    /**
+     * Reads the records appended after the given offset.
+     */
+    private static ExternalChange readAppended(File file, long offset) throws IOException {
+        ExternalChange change = new ExternalChange();
+        try (FileInputStream in = new FileInputStream(file)) {
+            in.getChannel().position(offset);
+            CheckedReader reader = new CheckedReader(
+                    new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE),
+                    endsWithLineBreak(file));
+            while (reader.next()) {
+                addParsed(change, reader);
+            }
+        }
+        return change;
+    }
+
+    /**
+     * Compares the records in the file with the known records by content. Known
+     * records missing from the file are removed; records in the file that are not
+     * known are added. A removed and an added record that sit between the same
+     * unchanged records, as an edit leaves them, are paired up as a replacement, so
+     * the edited task keeps its place. The file is read twice so that only the added
+     * records are parsed and kept in memory.
+     */
+    private static ExternalChange diffByContent(File file, long[] knownHashes) throws IOException {
+        HashMap<Long, Integer> unmatched = new HashMap<>();
+        try (CheckedReader reader = CheckedReader.open(file)) {
+            while (reader.next()) {
+                if (reader.record() != null) {
+                    unmatched.merge(reader.hash(), 1, Integer::sum);
+                }
+            }
+        }
+        ExternalChange change = new ExternalChange();
+        int[] removed = new int[knownHashes.length];
+        int removedCount = 0;
+        for (int i = 0; i < knownHashes.length; i++) {
+            Integer remaining = unmatched.get(knownHashes[i]);
+            if (remaining == null) {
+                removed[removedCount++] = i;
+            } else if (remaining == 1) {
+                unmatched.remove(knownHashes[i]);
+            } else {
+                unmatched.put(knownHashes[i], remaining - 1);
+            }
+        }
+        // The number of unchanged records before each added record, in the order they are in the file
+        ArrayList<Integer> addedAfter = new ArrayList<>();
+        if (!unmatched.isEmpty()) {
+            try (CheckedReader reader = CheckedReader.open(file)) {
+                int unchanged = 0;
+                while (reader.next()) {
+                    long hash = reader.hash();
+                    Integer remaining = reader.record() == null ? null : unmatched.get(hash);
+                    if (remaining != null) {
+                        unmatched.put(hash, remaining - 1);
+                        if (remaining == 1) {
+                            unmatched.remove(hash);
+                        }
+                        if (addParsed(change, reader)) {
+                            addedAfter.add(unchanged);
+                        }
+                    } else if (reader.record() != null) {
+                        unchanged++;
+                    }
+                }
+            }
+        }
+        pairReplacements(change, Arrays.copyOf(removed, removedCount), addedAfter);
+        return change;
+    }
+
+    /**
+     * Splits the removed and added records of a change into replacements and the records that are only removed
+     * or only added. A removed record and an added record are paired when the same number of unchanged records
+     * comes before each of them.
+     *
+     * @param removed    The indexes of the removed known records, in increasing order.
+     * @param addedAfter The number of unchanged records before each added record.
+     */
+    private static void pairReplacements(ExternalChange change, int[] removed, ArrayList<Integer> addedAfter) {
+        ArrayList<Task> addedTasks = change.addedTasks;
+        ArrayList<Long> addedHashes = change.addedHashes;
+        change.addedTasks = new ArrayList<>();
+        change.addedHashes = new ArrayList<>();
+        int[] removedOnly = new int[removed.length];
+        int removedCount = 0;
+        int[] replaced = new int[removed.length];
+        int replacedCount = 0;
+        int a = 0;
+        for (int r = 0; r < removed.length; r++) {
+            // The known records before this one that were not removed are the unchanged ones
+            int unchangedBefore = removed[r] - r;
+            while (a < addedAfter.size() && addedAfter.get(a) < unchangedBefore) {
+                change.addedTasks.add(addedTasks.get(a));
+                change.addedHashes.add(addedHashes.get(a));
+                a++;
+            }
+            if (a < addedAfter.size() && addedAfter.get(a) == unchangedBefore) {
+                replaced[replacedCount++] = removed[r];
+                change.replacedTasks.add(addedTasks.get(a));
+                change.replacedHashes.add(addedHashes.get(a));
+                a++;
+            } else {
+                removedOnly[removedCount++] = removed[r];
+            }
+        }
+        for (; a < addedAfter.size(); a++) {
+            change.addedTasks.add(addedTasks.get(a));
+            change.addedHashes.add(addedHashes.get(a));
+        }
+        change.removedPositions = Arrays.copyOf(removedOnly, removedCount);
+        change.replacedPositions = Arrays.copyOf(replaced, replacedCount);
+    }
+
+    /**
+     * Adds the current record to the added tasks of a change.
+     *
+     * @return Whether the record could be parsed and was added.
+     */
+    private static boolean addParsed(ExternalChange change, CheckedReader reader) {
+        Task task = reader.parse();
+        if (task != null) {
+            change.addedTasks.add(task);
+            change.addedHashes.add(reader.hash());
+            return true;
+        }
+        System.err.println("Skipped an unreadable record written by another program: " + reader.line());
+        return false;
+    }
+
+    /**
+     * Applies the changes that other programs made to the task file since the last
+     * call. Edited tasks are replaced where they are, removed tasks are removed in
+     * one pass and added tasks are added to the end. Changes detected against a
+     * state this instance has since overwritten are dropped. This is cheap, as the
+     * file was already read on the watcher thread.
+     *
+     * @param tasks The task list to apply the changes to.
+     * @return The number of tasks added, replaced or removed.
+     * @throws BarryException If a change refers to a task that is not in the list.
+     */
+    public synchronized int applyExternalChanges(TaskList tasks) throws BarryException {
+        int applied = 0;
+        ExternalChange change;
+        while ((change = pendingChanges.poll()) != null) {
+            if (change.generation != syncGeneration) {
+                continue;
+            }
+            int[] replaced = change.replacedPositions;
+            for (int i = 0; i < replaced.length; i++) {
+                tasks.replaceTask(syncedPositions[replaced[i]], change.replacedTasks.get(i));
+            }
+            int[] removed = change.removedPositions;
+            int[] removedTasks = new int[removed.length];
+            for (int i = 0; i < removed.length; i++) {
+                removedTasks[i] = syncedPositions[removed[i]];
+                if (removedTasks[i] >= tasks.size()) {
+                    throw new BarryException("Task number is out of range.");
+                }
+            }
+            tasks.removeTasks(removedTasks);
+            int firstAdded = tasks.size();
+            for (Task task : change.addedTasks) {
+                tasks.addTask(task);
+            }
+            long[] hashes = new long[syncedHashes.length - removed.length + change.addedHashes.size()];
+            int[] positions = new int[hashes.length];
+            int next = 0;
+            int r = 0;
+            int q = 0;
+            for (int i = 0; i < syncedHashes.length; i++) {
+                if (r < removed.length && removed[r] == i) {
+                    r++;
+                } else {
+                    // The watcher thread may still be comparing against syncedHashes, so it is copied, not changed
+                    boolean isReplaced = q < replaced.length && replaced[q] == i;
+                    hashes[next] = isReplaced ? change.replacedHashes.get(q++) : syncedHashes[i];
+                    // Records are in task list order, so the r removed before this one were all in front of it
+                    positions[next++] = syncedPositions[i] - r;
+                }
+            }
+            for (long hash : change.addedHashes) {
+                hashes[next] = hash;
+                positions[next] = firstAdded + next - (syncedHashes.length - removed.length);
+                next++;
+            }
+            syncedHashes = hashes;
+            syncedPositions = positions;
+            syncedLength = change.length;
+            syncedModified = change.modified;
+            syncedTailChecksum = change.tailChecksum;
+            knownVersion = change.version;
+            syncGeneration++;
+            applied += replaced.length + removed.length + change.addedTasks.size();
+        }
+        return applied;
+    }
+
+    /**
+     * Computes a checksum of the last few kilobytes before the given offset, used to
+     * check that a file has only grown since it was last synced. CRC32 values are
+     * never negative, so -1 never matches a real checksum.
+     */
+    private static long tailChecksum(File file, long end) throws IOException {
+        int length = (int) Math.min(end, 4096);
+        byte[] tail = new byte[length];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() < end) {
+                return -1; // The file was truncated by another writer, so it cannot match
+            }
+            in.seek(end - length);
+            in.readFully(tail);
+        } catch (EOFException e) {
+            return -1; // Truncated while it was being read
+        }
+        CRC32 crc = new CRC32();
+        crc.update(tail);
+        return crc.getValue();
+    }
+
+    /**
+     * Computes a 64-bit FNV-1a hash of a record, used to recognise records by content.
+     */
+    static long hashLine(String line) {
+        return hashLine(line, line.length());
+    }
+
+    private static long hashLine(CharSequence line, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash ^= line.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Ends a record with its checksum, the low 32 bits of its hash in hexadecimal
+     * after a tab, and a line break.
+     */
+    private static void appendChecksum(StringBuilder record, long hash) {
+        record.append('\t');
+        for (int shift = (CHECKSUM_DIGITS - 1) * 4; shift >= 0; shift -= 4) {
+            record.append(Character.forDigit((int) (hash >>> shift) & 0xf, 16));
+        }
+        record.append('\n');
+    }
+
+    /**
+     * Writes a record with its checksum.
+     *
+     * @return The hash of the record.
+     */
+    private static long writeRecord(Writer writer, String record) throws IOException {
+        long hash = hashLine(record);
+        StringBuilder checksum = new StringBuilder(CHECKSUM_DIGITS + 2);
+        appendChecksum(checksum, hash);
+        writer.write(record);
+        writer.append(checksum);
+        return hash;
+    }
+
+    /**
+     * Returns the position of the tab before the checksum at the end of a line, or
+     * -1 if the line does not end in a checksum.
+     */
+    private static int checksumStart(String line) {
+        int start = line.length() - CHECKSUM_DIGITS - 1;
+        if (start < 0 || line.charAt(start) != '\t') {
+            return -1;
+        }
+        for (int i = start + 1; i < line.length(); i++) {
+            if (Character.digit(line.charAt(i), 16) < 0) {
+                return -1;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * Checks a line read by other means than a CheckedReader against its checksum.
+     *
+     * @param line The line, without its line break.
+     * @return The record without its checksum, or null if the checksum does not match.
+     */
+    static String checkedRecord(String line) {
+        int start = checksumStart(line);
+        if (start < 0) {
+            return line;
+        }
+        String record = line.substring(0, start);
+        boolean matches = (int) hashLine(record) == Integer.parseUnsignedInt(line, start + 1, line.length(), 16);
+        return matches ? record : null;
+    }
+
+    /**
+     * Checks whether a file ends with a line break, as a file whose last write
+     * finished does. Compressed files are checked by GZIP itself, which fails to
+     * read a file that ends part way.
+     */
+    private static boolean endsWithLineBreak(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long length = in.length();
+            if (length < 2) {
+                return length == 0 || in.read() == '\n';
+            }
+            int first = in.read();
+            int second = in.read();
+            if (first == 0x1f && second == 0x8b) {
+                return true;
+            }
+            in.seek(length - 1);
+            return in.read() == '\n';
+        }
+    }
+
+    /**
+     * Reads the lines of a task, segment or archive file one at a time, checking
+     * each record against its checksum. Lines without a checksum, written by an
+     * earlier version or by hand, are taken as they are, except for a last line
+     * that no line break follows, which is what a write cut off part way leaves.
+     * Blank lines are skipped.
+     */
+    private static class CheckedReader implements Closeable {
+        private final BufferedReader reader;
+        private final boolean isTerminated;
+        private String following;
+        private String line;
+        private String record;
+        private long hash;
+
+        private CheckedReader(BufferedReader reader, boolean isTerminated) throws IOException {
+            this.reader = reader;
+            this.isTerminated = isTerminated;
+            this.following = reader.readLine();
+        }
+
+        private static CheckedReader open(File file) throws IOException {
+            boolean isTerminated = endsWithLineBreak(file);
+            BufferedReader reader = openReader(file);
+            try {
+                return new CheckedReader(reader, isTerminated);
+            } catch (IOException e) {
+                reader.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Moves to the next line that is not blank.
+         *
+         * @return Whether there was one.
+         */
+        private boolean next() throws IOException {
+            do {
+                line = following;
+                if (line == null) {
+                    return false;
+                }
+                following = reader.readLine();
+            } while (line.isBlank());
+            int start = checksumStart(line);
+            if (start >= 0) {
+                record = line.substring(0, start);
+                hash = hashLine(record);
+                if ((int) hash != Integer.parseUnsignedInt(line, start + 1, line.length(), 16)) {
+                    record = null;
+                }
+            } else {
+                boolean isTorn = following == null && !isTerminated;
+                record = isTorn ? null : line;
+                hash = hashLine(line);
+            }
+            return true;
+        }
+
+        /** Returns the current line as it is in the file. */
+        private String line() {
+            return line;
+        }
+
+        /** Returns the record on the current line without its checksum, or null if the line is damaged. */
+        private String record() {
+            return record;
+        }
+
+        /** Returns the hash of the current record. */
+        private long hash() {
+            return hash;
+        }
+
+        /**
+         * Parses the current record.
+         *
+         * @return The task, or null if the line is damaged or cannot be parsed into a task.
+         */
+        private Task parse() {
+            return record == null ? null : parseRecord(record);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * The difference between the known records and the task file after another
+     * program changed it.
+     */
+    private static class ExternalChange {
+        private int generation;
+        // Indexes into the known records, in increasing order
+        private int[] removedPositions = new int[0];
+        private int[] replacedPositions = new int[0];
+        private ArrayList<Task> replacedTasks = new ArrayList<>();
+        private ArrayList<Long> replacedHashes = new ArrayList<>();
+        private ArrayList<Task> addedTasks = new ArrayList<>();
+        private ArrayList<Long> addedHashes = new ArrayList<>();
+        private long length;
+        private long modified;
+        private long tailChecksum;
+        private long version;
+    }
+
+    /**
+     * Opens a buffered reader over a task or archive file, decompressing it if it
+     * starts with the GZIP magic number.
+     *
+     * @param file The file to read.
+     * @return A reader over the decoded text of the file.
+     * @throws IOException If the file cannot be opened or read.
+     */
+    static BufferedReader openReader(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            if (isGzip(in)) {
+                in = new GZIPInputStream(in, BUFFER_SIZE);
+            }
+            return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a buffered writer to a task or archive file. Closing the writer forces
+     * what was written to disk before it returns.
+     *
+     * @param file     The file to write.
+     * @param append   Whether to append to the file instead of replacing it.
+     * @param compress Whether to GZIP-compress what is written.
+     * @return A writer to the file.
+     * @throws IOException If the file cannot be opened.
+     */
+    static Writer openWriter(File file, boolean append, boolean compress) throws IOException {
+        FileOutputStream fileOut = new FileOutputStream(file, append);
+        OutputStream out = new FilterOutputStream(fileOut) {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                fileOut.write(bytes, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try (fileOut) {
+                    fileOut.flush();
+                    fileOut.getFD().sync();
+                }
+            }
+        };
+        if (compress) {
+            out = new GZIPOutputStream(out, BUFFER_SIZE) {
+                {
+                    def.setLevel(COMPRESSION_LEVEL);
+                }
+            };
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Replaces a file without ever leaving it half written: the new contents are
+     * written to a temporary file next to it, forced to disk and renamed over it,
+     * so a crash at any point leaves either the old file or the new one.
+     *
+     * @param file     The file to replace.
+     * @param compress Whether to GZIP-compress the new contents.
+     * @param contents Writes the new contents.
+     * @throws IOException If the file cannot be written.
+     */
+    private static void replaceFile(File file, boolean compress, FileContents contents) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (Writer writer = openWriter(temporary, false, compress)) {
+            contents.writeTo(writer);
+        } catch (IOException | RuntimeException e) {
+            temporary.delete();
+            throw e;
+        }
+        try {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        // The rename itself is only durable once the directory is forced to disk, which not every system allows
+        try (FileChannel directory = FileChannel.open(file.getAbsoluteFile().toPath().getParent())) {
+            directory.force(true);
+        } catch (IOException e) {
+            // The file itself is complete either way
+        }
+    }
+
+    /**
+     * Writes the contents of a file being replaced.
+     */
+    @FunctionalInterface
+    private interface FileContents {
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    /**
+     * Checks whether a stream starts with the GZIP magic number, without consuming it.
+     */
+    private static boolean isGzip(InputStream in) throws IOException {
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        return first == 0x1f && second == 0x8b;
+    }
+
+    static boolean isGzipFile(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 2)) {
+            return isGzip(in);
+        }
+    }
+
+    /**
+     * Converts a task into a line of the task file.
+     *
+     * @param task The task to convert.
+     * @return The line representing the task, or null if the task type cannot be stored.
+     */
+    static String formatTask(Task task) {
+        StringBuilder record = new StringBuilder(64);
+        return TaskCodec.encode(task, record) ? record.toString() : null;
+    }
+
+    /**
+     * Exports tasks to a CSV or JSON file, writing one record at a time, followed
+     * by the archived tasks, which are streamed from the archive. Paths ending in
+     * .gz are compressed.
+     *
+     * @param tasks      The tasks to be exported.
+     * @param exportPath The path of the file to export to.
+     * @param format     The format to export in.
+     * @return The number of tasks exported.
+     * @throws IOException If an I/O error occurs during writing.
+     */
+    public int exportTasks(Iterable<Task> tasks, String exportPath, TaskTransfer.Format format) throws IOException {
+        try (ArchiveReader archived = readArchive();
+                Writer writer = openWriter(new File(exportPath), false, exportPath.toLowerCase().endsWith(".gz"))) {
+            Iterable<Task> all = () -> new Iterator<>() {
+                private final Iterator<Task> hot = tasks.iterator();
+
+                @Override
+                public boolean hasNext() {
+                    return hot.hasNext() || archived.hasNext();
+                }
+
+                @Override
+                public Task next() {
+                    return hot.hasNext() ? hot.next() : archived.next();
+                }
+            };
+            return TaskTransfer.write(all, writer, format);
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // Raised by the archive reader, which cannot throw checked exceptions
+        }
+    }
+
+    File taskFile() {
+        return new File(filePath);
+    }
+
+    File archiveFile() {
+        return new File(filePath + ".archive");
+    }
+
+    /**
+     * Returns the month segment files next to the task file, most recent first.
+     */
+    File[] segmentFiles() {
+        File[] files = new File(filePath + ".segments").listFiles(
+                (directory, name) -> name.matches("\\d{4}-\\d{2}\\.txt"));
+        if (files == null) {
+            return new File[0];
+        }
+        // Months are named yyyy-MM, so their names sort in time order
+        Arrays.sort(files, (a, b) -> b.getName().compareTo(a.getName()));
+        return files;
+    }
+
+    /**
+     * Maps the task file, its month segments and its archive into memory to be read in place, without loading
+     * them. This instance must not be used to load or save tasks at the same time.
+     *
+     * @return The mapped tasks.
+     * @throws IOException If a file cannot be mapped, such as because it is compressed.
+     */
+    public MappedTasks openMapped() throws IOException {
+        MappedTasks mapped = new MappedTasks(this);
+        mapped.refresh();
+        return mapped;
+    }
+
+    /**
+     * Moves completed tasks from the task list to the archive. The tasks are
+     * appended to the archive before the task file is saved without them, so a
+     * failure in between can leave a task in both files, but never in neither.
+     *
+     * @param tasks          The task list to move the tasks out of.
+     * @param doneOnOrBefore The latest completion date of the tasks to move, or
+     *                       null to move every completed task.
+     * @return The number of tasks archived.
+     * @throws IOException If an I/O error occurs while writing either file.
+     */
+    public int archive(TaskList tasks, LocalDate doneOnOrBefore) throws IOException {
+        int[] positions = tasks.completedPositions(doneOnOrBefore);
+        if (positions.length == 0) {
+            return 0;
+        }
+        File archive = archiveFile();
+        Events.StorageEvent event = new Events.StorageEvent();
+        event.begin();
+        synchronized (this) {
+            boolean compressAppend = archive.length() > 0 ? isGzipFile(archive) : compressed;
+            FileLock lock = lockChannel().lock();
+            try (Writer writer = openWriter(archive, true, compressAppend)) {
+                for (int position : positions) {
+                    String line = formatTask(tasks.getStore().get(position));
+                    if (line != null) {
+                        writeRecord(writer, line);
+                    }
+                }
+            } finally {
+                lock.release();
+            }
+        }
+        event.commit("archive", archive, positions.length);
+        tasks.removeTasks(positions);
+        save(tasks.getTasks());
+        return positions.length;
+    }
+
+    /**
+     * Opens the archive to read the archived tasks one at a time, without
+     * loading them all.
+     *
+     * @return A reader over the archived tasks, which the caller must close.
+     * @throws IOException If the archive exists but cannot be opened.
+     */
+    public ArchiveReader readArchive() throws IOException {
+        File archive = archiveFile();
+        return new ArchiveReader(archive.exists() ? CheckedReader.open(archive) : null);
+    }
+
+    /**
+     * Returns the number of days after which completed tasks are archived
+     * automatically, as kept in the settings file next to the task file.
+     *
+     * @return The number of days, or -1 if tasks are only archived on request.
+     */
+    public int getArchiveAfterDays() {
+        if (archiveAfterDays == null) {
+            Properties settings = new Properties();
+            File file = new File(filePath + ".properties");
+            if (file.exists()) {
+                try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                    settings.load(reader);
+                } catch (IOException e) {
+                    System.err.println("Failed to read the settings file: " + e.getMessage());
+                }
+            }
+            try {
+                archiveAfterDays = Integer.parseInt(settings.getProperty(ARCHIVE_AFTER_DAYS, "-1"));
+            } catch (NumberFormatException e) {
+                archiveAfterDays = -1;
+            }
+        }
+        return archiveAfterDays;
+    }
+
+    /**
+     * Sets the number of days after which completed tasks are archived
+     * automatically, and keeps it in the settings file next to the task file.
+     *
+     * @param days The number of days, or -1 to only archive tasks on request.
+     * @throws IOException If the settings file cannot be written.
+     */
+    public void setArchiveAfterDays(int days) throws IOException {
+        Properties settings = new Properties();
+        File file = new File(filePath + ".properties");
+        if (file.exists()) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                settings.load(reader);
+            }
+        }
+        settings.setProperty(ARCHIVE_AFTER_DAYS, String.valueOf(days));
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            settings.store(writer, "Barry settings");
+        }
+        archiveAfterDays = days;
+    }
+
+    /**
+     * Returns the first month whose completed tasks stay in the task file.
+     */
+    private static YearMonth windowStart() {
+        return YearMonth.now().minusMonths(WINDOW_MONTHS - 1);
+    }
+
+    /**
+     * Returns the month segment a task is saved in. Only completed tasks from before the window are kept in
+     * segments, by the month of their deadline, event start, last recurrence or, for todos, which carry no
+     * date of their own, completion; open tasks stay in the task file however old they are.
+     *
+     * @param task        The task to place.
+     * @param windowStart The first month whose tasks stay in the task file.
+     * @return The month of the task's segment, or null if it belongs in the task file.
+     */
+    static YearMonth segmentOf(Task task, YearMonth windowStart) {
+        if (!task.isCompleted()) {
+            return null;
+        }
+        LocalDate date = TaskCodec.segmentDateOf(task);
+        if (date == null || !YearMonth.from(date).isBefore(windowStart)) {
+            return null;
+        }
+        return YearMonth.from(date);
+    }
+
+    private File segmentFile(YearMonth month) {
+        return new File(filePath + ".segments", month + ".txt");
+    }
+
+    /**
+     * Finds the segment files next to the task file, none of which is loaded yet.
+     */
+    private void findSegments() {
+        segments.clear();
+        File[] files = new File(filePath + ".segments").listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".txt")) {
+                try {
+                    segments.put(YearMonth.parse(name.substring(0, name.length() - 4)), new Segment());
+                } catch (DateTimeParseException e) {
+                    System.err.println("Ignored a file that is not a month segment: " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether there are month segments whose tasks have not been loaded into the task list.
+     *
+     * @return Whether any segment is not loaded yet.
+     */
+    public synchronized boolean hasUnloadedSegments() {
+        for (Segment segment : segments.values()) {
+            if (!segment.loaded) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Loads the most recent month segment that is not loaded yet, adding its tasks to the end of the task list,
+     * so that the numbers of the tasks already in the list stay the same.
+     *
+     * @param tasks The task list to add the tasks to.
+     * @return Whether there was a segment to load.
+     * @throws IOException If the segment cannot be read.
+     */
+    public synchronized boolean loadOlderSegment(TaskList tasks) throws IOException {
+        for (Map.Entry<YearMonth, Segment> entry : segments.descendingMap().entrySet()) {
+            if (!entry.getValue().loaded) {
+                loadSegment(entry.getKey(), entry.getValue(), tasks);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Loads every month segment that is not loaded yet, most recent first, adding their tasks to the end of
+     * the task list.
+     *
+     * @param tasks The task list to add the tasks to.
+     * @return The number of tasks added.
+     * @throws IOException If a segment cannot be read.
+     */
+    public synchronized int loadSegments(TaskList tasks) throws IOException {
+        int sizeBefore = tasks.size();
+        while (loadOlderSegment(tasks)) {
+            // Each call loads one segment
+        }
+        return tasks.size() - sizeBefore;
+    }
+
+    /**
+     * Opens the month segments that are not loaded, most recent first, to read their tasks one at a time without
+     * adding them to the task list. Records the task list already holds are skipped, so each task is seen once
+     * whether it is in the list or only in a segment.
+     *
+     * @return A reader over the tasks, which the caller must close.
+     */
+    public synchronized SegmentReader readUnloadedSegments() {
+        ArrayList<File> files = new ArrayList<>();
+        ArrayList<HashMap<Long, Integer>> held = new ArrayList<>();
+        for (Map.Entry<YearMonth, Segment> entry : segments.descendingMap().entrySet()) {
+            if (!entry.getValue().loaded) {
+                HashMap<Long, Integer> hashes = new HashMap<>();
+                for (long hash : entry.getValue().held) {
+                    hashes.merge(hash, 1, Integer::sum);
+                }
+                files.add(segmentFile(entry.getKey()));
+                held.add(hashes);
+            }
+        }
+        return new SegmentReader(files, held);
+    }
+
+    /**
+     * Counts the tasks in the month segments that are not loaded, without loading them. The counts are kept
+     * next to each segment when it is saved, so this only reads a segment that was written without them or
+     * changed by hand since. Segments only hold completed tasks, so none of these tasks is overdue.
+     *
+     * @return The counts by type and completion.
+     * @throws IOException If a segment without counts cannot be read.
+     */
+    public synchronized SegmentCounts countUnloadedSegments() throws IOException {
+        int[] counts = new int[2 * TYPE_COUNT];
+        for (Map.Entry<YearMonth, Segment> entry : segments.entrySet()) {
+            Segment segment = entry.getValue();
+            if (segment.loaded) {
+                continue;
+            }
+            int[] fileCounts = countSegment(entry.getKey(), segment);
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += fileCounts[i] - segment.heldCounts[i];
+            }
+        }
+        return new SegmentCounts(counts);
+    }
+
+    /**
+     * Returns the counts of every record in a segment file, from memory or from its counts file if they are
+     * still for the file as it is, or else by reading the file.
+     */
+    private int[] countSegment(YearMonth month, Segment segment) throws IOException {
+        File file = segmentFile(month);
+        if (!file.exists()) {
+            return new int[2 * TYPE_COUNT];
+        }
+        if (segment.fileCounts != null && segment.countedLength == file.length()
+                && segment.countedModified == file.lastModified()) {
+            return segment.fileCounts;
+        }
+        int[] counts = readCounts(month, file);
+        if (counts != null) {
+            segment.fileCounts = counts;
+            segment.countedLength = file.length();
+            segment.countedModified = file.lastModified();
+            return counts;
+        }
+        counts = new int[2 * TYPE_COUNT];
+        try (CheckedReader reader = CheckedReader.open(file)) {
+            while (reader.next()) {
+                countTask(reader.parse(), counts);
+            }
+        }
+        keepCounts(month, segment, file, counts);
+        return counts;
+    }
+
+    private File countsFile(YearMonth month) {
+        return new File(filePath + ".segments", month + ".counts");
+    }
+
+    /**
+     * Reads the counts file of a segment, which holds the length and modification time of the segment file
+     * they were counted in followed by the counts, all on one line.
+     *
+     * @return The counts, or null if there is no counts file or it is not for the segment file as it is.
+     */
+    private int[] readCounts(YearMonth month, File file) {
+        File countsFile = countsFile(month);
+        if (!countsFile.exists()) {
+            return null;
+        }
+        try {
+            String[] fields = Files.readString(countsFile.toPath()).trim().split(" ");
+            if (fields.length != 2 + 2 * TYPE_COUNT || Long.parseLong(fields[0]) != file.length()
+                    || Long.parseLong(fields[1]) != file.lastModified()) {
+                return null;
+            }
+            int[] counts = new int[2 * TYPE_COUNT];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = Integer.parseInt(fields[2 + i]);
+            }
+            return counts;
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Remembers the counts of a segment file as it is now, and writes them to its counts file. The counts file
+     * only saves reading the segment again, so failing to write it is reported but not an error.
+     */
+    private void keepCounts(YearMonth month, Segment segment, File file, int[] counts) {
+        segment.fileCounts = counts;
+        segment.countedLength = file.length();
+        segment.countedModified = file.lastModified();
+        StringBuilder line = new StringBuilder();
+        line.append(segment.countedLength).append(' ').append(segment.countedModified);
+        for (int count : counts) {
+            line.append(' ').append(count);
+        }
+        try {
+            Files.writeString(countsFile(month).toPath(), line.append('\n'));
+        } catch (IOException e) {
+            System.err.println("Could not save the task counts of " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds a task to counts by type and completion.
+     *
+     * @param task   The task, or null for a record that could not be parsed, which is not counted.
+     * @param counts The counts of each type followed by the completed counts of each type.
+     */
+    private static void countTask(Task task, int[] counts) {
+        if (task == null) {
+            return;
+        }
+        byte type = TaskStore.typeOf(task);
+        counts[type]++;
+        if (task.isCompleted()) {
+            counts[TYPE_COUNT + type]++;
+        }
+    }
+
+    /**
+     * Adds the tasks of a segment that are not in the task list yet to it. Records that are damaged or cannot
+     * be parsed are skipped, and left in the file.
+     */
+    private void loadSegment(YearMonth month, Segment segment, TaskList tasks) throws IOException {
+        Events.StorageEvent event = new Events.StorageEvent();
+        event.begin();
+        int sizeBefore = tasks.size();
+        File file = segmentFile(month);
+        HashMap<Long, Integer> alreadyHeld = new HashMap<>();
+        for (long hash : segment.held) {
+            alreadyHeld.merge(hash, 1, Integer::sum);
+        }
+        long[] held = new long[16];
+        int count = 0;
+        if (file.exists()) {
+            try (CheckedReader reader = CheckedReader.open(file)) {
+                while (reader.next()) {
+                    long hash = reader.hash();
+                    if (reader.record() == null || !takeOne(alreadyHeld, hash)) {
+                        Task task = reader.parse();
+                        if (task == null) {
+                            System.err.println("Skipped a damaged record in " + file + ": " + reader.line());
+                            continue;
+                        }
+                        tasks.addTask(task);
+                    }
+                    if (count == held.length) {
+                        held = Arrays.copyOf(held, count * 2);
+                    }
+                    held[count++] = hash;
+                }
+            }
+        }
+        held = Arrays.copyOf(held, count);
+        Arrays.sort(held);
+        segment.held = held;
+        segment.loaded = true;
+        event.commit("load segment", file, tasks.size() - sizeBefore);
+    }
+
+    /**
+     * Rewrites the month segments whose tasks in the task list changed since they were last loaded or saved.
+     * This is done in two passes around the writing of the task file: the first only adds records, and the
+     * second drops the records of tasks that were changed, deleted or moved to the task file. Must be called
+     * while holding the write lock.
+     *
+     * @param segmentLines The records of the tasks in the task list that belong in each segment.
+     * @param dropping     Whether this is the second pass.
+     */
+    private void saveSegments(TreeMap<YearMonth, ArrayList<String>> segmentLines, boolean dropping)
+            throws IOException {
+        TreeSet<YearMonth> months = new TreeSet<>(segmentLines.keySet());
+        for (Map.Entry<YearMonth, Segment> entry : segments.entrySet()) {
+            if (entry.getValue().held.length > 0) {
+                months.add(entry.getKey());
+            }
+        }
+        for (YearMonth month : months) {
+            ArrayList<String> lines = segmentLines.getOrDefault(month, new ArrayList<>());
+            long[] hashes = new long[lines.size()];
+            for (int i = 0; i < hashes.length; i++) {
+                hashes[i] = hashLine(lines.get(i));
+            }
+            Arrays.sort(hashes);
+            Segment segment = segments.computeIfAbsent(month, m -> new Segment());
+            if (!dropping && !containsAll(segment.held, hashes)) {
+                writeSegment(month, segment, lines, hashes, false);
+            } else if (dropping && !containsAll(hashes, segment.held)) {
+                writeSegment(month, segment, lines, hashes, true);
+            }
+            if (dropping) {
+                segment.held = hashes;
+                segment.heldCounts = new int[2 * TYPE_COUNT];
+                for (String line : lines) {
+                    countTask(parseRecord(line), segment.heldCounts);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether one sorted multiset of hashes holds every hash of another as often.
+     */
+    private static boolean containsAll(long[] outer, long[] inner) {
+        int i = 0;
+        for (long hash : inner) {
+            while (i < outer.length && outer[i] < hash) {
+                i++;
+            }
+            if (i == outer.length || outer[i] != hash) {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    /**
+     * Writes a segment with the given records of tasks in the task list, keeping the records that are only in
+     * the file: those of a segment that is not loaded, and any another process added. The records the task
+     * list held before are the ones it may have changed or deleted since, and are dropped if asked to.
+     */
+    private void writeSegment(YearMonth month, Segment segment, ArrayList<String> lines, long[] hashes,
+            boolean dropHeld) throws IOException {
+        Events.StorageEvent event = new Events.StorageEvent();
+        event.begin();
+        File file = segmentFile(month);
+        HashMap<Long, Integer> dropped = new HashMap<>();
+        for (long hash : hashes) {
+            dropped.merge(hash, 1, Integer::sum);
+        }
+        if (dropHeld) {
+            for (long hash : segment.held) {
+                dropped.merge(hash, 1, Integer::sum);
+            }
+        }
+        file.getParentFile().mkdirs();
+        int[] count = new int[1];
+        int[] taskCounts = new int[2 * TYPE_COUNT];
+        replaceFile(file, compressed, writer -> {
+            if (file.exists()) {
+                try (CheckedReader reader = CheckedReader.open(file)) {
+                    while (reader.next()) {
+                        if (reader.record() == null || !takeOne(dropped, reader.hash())) {
+                            writer.write(reader.line());
+                            writer.write('\n');
+                            countTask(reader.parse(), taskCounts);
+                            count[0]++;
+                        }
+                    }
+                }
+            }
+            for (String line : lines) {
+                writeRecord(writer, line);
+                countTask(parseRecord(line), taskCounts);
+                count[0]++;
+            }
+        });
+        if (count[0] == 0) {
+            file.delete();
+            countsFile(month).delete();
+            segments.remove(month);
+            return;
+        }
+        keepCounts(month, segment, file, taskCounts);
+        event.commit("save segment", file, count[0]);
+    }
+
+    /**
+     * A month segment: a file of completed tasks from one month, in the task file format. Some of its records
+     * may also be in the task list, either loaded from it or moved there from the task file by a save.
+     */
+    private static class Segment {
+        private boolean loaded;
+        // The hashes of the records that are also in the task list, sorted
+        private long[] held = new long[0];
+        // The tasks of each type and the completed tasks of each type among the held records
+        private int[] heldCounts = new int[2 * TYPE_COUNT];
+        // The same counts for every record in the file, or null if not known, and the file they were counted in
+        private int[] fileCounts;
+        private long countedLength;
+        private long countedModified;
+    }
+
+    /**
+     * The number of tasks of each type, and of completed tasks of each type, in the month segments that are not
+     * loaded into the task list.
+     */
+    public static class SegmentCounts {
+        private final int[] counts;
+
+        private SegmentCounts(int[] counts) {
+            this.counts = counts;
+        }
+
+        public int countTasks(byte type) {
+            return counts[type];
+        }
+
+        public int countCompleted(byte type) {
+            return counts[TYPE_COUNT + type];
+        }
+    }
+
+    /**
+     * Reads archived tasks one line at a time. Records that are damaged or cannot be
+     * parsed are skipped, so one damaged line does not hide the rest of the archive.
+     */
+    public static class ArchiveReader implements Iterator<Task>, Closeable {
+        private final CheckedReader reader;
+        private Task next;
+
+        private ArchiveReader(CheckedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (next == null && reader != null && reader.next()) {
+                    next = reader.parse();
+                    if (next == null) {
+                        System.err.println("Skipped a damaged archived record: " + reader.line());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return next != null;
+        }
+
+        @Override
+        public Task next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Task task = next;
+            next = null;
+            return task;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the tasks of several month segments one line at a time, one segment after another, skipping the
+     * records the task list holds. Records that are damaged or cannot be parsed are skipped, as when a segment
+     * is loaded.
+     */
+    public static class SegmentReader implements Iterator<Task>, Closeable {
+        private final ArrayList<File> files;
+        private final ArrayList<HashMap<Long, Integer>> held;
+        private int current = -1;
+        private CheckedReader reader;
+        private Task next;
+
+        private SegmentReader(ArrayList<File> files, ArrayList<HashMap<Long, Integer>> held) {
+            this.files = files;
+            this.held = held;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (next == null) {
+                    if (reader == null || !reader.next()) {
+                        if (!openNext()) {
+                            return false;
+                        }
+                        continue;
+                    }
+                    if (reader.record() != null && takeOne(held.get(current), reader.hash())) {
+                        continue;
+                    }
+                    next = reader.parse();
+                    if (next == null) {
+                        System.err.println("Skipped a damaged record in " + files.get(current) + ": "
+                                + reader.line());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        }
+
+        /**
+         * Moves on to the next segment that still exists.
+         *
+         * @return Whether there was one.
+         */
+        private boolean openNext() throws IOException {
+            close();
+            reader = null;
+            while (++current < files.size()) {
+                if (files.get(current).exists()) {
+                    reader = CheckedReader.open(files.get(current));
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Task next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Task task = next;
+            next = null;
+            return task;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Opens a CSV or JSON file of exported tasks for importing. The format is taken from the file extension,
+     * or from the first character of the file if the extension is neither .csv nor .json. Compressed files are
+     * detected and decompressed, so a .csv.gz or .json.gz export can be imported directly.
+     *
+     * @param importPath The path of the file to import from.
+     * @return A reader over the records in the file, which the caller must close.
+     * @throws IOException    If the file cannot be opened or read.
+     * @throws BarryException If the file does not start the way its format requires.
+     */
+    public TaskTransfer.RecordReader openImport(String importPath) throws IOException, BarryException {
+        File file = new File(importPath);
+        if (!file.exists()) {
+            throw new NoSuchFileException(importPath);
+        }
+        BufferedReader reader = openReader(file);
+        try {
+            TaskTransfer.Format format;
+            String lowerCasePath = importPath.toLowerCase().replaceAll("\\.gz$", "");
+            if (lowerCasePath.endsWith(".json") || lowerCasePath.endsWith(".csv")) {
+                format = TaskTransfer.Format.fromFileName(lowerCasePath);
+            } else {
+                reader.mark(1024);
+                int c = reader.read();
+                while (c != -1 && Character.isWhitespace(c)) {
+                    c = reader.read();
                 }
+                reader.reset();
+                format = c == '[' ? TaskTransfer.Format.JSON : TaskTransfer.Format.CSV;
             }
+            return new TaskTransfer.RecordReader(reader, format);
+        } catch (IOException | BarryException e) {
+            reader.close();
+            throw e;
         }
     }
 }
@@ -0,0 +1,134 @@
+package barry;
+
+import java.util.Arrays;
+
+/**
+ * The StringPool class stores each distinct string once and hands out integer references to it.
+ * References are counted, so a string is dropped once nothing refers to it and its slot is reused.
+ * Strings are found through an open-addressed table of references rather than a HashMap, so a distinct
+ * string costs a few ints on top of the string itself instead of a map entry and a boxed Integer.
+ */
+public class StringPool {
+    private String[] strings;
+    private int[] referenceCounts;
+    /** Holds reference + 1 for each stored string at or after its hash slot, or 0 for an empty slot. */
+    private int[] table;
+    private int stored;
+    private int[] freeSlots;
+    private int freeCount;
+    private int used;
+
+    /**
+     * Constructs an empty StringPool.
+     */
+    public StringPool() {
+        this.strings = new String[16];
+        this.referenceCounts = new int[16];
+        this.table = new int[32];
+        this.freeSlots = new int[16];
+    }
+
+    /**
+     * Adds a reference to the given string, storing it if it is not already in the pool.
+     *
+     * @param string The string to refer to.
+     * @return The reference to the string.
+     */
+    public int acquire(String string) {
+        int slot = findSlot(string);
+        if (table[slot] != 0) {
+            int existing = table[slot] - 1;
+            referenceCounts[existing]++;
+            return existing;
+        }
+        int reference;
+        if (freeCount > 0) {
+            reference = freeSlots[--freeCount];
+        } else {
+            if (used == strings.length) {
+                strings = Arrays.copyOf(strings, used * 2);
+                referenceCounts = Arrays.copyOf(referenceCounts, used * 2);
+            }
+            reference = used++;
+        }
+        strings[reference] = string;
+        referenceCounts[reference] = 1;
+        table[slot] = reference + 1;
+        if (++stored * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return reference;
+    }
+
+    /**
+     * Drops a reference to a string, removing the string from the pool if it was the last one.
+     *
+     * @param reference The reference to drop.
+     */
+    public void release(int reference) {
+        assert referenceCounts[reference] > 0 : "Released a string that is not in the pool.";
+        if (--referenceCounts[reference] == 0) {
+            removeFromTable(findSlot(strings[reference]));
+            strings[reference] = null;
+            stored--;
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = reference;
+        }
+    }
+
+    private static int hash(String string) {
+        int hash = string.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Returns the slot that holds the given string, or the empty slot where it would be stored.
+     */
+    private int findSlot(String string) {
+        int mask = table.length - 1;
+        int slot = hash(string) & mask;
+        while (table[slot] != 0 && !strings[table[slot] - 1].equals(string)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Empties a slot and moves later strings of the same run back, so that every string can still be found
+     * by probing from its hash slot without meeting an empty slot.
+     */
+    private void removeFromTable(int slot) {
+        int mask = table.length - 1;
+        table[slot] = 0;
+        for (int next = (slot + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            int home = hash(strings[table[next] - 1]) & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                table[slot] = table[next];
+                table[next] = 0;
+                slot = next;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] old = table;
+        table = new int[capacity];
+        for (int entry : old) {
+            if (entry != 0) {
+                table[findSlot(strings[entry - 1])] = entry;
+            }
+        }
+    }
+
+    /**
+     * Returns the string with the given reference.
+     *
+     * @param reference The reference to the string.
+     * @return The string.
+     */
+    public String get(int reference) {
+        return strings[reference];
+    }
+}
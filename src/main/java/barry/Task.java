@@ -1,15 +1,29 @@
 package barry;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
 
 /**
  * The Task class represents a general task with a description and completion status.
- * This is an abstract base class for specific types of tasks, such as TodoTask, DeadlineTask, and EventTask.
+ * This is an abstract base class for specific types of tasks, such as TodoTask, DeadlineTask, EventTask
+ * and RecurringTask.
  */
 abstract class Task {
+    /** The message given for a tag that cannot be stored. */
+    static final String INVALID_TAG_MESSAGE = "Tags should be a single word without commas or '|', such as 'work'.";
+    /** The message given for a description that cannot be stored. */
+    static final String INVALID_DESCRIPTION_MESSAGE = "Descriptions cannot contain '|', line breaks or tabs.";
+
+    protected int id;
     protected boolean completed;
     protected String description;
+    protected TreeSet<String> tags;
+    protected LocalDate completedOn;
 
     /**
      * Constructs a Task with the specified description.
@@ -19,6 +33,21 @@ abstract class Task {
     public Task(String description) {
         this.description = description;
         this.completed = false;
+        this.tags = new TreeSet<>();
+    }
+
+    /**
+     * Returns the ID assigned to this task by its TaskList. IDs stay the same when other tasks are removed,
+     * unlike positions in the list.
+     *
+     * @return The ID of this task.
+     */
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
     }
 
     public void mark() {
@@ -33,14 +62,88 @@ abstract class Task {
         return completed;
     }
 
+    /**
+     * Returns the date this task was marked as done, which decides when it is archived automatically.
+     *
+     * @return The date, or null if the task is not done or was done before dates were recorded.
+     */
+    public LocalDate getCompletedOn() {
+        return completedOn;
+    }
+
+    public void setCompletedOn(LocalDate completedOn) {
+        this.completedOn = completedOn;
+    }
+
     public String getDescription() {
         return description;
     }
 
+    public TreeSet<String> getTags() {
+        return tags;
+    }
+
+    /**
+     * Checks that a tag can be stored and returns it in the form tags are kept in: lower case, without a
+     * leading '#'.
+     *
+     * @param tag The tag as the user typed it, such as "#Work".
+     * @return The tag as it is kept, such as "work".
+     * @throws BarryException If the tag is empty or contains a space, a comma or a '|'.
+     */
+    public static String normalizeTag(String tag) throws BarryException {
+        String normalized = normalizeTagOrNull(tag);
+        if (normalized == null) {
+            throw new BarryException(INVALID_TAG_MESSAGE);
+        }
+        return normalized;
+    }
+
+    /**
+     * Returns a tag in the form tags are kept in, like normalizeTag, but without throwing if it cannot be stored.
+     *
+     * @param tag The tag as the user typed it.
+     * @return The tag as it is kept, or null if it is empty or contains whitespace, a comma or a '|'.
+     */
+    static String normalizeTagOrNull(String tag) {
+        String normalized = (tag.startsWith("#") ? tag.substring(1) : tag).toLowerCase();
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (c == ',' || c == '|' || c == ' ' || (c >= '\t' && c <= '\r')) {
+                return null;
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     * Checks that a description can be stored. The task file separates fields with " | " and records with line
+     * breaks, and a tab ends a record before its checksum, so none of these can be part of a description.
+     *
+     * @param description The description.
+     * @return Whether the description contains no '|', line break or tab.
+     */
+    static boolean isValidDescription(String description) {
+        for (int i = 0; i < description.length(); i++) {
+            char c = description.charAt(i);
+            if (c == '|' || c == '\n' || c == '\r' || c == '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public String toString() {
         String output = (this.completed ? "[X] " : "[ ] ");
-        return output + this.description;
+        output += this.description;
+        for (String tag : tags) {
+            output += " #" + tag;
+        }
+        return output;
     }
 
     /**
@@ -125,4 +228,156 @@ abstract class Task {
             return "[E]" + super.toString() + " (from: " + this.from.format(formatter) + " to: " + this.to.format(formatter) + ")";
         }
     }
+
+    /**
+     * Represents a task that repeats every fixed number of days from a start time, optionally until an end date.
+     * Only the rule and the skipped dates are kept; occurrences are generated lazily when they are needed.
+     */
+    static class RecurringTask extends Task {
+        private LocalDateTime start;
+        private int intervalDays;
+        private LocalDate until;
+        private TreeSet<LocalDate> exceptions;
+
+        /**
+         * Constructs a RecurringTask with the specified description and recurrence rule.
+         *
+         * @param description The description of the recurring task.
+         * @param start The date and time of the first occurrence.
+         * @param intervalDays The number of days between consecutive occurrences.
+         * @param until The last date on which an occurrence may fall, or null if the task repeats forever.
+         */
+        public RecurringTask(String description, LocalDateTime start, int intervalDays, LocalDate until) {
+            super(description);
+            assert intervalDays > 0 : "Recurrence interval should be positive.";
+            this.start = start;
+            this.intervalDays = intervalDays;
+            this.until = until;
+            this.exceptions = new TreeSet<>();
+        }
+
+        public LocalDateTime getStart() {
+            return start;
+        }
+
+        public int getIntervalDays() {
+            return intervalDays;
+        }
+
+        public LocalDate getUntil() {
+            return until;
+        }
+
+        public TreeSet<LocalDate> getExceptions() {
+            return exceptions;
+        }
+
+        /**
+         * Returns a new recurring task with the same description, rule and skipped dates as this one.
+         * Its ID, completion and tags are left at their defaults.
+         *
+         * @return A copy whose skipped dates can change without affecting this task.
+         */
+        public RecurringTask copyRule() {
+            RecurringTask copy = new RecurringTask(getDescription(), start, intervalDays, until);
+            copy.exceptions.addAll(exceptions);
+            return copy;
+        }
+
+        /**
+         * Skips the occurrence that falls on the given date.
+         *
+         * @param date The date of the occurrence to skip.
+         * @throws BarryException If no occurrence of this task falls on the given date.
+         */
+        public void skip(LocalDate date) throws BarryException {
+            if (!isOccurrenceDate(date)) {
+                throw new BarryException("This task does not occur on " + date + ".");
+            }
+            exceptions.add(date);
+        }
+
+        /**
+         * Checks whether the rule places an occurrence on the given date, ignoring skipped dates.
+         */
+        private boolean isOccurrenceDate(LocalDate date) {
+            long days = ChronoUnit.DAYS.between(start.toLocalDate(), date);
+            return days >= 0 && days % intervalDays == 0 && (until == null || !date.isAfter(until));
+        }
+
+        /**
+         * Returns the first occurrence at or after the given time, or null if there are no more occurrences.
+         *
+         * @param after The earliest time to consider.
+         * @return The next occurrence, or null if the task has ended.
+         */
+        public LocalDateTime nextOccurrence(LocalDateTime after) {
+            Iterator<LocalDateTime> occurrences = occurrencesFrom(after);
+            return occurrences.hasNext() ? occurrences.next() : null;
+        }
+
+        /**
+         * Returns a lazy iterator over the occurrences at or after the given time, in chronological order.
+         * The first occurrence is found arithmetically, so this does not walk the occurrences before it.
+         *
+         * @param from The earliest time to consider.
+         * @return An iterator over the remaining occurrences, which is unbounded if the task has no end date.
+         */
+        public Iterator<LocalDateTime> occurrencesFrom(LocalDateTime from) {
+            long steps = 0;
+            if (from.isAfter(start)) {
+                long days = ChronoUnit.DAYS.between(start, from);
+                steps = days / intervalDays;
+                if (start.plusDays(steps * intervalDays).isBefore(from)) {
+                    steps++;
+                }
+            }
+            final long firstStep = steps;
+            return new Iterator<>() {
+                private long step = firstStep;
+                private LocalDateTime next = advance();
+
+                private LocalDateTime advance() {
+                    while (true) {
+                        LocalDateTime candidate = start.plusDays(step * intervalDays);
+                        step++;
+                        if (until != null && candidate.toLocalDate().isAfter(until)) {
+                            return null;
+                        }
+                        if (!exceptions.contains(candidate.toLocalDate())) {
+                            return candidate;
+                        }
+                    }
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public LocalDateTime next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    LocalDateTime current = next;
+                    next = advance();
+                    return current;
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM dd yyyy, hh:mm a");
+            String rule = intervalDays == 1 ? "daily" : intervalDays == 7 ? "weekly" : "every " + intervalDays + " days";
+            String output = "[R]" + super.toString() + " (" + rule + " from: " + this.start.format(formatter);
+            if (until != null) {
+                output += " until: " + until.format(DateTimeFormatter.ofPattern("MMM dd yyyy"));
+            }
+            LocalDateTime next = nextOccurrence(LocalDateTime.now());
+            output += (next == null ? ", ended" : ", next: " + next.format(formatter)) + ")";
+            return output;
+        }
+    }
 }
@@ -0,0 +1,440 @@
+package barry;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+
+/**
+ * The TaskCodec class converts tasks of one type to and from records of the task file. A record is the type's
+ * one-letter tag, the status, the description and the fields of the type, optionally followed by the tags of
+ * the task, all separated by " | ". Codecs are kept in a registry: reading a record looks its codec up by tag in
+ * an array, and writing a task looks it up by class, so neither gets slower as task types are added. A new task
+ * type plugs in by registering a codec for it.
+ *
+ * @param <T> The type of task the codec handles.
+ */
+abstract class TaskCodec<T extends Task> {
+    /** The separator between the fields of a record. */
+    public static final String SEPARATOR = " | ";
+
+    private static final TaskCodec<?>[] BY_TAG = new TaskCodec<?>[128];
+    private static final HashMap<Class<?>, TaskCodec<?>> BY_CLASS = new HashMap<>();
+
+    static {
+        register(new TodoCodec());
+        register(new DeadlineCodec());
+        register(new EventCodec());
+        register(new RecurringCodec());
+    }
+
+    private final char tag;
+    private final Class<T> type;
+
+    /**
+     * Constructs a TaskCodec.
+     *
+     * @param tag  The letter that starts the records of this type.
+     * @param type The class of the tasks of this type.
+     */
+    protected TaskCodec(char tag, Class<T> type) {
+        this.tag = tag;
+        this.type = type;
+    }
+
+    /**
+     * Adds a codec to the registry, so that tasks of its type can be saved and loaded.
+     *
+     * @param codec The codec to add.
+     * @throws IllegalArgumentException If the tag is not an ASCII letter, or another codec already has the tag
+     *                                  or the class.
+     */
+    public static synchronized void register(TaskCodec<?> codec) {
+        if (codec.tag >= BY_TAG.length || !Character.isLetter(codec.tag)) {
+            throw new IllegalArgumentException("Task type tags should be ASCII letters: " + codec.tag);
+        }
+        if (BY_TAG[codec.tag] != null || BY_CLASS.containsKey(codec.type)) {
+            throw new IllegalArgumentException("A codec is already registered for " + codec.type.getSimpleName()
+                    + " or the tag " + codec.tag);
+        }
+        BY_TAG[codec.tag] = codec;
+        BY_CLASS.put(codec.type, codec);
+    }
+
+    /**
+     * Appends the record of a task to a buffer.
+     *
+     * @param task   The task to encode.
+     * @param record The buffer to append the record to.
+     * @return Whether there is a codec for the task's type; if not, nothing is appended.
+     */
+    public static boolean encode(Task task, StringBuilder record) {
+        TaskCodec<?> codec = BY_CLASS.get(task.getClass());
+        if (codec == null) {
+            return false;
+        }
+        codec.encodeRecord(task, record);
+        return true;
+    }
+
+    /**
+     * Reads a task from its record.
+     *
+     * @param record The record to decode.
+     * @return The task, or null if no codec is registered for the record's tag.
+     * @throws ArrayIndexOutOfBoundsException If the record is missing fields.
+     * @throws RuntimeException               If a field cannot be parsed.
+     */
+    public static Task decode(String record) {
+        char tag = record.isEmpty() ? 0 : record.charAt(0);
+        TaskCodec<?> codec = tag < BY_TAG.length ? BY_TAG[tag] : null;
+        if (codec == null || (record.length() > 1 && !record.startsWith(SEPARATOR, 1))) {
+            return null;
+        }
+        Fields fields = new Fields(record, 1 + SEPARATOR.length());
+        String status = fields.next();
+        Task task = codec.decodeFields(fields.next(), fields);
+        if (fields.hasNext()) {
+            for (String tagName : fields.next().split(",")) {
+                task.getTags().add(tagName);
+            }
+        }
+        // Completed tasks may carry the date they were done on, as in "1@2026-03-01"
+        if (status.startsWith("1")) {
+            task.mark();
+            if (status.length() > 2 && status.charAt(1) == '@') {
+                task.setCompletedOn(parseDate(status.substring(2)));
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Checks whether a codec is registered for a tag, without decoding a record.
+     *
+     * @param tag The letter that starts a record.
+     * @return Whether records starting with the letter can be decoded.
+     */
+    public static boolean isKnownTag(char tag) {
+        return tag < BY_TAG.length && BY_TAG[tag] != null;
+    }
+
+    /**
+     * Returns the date that decides which month segment a completed task is saved in.
+     *
+     * @param task The task.
+     * @return The date, or null if the task has none and so stays in the task file.
+     */
+    public static LocalDate segmentDateOf(Task task) {
+        TaskCodec<?> codec = BY_CLASS.get(task.getClass());
+        return codec == null ? null : codec.castAndGetSegmentDate(task);
+    }
+
+    private void encodeRecord(Task task, StringBuilder record) {
+        T typed = type.cast(task);
+        record.append(tag).append(SEPARATOR);
+        if (!task.isCompleted()) {
+            record.append('0');
+        } else {
+            record.append('1');
+            if (task.getCompletedOn() != null) {
+                appendDate(record.append('@'), task.getCompletedOn());
+            }
+        }
+        record.append(SEPARATOR).append(task.getDescription());
+        encodeFields(typed, record);
+        if (!task.getTags().isEmpty()) {
+            record.append(SEPARATOR);
+            boolean isFirst = true;
+            for (String tagName : task.getTags()) {
+                if (!isFirst) {
+                    record.append(',');
+                }
+                record.append(tagName);
+                isFirst = false;
+            }
+        }
+    }
+
+    private LocalDate castAndGetSegmentDate(Task task) {
+        return segmentDate(type.cast(task));
+    }
+
+    /**
+     * Appends the fields of the type, each preceded by SEPARATOR.
+     *
+     * @param task   The task to encode.
+     * @param record The buffer holding the record so far.
+     */
+    protected abstract void encodeFields(T task, StringBuilder record);
+
+    /**
+     * Creates a task from its description and the fields of the type, which are read in the order
+     * encodeFields wrote them.
+     *
+     * @param description The description of the task.
+     * @param fields      The remaining fields of the record.
+     * @return The task, not yet marked or tagged.
+     */
+    protected abstract T decodeFields(String description, Fields fields);
+
+    /**
+     * Returns the date that decides which month segment a completed task of this type is saved in. By default
+     * this is the day it was completed.
+     *
+     * @param task The task.
+     * @return The date, or null if the task stays in the task file.
+     */
+    protected LocalDate segmentDate(T task) {
+        return task.getCompletedOn();
+    }
+
+    /**
+     * Appends a date and time in the ISO form LocalDateTime.toString uses, writing the digits directly for the
+     * usual whole minutes.
+     *
+     * @param record   The buffer to append to.
+     * @param dateTime The date and time.
+     * @return The buffer.
+     */
+    protected static StringBuilder appendDateTime(StringBuilder record, LocalDateTime dateTime) {
+        if (dateTime.getSecond() != 0 || dateTime.getNano() != 0 || dateTime.getYear() < 0
+                || dateTime.getYear() > 9999) {
+            return record.append(dateTime);
+        }
+        appendDate(record, dateTime.toLocalDate()).append('T');
+        return appendDigits(appendDigits(record, dateTime.getHour(), 2).append(':'), dateTime.getMinute(), 2);
+    }
+
+    /**
+     * Appends a date in the ISO form LocalDate.toString uses.
+     *
+     * @param record The buffer to append to.
+     * @param date   The date.
+     * @return The buffer.
+     */
+    protected static StringBuilder appendDate(StringBuilder record, LocalDate date) {
+        if (date.getYear() < 0 || date.getYear() > 9999) {
+            return record.append(date);
+        }
+        appendDigits(record, date.getYear(), 4).append('-');
+        return appendDigits(appendDigits(record, date.getMonthValue(), 2).append('-'), date.getDayOfMonth(), 2);
+    }
+
+    private static StringBuilder appendDigits(StringBuilder record, int value, int width) {
+        for (int divisor = width == 4 ? 1000 : 10; divisor > 0; divisor /= 10) {
+            record.append((char) ('0' + value / divisor % 10));
+        }
+        return record;
+    }
+
+    /**
+     * Parses a date and time written by appendDateTime, reading the usual whole minutes digit by digit and
+     * anything else with LocalDateTime.parse.
+     *
+     * @param field The field holding the date and time.
+     * @return The date and time.
+     */
+    protected static LocalDateTime parseDateTime(String field) {
+        if (field.length() == 16 && field.charAt(10) == 'T' && field.charAt(13) == ':') {
+            LocalDate date = parseDate(field.substring(0, 10));
+            int hour = parseDigits(field, 11, 13);
+            int minute = parseDigits(field, 14, 16);
+            if (hour >= 0 && minute >= 0) {
+                return date.atTime(hour, minute);
+            }
+        }
+        return LocalDateTime.parse(field);
+    }
+
+    /**
+     * Parses a date written by appendDate.
+     *
+     * @param field The field holding the date.
+     * @return The date.
+     */
+    protected static LocalDate parseDate(String field) {
+        if (field.length() == 10 && field.charAt(4) == '-' && field.charAt(7) == '-') {
+            int year = parseDigits(field, 0, 4);
+            int month = parseDigits(field, 5, 7);
+            int day = parseDigits(field, 8, 10);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                return LocalDate.of(year, month, day);
+            }
+        }
+        return LocalDate.parse(field);
+    }
+
+    /**
+     * Returns the number written in a range of a string, or -1 if the range holds anything but digits.
+     */
+    private static int parseDigits(String field, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = field.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Reads the fields of a record one at a time, finding each separator as it goes instead of splitting the
+     * whole record up front.
+     */
+    static class Fields {
+        private final String record;
+        private int position;
+
+        private Fields(String record, int position) {
+            this.record = record;
+            this.position = position;
+        }
+
+        public boolean hasNext() {
+            return position <= record.length();
+        }
+
+        /**
+         * Returns the next field.
+         *
+         * @return The field.
+         * @throws ArrayIndexOutOfBoundsException If the record has no more fields.
+         */
+        public String next() {
+            if (!hasNext()) {
+                throw new ArrayIndexOutOfBoundsException("The record is missing fields: " + record);
+            }
+            int end = record.indexOf(SEPARATOR, position);
+            if (end < 0) {
+                end = record.length();
+            }
+            String field = record.substring(position, end);
+            position = end + SEPARATOR.length();
+            return field;
+        }
+    }
+
+    /**
+     * Encodes todos, which have no fields of their own, as "T | status | description".
+     */
+    static class TodoCodec extends TaskCodec<Task.TodoTask> {
+        TodoCodec() {
+            super('T', Task.TodoTask.class);
+        }
+
+        @Override
+        protected void encodeFields(Task.TodoTask task, StringBuilder record) {
+        }
+
+        @Override
+        protected Task.TodoTask decodeFields(String description, Fields fields) {
+            return new Task.TodoTask(description);
+        }
+    }
+
+    /**
+     * Encodes deadlines as "D | status | description | by".
+     */
+    static class DeadlineCodec extends TaskCodec<Task.DeadlineTask> {
+        DeadlineCodec() {
+            super('D', Task.DeadlineTask.class);
+        }
+
+        @Override
+        protected void encodeFields(Task.DeadlineTask task, StringBuilder record) {
+            appendDateTime(record.append(SEPARATOR), task.getBy());
+        }
+
+        @Override
+        protected Task.DeadlineTask decodeFields(String description, Fields fields) {
+            return new Task.DeadlineTask(description, parseDateTime(fields.next()));
+        }
+
+        @Override
+        protected LocalDate segmentDate(Task.DeadlineTask task) {
+            return task.getBy().toLocalDate();
+        }
+    }
+
+    /**
+     * Encodes events as "E | status | description | from | to".
+     */
+    static class EventCodec extends TaskCodec<Task.EventTask> {
+        EventCodec() {
+            super('E', Task.EventTask.class);
+        }
+
+        @Override
+        protected void encodeFields(Task.EventTask task, StringBuilder record) {
+            appendDateTime(record.append(SEPARATOR), task.getFrom());
+            appendDateTime(record.append(SEPARATOR), task.getTo());
+        }
+
+        @Override
+        protected Task.EventTask decodeFields(String description, Fields fields) {
+            LocalDateTime from = parseDateTime(fields.next());
+            return new Task.EventTask(description, from, parseDateTime(fields.next()));
+        }
+
+        @Override
+        protected LocalDate segmentDate(Task.EventTask task) {
+            return task.getFrom().toLocalDate();
+        }
+    }
+
+    /**
+     * Encodes recurring tasks as "R | status | description | start | interval in days | until or - | skipped
+     * dates or -", keeping only the rule and the skipped dates.
+     */
+    static class RecurringCodec extends TaskCodec<Task.RecurringTask> {
+        RecurringCodec() {
+            super('R', Task.RecurringTask.class);
+        }
+
+        @Override
+        protected void encodeFields(Task.RecurringTask task, StringBuilder record) {
+            appendDateTime(record.append(SEPARATOR), task.getStart());
+            record.append(SEPARATOR).append(task.getIntervalDays()).append(SEPARATOR);
+            if (task.getUntil() == null) {
+                record.append('-');
+            } else {
+                appendDate(record, task.getUntil());
+            }
+            record.append(SEPARATOR);
+            if (task.getExceptions().isEmpty()) {
+                record.append('-');
+            }
+            boolean isFirst = true;
+            for (LocalDate skipped : task.getExceptions()) {
+                if (!isFirst) {
+                    record.append(',');
+                }
+                appendDate(record, skipped);
+                isFirst = false;
+            }
+        }
+
+        @Override
+        protected Task.RecurringTask decodeFields(String description, Fields fields) {
+            LocalDateTime start = parseDateTime(fields.next());
+            int intervalDays = Integer.parseInt(fields.next());
+            String until = fields.next();
+            Task.RecurringTask task = new Task.RecurringTask(description, start, intervalDays,
+                    until.equals("-") ? null : parseDate(until));
+            String skipped = fields.next();
+            if (!skipped.equals("-")) {
+                for (String date : skipped.split(",")) {
+                    task.getExceptions().add(parseDate(date));
+                }
+            }
+            return task;
+        }
+
+        @Override
+        protected LocalDate segmentDate(Task.RecurringTask task) {
+            return task.getUntil();
+        }
+    }
+}
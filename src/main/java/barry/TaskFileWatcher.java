@@ -0,0 +1,66 @@
+package barry;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * The TaskFileWatcher class watches the task file on a background thread and asks its Storage to read any
+ * change made by another program, so the command path never waits on file I/O for a reload.
+ */
+public class TaskFileWatcher extends Thread {
+    /** How long to wait after a change before reading the file, so that a writer can finish. */
+    private static final long SETTLE_MILLIS = 50;
+
+    private Storage storage;
+    private Path file;
+    private WatchService watchService;
+
+    /**
+     * Constructs a TaskFileWatcher for the given file.
+     *
+     * @param storage The storage that reads the file when it changes.
+     * @param file    The absolute path of the task file.
+     * @throws IOException If the directory of the file cannot be watched.
+     */
+    public TaskFileWatcher(Storage storage, Path file) throws IOException {
+        super("task-file-watcher");
+        setDaemon(true);
+        this.storage = storage;
+        this.file = file;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (changed) {
+                    Thread.sleep(SETTLE_MILLIS);
+                    try {
+                        storage.detectExternalChange();
+                    } catch (IOException e) {
+                        System.err.println("Failed to reload the task file: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stop watching
+        }
+    }
+}
@@ -1,6 +1,20 @@
 package barry;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.PrimitiveIterator;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * The TaskList class manages a collection of tasks, providing methods to add,
@@ -8,16 +22,54 @@ import java.util.ArrayList;
  * retrieve, and modify tasks in the list. It also supports operations to mark
  * tasks
  * as completed or uncompleted.
+ * Tasks are kept in a columnar TaskStore, and Task objects are created only when
+ * a task is retrieved.
  */
 public class TaskList {
-    private ArrayList<Task> taskList;
+    /** The maximum number of results returned by a fuzzy search. */
+    public static final int FUZZY_RESULT_LIMIT = 10;
+    /** The time budget for a fuzzy search, after which remaining candidates are not verified. */
+    public static final long FUZZY_BUDGET_NANOS = 50_000_000L;
+    /** Lists shorter than this are scanned on the calling thread, as splitting them costs more than it saves. */
+    public static final int PARALLEL_SCAN_THRESHOLD = 50_000;
+
+    private TaskStore store;
+    // Indexes are built the first time they are needed, so lists that never use them do not pay for them
+    private TrigramIndex trigramIndex;
+    private EnumMap<SortOrder, TreeSet<ViewEntry>> sortedViews;
+    private int nextId;
+    // Counts the changes made to the list, so that anything computed from it can tell whether it is stale
+    private long version;
+
+    // Summary counters, indexed by task type
+    private int[] typeCounts;
+    private int[] completedCounts;
+    // Deadlines that are not done, by due time. Those due before overdueBoundary are counted in overdueCount.
+    private TreeSet<ViewEntry> pendingDeadlines;
+    // Events that are not done, by start time
+    private TreeSet<ViewEntry> pendingEvents;
+    private long overdueBoundary;
+    private int overdueCount;
+
+    // The IDs of the tasks with each tag
+    private HashMap<String, IdBitmap> tagIndex;
+
+    private ArrayList<ChangeListener> listeners;
 
     /**
      * Constructs an empty TaskList.
      */
     public TaskList() {
-        this.taskList = new ArrayList<>();
-        assert this.taskList != null : "Task list should not be null after initialization.";
+        this.store = new TaskStore();
+        this.sortedViews = new EnumMap<>(SortOrder.class);
+        this.typeCounts = new int[TaskStore.RECURRING + 1];
+        this.completedCounts = new int[TaskStore.RECURRING + 1];
+        this.pendingDeadlines = new TreeSet<>();
+        this.pendingEvents = new TreeSet<>();
+        this.overdueBoundary = Long.MIN_VALUE;
+        this.tagIndex = new HashMap<>();
+        this.listeners = new ArrayList<>();
+        assert this.store != null : "Task list should not be null after initialization.";
     }
 
     /**
@@ -25,19 +77,33 @@ public class TaskList {
      *
      * @param initialTasks The initial list of tasks to be managed by this TaskList.
      */
-    public TaskList(ArrayList<Task> initialTasks) {
-        this.taskList = initialTasks;
-        assert this.taskList != null : "Task list should not be null after initialization with initial tasks.";
+    public TaskList(List<Task> initialTasks) {
+        this();
+        assert initialTasks != null : "Task list should not be null after initialization with initial tasks.";
+        for (Task task : initialTasks) {
+            addTask(task);
+        }
     }
 
     /**
-     * Returns the current list of tasks.
+     * Returns a read-only view of the current list of tasks. Each task is
+     * created from the store when it is retrieved from the view.
      *
      * @return The list of tasks in this TaskList.
      */
-    public ArrayList<Task> getTasks() {
-        assert taskList != null : "Task list should not be null when retrieving tasks.";
-        return this.taskList;
+    public List<Task> getTasks() {
+        assert store != null : "Task list should not be null when retrieving tasks.";
+        return new AbstractList<>() {
+            @Override
+            public Task get(int index) {
+                return store.get(index);
+            }
+
+            @Override
+            public int size() {
+                return store.size();
+            }
+        };
     }
 
     /**
@@ -47,7 +113,62 @@ public class TaskList {
      */
     public void addTask(Task newTask) {
         assert newTask != null : "New task should not be null when adding to the list.";
-        taskList.add(newTask);
+        newTask.setId(nextId++);
+        if (newTask.isCompleted() && newTask.getCompletedOn() == null) {
+            // Tasks done before completion dates were recorded count as done from when they are first seen
+            newTask.setCompletedOn(LocalDate.now());
+        }
+        store.add(newTask);
+        indexAt(store.size() - 1);
+        version++;
+        for (ChangeListener listener : listeners) {
+            listener.taskAdded(newTask);
+        }
+    }
+
+    /**
+     * Replaces the task at the specified index with another task, keeping its place in the list.
+     *
+     * @param taskIndex   The index of the task to replace.
+     * @param replacement The task to put in its place.
+     * @throws BarryException If the index is out of the range of the task list.
+     */
+    public void replaceTask(int taskIndex, Task replacement) throws BarryException {
+        assert replacement != null : "A replacement task should not be null.";
+        checkIndex(taskIndex);
+        forgetAt(taskIndex);
+        replacement.setId(store.getId(taskIndex));
+        if (replacement.isCompleted() && replacement.getCompletedOn() == null) {
+            replacement.setCompletedOn(LocalDate.now());
+        }
+        store.set(taskIndex, replacement);
+        indexAt(taskIndex);
+        version++;
+        for (ChangeListener listener : listeners) {
+            listener.taskReplaced(taskIndex, replacement);
+        }
+    }
+
+    /**
+     * Adds the task at a position to the indexes and counters, after it is written to the store.
+     */
+    private void indexAt(int position) {
+        int id = store.getId(position);
+        if (trigramIndex != null) {
+            trigramIndex.add(id, store.getDescription(position));
+        }
+        for (SortOrder order : sortedViews.keySet()) {
+            sortedViews.get(order).add(new ViewEntry(order.keyOf(store, position), id));
+        }
+        typeCounts[store.getType(position)]++;
+        if (store.isCompleted(position)) {
+            completedCounts[store.getType(position)]++;
+        } else {
+            addPending(position);
+        }
+        for (String tag : store.getTags(position)) {
+            tagIndex.computeIfAbsent(tag, k -> new IdBitmap()).add(id);
+        }
     }
 
     /**
@@ -58,10 +179,63 @@ public class TaskList {
      */
     public void removeTask(int taskIndex) throws BarryException {
         assert taskIndex >= 0 : "Task index should not be negative.";
-        if (taskIndex < 0 || taskIndex >= taskList.size()) {
-            throw new BarryException("Task number is out of range.");
+        checkIndex(taskIndex);
+        removeAt(taskIndex);
+    }
+
+    /**
+     * Removes the tasks at the given positions in one pass over the store, so removing many tasks costs about
+     * as much as removing one. Listeners are told about each removal, from the last position to the first.
+     *
+     * @param positions The positions of the tasks to remove, in increasing order.
+     */
+    public void removeTasks(int[] positions) {
+        for (int i = positions.length - 1; i >= 0; i--) {
+            assert i == 0 || positions[i - 1] < positions[i] : "Positions should be in increasing order.";
+            forgetAt(positions[i]);
+        }
+        store.removeAll(positions);
+        version++;
+        for (int i = positions.length - 1; i >= 0; i--) {
+            for (ChangeListener listener : listeners) {
+                listener.taskRemoved(positions[i]);
+            }
+        }
+    }
+
+    /**
+     * Removes the task at a position known to be in range, updating the indexes and counters.
+     */
+    private void removeAt(int taskIndex) {
+        forgetAt(taskIndex);
+        store.remove(taskIndex);
+        version++;
+        for (ChangeListener listener : listeners) {
+            listener.taskRemoved(taskIndex);
+        }
+    }
+
+    /**
+     * Drops the task at a position from the indexes and counters, before it is removed from or replaced in the
+     * store.
+     */
+    private void forgetAt(int taskIndex) {
+        int id = store.getId(taskIndex);
+        if (trigramIndex != null) {
+            trigramIndex.remove(id, store.getDescription(taskIndex));
+        }
+        for (SortOrder order : sortedViews.keySet()) {
+            sortedViews.get(order).remove(new ViewEntry(order.keyOf(store, taskIndex), id));
+        }
+        typeCounts[store.getType(taskIndex)]--;
+        if (store.isCompleted(taskIndex)) {
+            completedCounts[store.getType(taskIndex)]--;
+        } else {
+            removePending(taskIndex);
+        }
+        for (String tag : store.getTags(taskIndex)) {
+            removeFromTagIndex(tag, id);
         }
-        taskList.remove(taskIndex);
     }
 
     /**
@@ -73,10 +247,25 @@ public class TaskList {
      */
     public Task getTask(int taskIndex) throws BarryException {
         assert taskIndex >= 0 : "Task index should not be negative.";
-        if (taskIndex < 0 || taskIndex >= taskList.size()) {
+        checkIndex(taskIndex);
+        return store.get(taskIndex);
+    }
+
+    /**
+     * Returns how the task at the specified index is shown to the user.
+     *
+     * @param taskIndex The index of the task.
+     * @return The task as text, as in the output of list.
+     * @throws BarryException If the index is out of the range of the task list.
+     */
+    public String describeTask(int taskIndex) throws BarryException {
+        return getTask(taskIndex).toString();
+    }
+
+    private void checkIndex(int taskIndex) throws BarryException {
+        if (taskIndex < 0 || taskIndex >= store.size()) {
             throw new BarryException("Task number is out of range.");
         }
-        return taskList.get(taskIndex);
     }
 
     /**
@@ -87,9 +276,8 @@ public class TaskList {
      */
     public void markTask(int taskIndex) throws BarryException {
         assert taskIndex >= 0 : "Task index should not be negative.";
-        Task taskToMark = getTask(taskIndex);
-        assert taskToMark != null : "Task to be marked should not be null.";
-        taskToMark.mark();
+        checkIndex(taskIndex);
+        setCompleted(taskIndex, true);
     }
 
     /**
@@ -100,9 +288,433 @@ public class TaskList {
      */
     public void unmarkTask(int taskIndex) throws BarryException {
         assert taskIndex >= 0 : "Task index should not be negative.";
-        Task taskToUnmark = getTask(taskIndex);
-        assert taskToUnmark != null : "Task to be unmarked should not be null.";
-        taskToUnmark.unmark();
+        checkIndex(taskIndex);
+        setCompleted(taskIndex, false);
+    }
+
+    /**
+     * Marks or unmarks a task, moving it within the status view.
+     */
+    private void setCompleted(int taskIndex, boolean completed) {
+        if (store.isCompleted(taskIndex) == completed) {
+            return;
+        }
+        if (completed) {
+            removePending(taskIndex);
+            completedCounts[store.getType(taskIndex)]++;
+        } else {
+            completedCounts[store.getType(taskIndex)]--;
+        }
+        TreeSet<ViewEntry> statusView = sortedViews.get(SortOrder.STATUS);
+        int id = store.getId(taskIndex);
+        if (statusView != null) {
+            statusView.remove(new ViewEntry(SortOrder.STATUS.keyOf(store, taskIndex), id));
+        }
+        store.setCompleted(taskIndex, completed);
+        store.setCompletedDay(taskIndex, completed ? LocalDate.now().toEpochDay() : TaskStore.NO_DAY);
+        if (statusView != null) {
+            statusView.add(new ViewEntry(SortOrder.STATUS.keyOf(store, taskIndex), id));
+        }
+        if (!completed) {
+            addPending(taskIndex);
+        }
+        version++;
+        for (ChangeListener listener : listeners) {
+            listener.taskCompletionChanged(taskIndex, completed);
+        }
+    }
+
+    /**
+     * Skips the occurrence of a recurring task that falls on the given date.
+     *
+     * @param taskIndex The index of the recurring task.
+     * @param date      The date of the occurrence to skip.
+     * @return The recurring task.
+     * @throws BarryException If the index is out of range, the task is not recurring, or it does not occur
+     *                        on the given date.
+     */
+    public Task skipOccurrence(int taskIndex, LocalDate date) throws BarryException {
+        checkIndex(taskIndex);
+        if (store.getType(taskIndex) != TaskStore.RECURRING) {
+            throw new BarryException("Only recurring tasks can have occurrences skipped.");
+        }
+        store.skip(taskIndex, date);
+        version++;
+        for (ChangeListener listener : listeners) {
+            listener.occurrenceSkipped(taskIndex, date);
+        }
+        return store.get(taskIndex);
+    }
+
+    /**
+     * Adds a tag to the task at the specified index.
+     *
+     * @param taskIndex The index of the task.
+     * @param tag       The tag, as returned by Task.normalizeTag.
+     * @return Whether the task did not have the tag already.
+     * @throws BarryException If the index is out of the range of the task list.
+     */
+    public boolean tagTask(int taskIndex, String tag) throws BarryException {
+        checkIndex(taskIndex);
+        String[] tags = store.getTags(taskIndex);
+        int position = Arrays.binarySearch(tags, tag);
+        if (position >= 0) {
+            return false;
+        }
+        position = -position - 1;
+        String[] newTags = new String[tags.length + 1];
+        System.arraycopy(tags, 0, newTags, 0, position);
+        newTags[position] = tag;
+        System.arraycopy(tags, position, newTags, position + 1, tags.length - position);
+        store.setTags(taskIndex, newTags);
+        tagIndex.computeIfAbsent(tag, k -> new IdBitmap()).add(store.getId(taskIndex));
+        version++;
+        for (ChangeListener listener : listeners) {
+            listener.taskTagged(taskIndex, tag, true);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a tag from the task at the specified index.
+     *
+     * @param taskIndex The index of the task.
+     * @param tag       The tag, as returned by Task.normalizeTag.
+     * @return Whether the task had the tag.
+     * @throws BarryException If the index is out of the range of the task list.
+     */
+    public boolean untagTask(int taskIndex, String tag) throws BarryException {
+        checkIndex(taskIndex);
+        String[] tags = store.getTags(taskIndex);
+        int position = Arrays.binarySearch(tags, tag);
+        if (position < 0) {
+            return false;
+        }
+        String[] newTags = new String[tags.length - 1];
+        System.arraycopy(tags, 0, newTags, 0, position);
+        System.arraycopy(tags, position + 1, newTags, position, newTags.length - position);
+        store.setTags(taskIndex, newTags);
+        removeFromTagIndex(tag, store.getId(taskIndex));
+        version++;
+        for (ChangeListener listener : listeners) {
+            listener.taskTagged(taskIndex, tag, false);
+        }
+        return true;
+    }
+
+    private void removeFromTagIndex(String tag, int id) {
+        IdBitmap ids = tagIndex.get(tag);
+        ids.remove(id);
+        if (ids.isEmpty()) {
+            tagIndex.remove(tag);
+        }
+    }
+
+    /**
+     * Returns the IDs of the tasks with a tag. The returned set must not be modified.
+     *
+     * @param tag The tag, as returned by Task.normalizeTag.
+     * @return The IDs of the tasks with the tag.
+     */
+    IdBitmap idsWithTag(String tag) {
+        IdBitmap ids = tagIndex.get(tag);
+        return ids == null ? new IdBitmap() : ids;
+    }
+
+    /**
+     * Finds the tasks that have, for every group of tags, at least one tag from that group, and none of the
+     * excluded tags. This is answered from the tag bitmaps alone, without reading any description.
+     *
+     * @param requiredGroups The groups of tags, each matched if a task has any tag in it.
+     * @param excluded       The tags that matching tasks must not have.
+     * @return The positions of the matching tasks, in list order.
+     */
+    public Iterator<Integer> findTasksByTags(List<String[]> requiredGroups, List<String> excluded) {
+        IdBitmap matches = null;
+        for (String[] group : requiredGroups) {
+            IdBitmap anyInGroup = new IdBitmap();
+            for (String tag : group) {
+                anyInGroup = anyInGroup.or(idsWithTag(tag));
+            }
+            matches = matches == null ? anyInGroup : matches.and(anyInGroup);
+        }
+        if (matches == null) {
+            matches = new IdBitmap();
+            for (int i = 0; i < store.size(); i++) {
+                matches.add(store.getId(i));
+            }
+        }
+        for (String tag : excluded) {
+            matches = matches.andNot(idsWithTag(tag));
+        }
+        PrimitiveIterator.OfInt ids = matches.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return ids.hasNext();
+            }
+
+            @Override
+            public Integer next() {
+                return indexOfId(ids.nextInt());
+            }
+        };
+    }
+
+    /**
+     * Registers a listener to be told about every change to this list, right after it is made.
+     *
+     * @param listener The listener to register.
+     */
+    public void addListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Registers a listener to be told where each change to this list is made, right after it is made.
+     *
+     * @param listener The listener to register.
+     * @return The ChangeListener passing changes on to it, which removeListener unregisters.
+     */
+    public ChangeListener addPositionListener(PositionListener listener) {
+        ChangeListener adapter = new ChangeListener() {
+            @Override
+            public void taskAdded(Task task) {
+                listener.taskInserted(store.size() - 1);
+            }
+
+            @Override
+            public void taskRemoved(int position) {
+                listener.taskRemoved(position);
+            }
+
+            @Override
+            public void taskReplaced(int position, Task task) {
+                listener.taskUpdated(position);
+            }
+
+            @Override
+            public void taskCompletionChanged(int position, boolean completed) {
+                listener.taskUpdated(position);
+            }
+
+            @Override
+            public void occurrenceSkipped(int position, LocalDate date) {
+                listener.taskUpdated(position);
+            }
+
+            @Override
+            public void taskTagged(int position, String tag, boolean tagged) {
+                listener.taskUpdated(position);
+            }
+        };
+        addListener(adapter);
+        return adapter;
+    }
+
+    /**
+     * Starts tracking a task that is not done, if it is a deadline or an event.
+     */
+    private void addPending(int position) {
+        if (store.getType(position) == TaskStore.EVENT) {
+            pendingEvents.add(new ViewEntry(store.getStartSeconds(position), store.getId(position)));
+            return;
+        }
+        if (store.getType(position) != TaskStore.DEADLINE) {
+            return;
+        }
+        long due = store.getStartSeconds(position);
+        pendingDeadlines.add(new ViewEntry(due, store.getId(position)));
+        if (due < overdueBoundary) {
+            overdueCount++;
+        }
+    }
+
+    /**
+     * Stops tracking a task that is being removed or marked as done, if it is a deadline or an event.
+     */
+    private void removePending(int position) {
+        if (store.getType(position) == TaskStore.EVENT) {
+            pendingEvents.remove(new ViewEntry(store.getStartSeconds(position), store.getId(position)));
+            return;
+        }
+        if (store.getType(position) != TaskStore.DEADLINE) {
+            return;
+        }
+        long due = store.getStartSeconds(position);
+        pendingDeadlines.remove(new ViewEntry(due, store.getId(position)));
+        if (due < overdueBoundary) {
+            overdueCount--;
+        }
+    }
+
+    /**
+     * Returns the number of tasks of the given type.
+     *
+     * @param type The task type, one of the type constants in TaskStore.
+     * @return The number of tasks of that type.
+     */
+    public int countTasks(byte type) {
+        return typeCounts[type];
+    }
+
+    /**
+     * Returns the number of completed tasks of the given type.
+     *
+     * @param type The task type, one of the type constants in TaskStore.
+     * @return The number of completed tasks of that type.
+     */
+    public int countCompleted(byte type) {
+        return completedCounts[type];
+    }
+
+    /**
+     * Returns the number of deadlines that are not done and were due before the given time.
+     * The count is kept as tasks change, and moving the time forward only visits the deadlines that became
+     * overdue since the last call, so repeated calls take constant amortised time.
+     *
+     * @param now The current time.
+     * @return The number of overdue deadlines.
+     */
+    public int countOverdue(LocalDateTime now) {
+        long nowSeconds = TaskStore.toSeconds(now);
+        if (nowSeconds > overdueBoundary) {
+            overdueCount += pendingDeadlines.subSet(new ViewEntry(overdueBoundary, Integer.MIN_VALUE), true,
+                    new ViewEntry(nowSeconds, Integer.MIN_VALUE), false).size();
+        } else if (nowSeconds < overdueBoundary) {
+            overdueCount -= pendingDeadlines.subSet(new ViewEntry(nowSeconds, Integer.MIN_VALUE), true,
+                    new ViewEntry(overdueBoundary, Integer.MIN_VALUE), false).size();
+        }
+        overdueBoundary = nowSeconds;
+        return overdueCount;
+    }
+
+    /**
+     * Returns the deadlines and events that are not done, soonest first, by due time for deadlines and start
+     * time for events. Overdue deadlines come first. Both are kept in order as tasks change, so this walks only
+     * the first few entries of each and takes O(count log n) time.
+     *
+     * @param count The greatest number of tasks to return.
+     * @return The positions of the tasks, most urgent first.
+     */
+    public List<Integer> nextDue(int count) {
+        ArrayList<Integer> positions = new ArrayList<>();
+        Iterator<ViewEntry> deadlines = pendingDeadlines.iterator();
+        Iterator<ViewEntry> events = pendingEvents.iterator();
+        ViewEntry deadline = deadlines.hasNext() ? deadlines.next() : null;
+        ViewEntry event = events.hasNext() ? events.next() : null;
+        while (positions.size() < count && (deadline != null || event != null)) {
+            if (event == null || (deadline != null && deadline.compareTo(event) < 0)) {
+                positions.add(indexOfId(deadline.id));
+                deadline = deadlines.hasNext() ? deadlines.next() : null;
+            } else {
+                positions.add(indexOfId(event.id));
+                event = events.hasNext() ? events.next() : null;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Returns the positions of all tasks in the given sort order. The order is kept up to date as tasks are
+     * added, removed and marked, so walking it does not sort anything. The first call for an order builds it.
+     *
+     * @param order The order to walk the tasks in.
+     * @return An iterator over task positions in the given order.
+     */
+    public Iterator<Integer> sortedPositions(SortOrder order) {
+        Iterator<ViewEntry> entries = sortedView(order).iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public Integer next() {
+                return indexOfId(entries.next().id);
+            }
+        };
+    }
+
+    /**
+     * Returns the view of the task IDs in the given order, building it the first time it is needed.
+     */
+    private TreeSet<ViewEntry> sortedView(SortOrder order) {
+        TreeSet<ViewEntry> view = sortedViews.get(order);
+        if (view == null) {
+            view = new TreeSet<>();
+            for (int i = 0; i < store.size(); i++) {
+                view.add(new ViewEntry(order.keyOf(store, i), store.getId(i)));
+            }
+            sortedViews.put(order, view);
+        }
+        return view;
+    }
+
+    /**
+     * Returns the entries of a sorted view whose keys are at least fromKey and less than toKey.
+     */
+    private NavigableSet<ViewEntry> viewRange(SortOrder order, long fromKey, long toKey) {
+        if (fromKey >= toKey) {
+            return new TreeSet<>();
+        }
+        return sortedView(order).subSet(new ViewEntry(fromKey, Integer.MIN_VALUE), true,
+                new ViewEntry(toKey, Integer.MIN_VALUE), false);
+    }
+
+    /**
+     * Counts the tasks whose sort keys in the given order are at least fromKey and less than toKey, but stops
+     * counting at the limit, so that a planner can compare ranges without walking the large ones.
+     */
+    long countInRange(SortOrder order, long fromKey, long toKey, long limit) {
+        long count = 0;
+        Iterator<ViewEntry> entries = viewRange(order, fromKey, toKey).iterator();
+        while (count < limit && entries.hasNext()) {
+            entries.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the IDs of the tasks whose sort keys in the given order are at least fromKey and less than
+     * toKey, in that order.
+     */
+    PrimitiveIterator.OfInt idsInRange(SortOrder order, long fromKey, long toKey) {
+        Iterator<ViewEntry> entries = viewRange(order, fromKey, toKey).iterator();
+        return new PrimitiveIterator.OfInt() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public int nextInt() {
+                return entries.next().id;
+            }
+        };
+    }
+
+    /**
+     * Returns the trigram index, building it the first time it is needed.
+     */
+    TrigramIndex trigramIndex() {
+        if (trigramIndex == null) {
+            trigramIndex = new TrigramIndex();
+            for (int i = 0; i < store.size(); i++) {
+                trigramIndex.add(store.getId(i), store.getDescription(i));
+            }
+        }
+        return trigramIndex;
+    }
+
+    TaskStore getStore() {
+        return store;
     }
 
     /**
@@ -114,21 +726,111 @@ public class TaskList {
     public ArrayList<Task> findTasks(String searchTerm) {
         assert searchTerm != null && !searchTerm.isEmpty() : "Search term should not be null or empty.";
         ArrayList<Task> matchingTasks = new ArrayList<>();
-        for (Task task : this.taskList) {
-            if (task.getDescription().contains(searchTerm)) {
-                matchingTasks.add(task);
+        for (int i = 0; i < store.size(); i++) {
+            if (store.getDescription(i).contains(searchTerm)) {
+                matchingTasks.add(store.get(i));
             }
         }
         return matchingTasks;
     }
 
+    /**
+     * Finds tasks whose descriptions match the given pattern anywhere. Large lists are split across the common
+     * fork-join pool; the stream is ordered, so matches are returned in list order either way.
+     *
+     * @param pattern The precompiled pattern to search for.
+     * @return A list of tasks that match the pattern, in list order.
+     */
+    public ArrayList<Task> findTasks(Pattern pattern) {
+        assert pattern != null : "Search pattern should not be null.";
+        IntStream positions = IntStream.range(0, store.size());
+        if (store.size() >= PARALLEL_SCAN_THRESHOLD) {
+            positions = positions.parallel();
+        }
+        return positions.filter(i -> pattern.matcher(store.getDescription(i)).find())
+                .mapToObj(store::get)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Finds tasks whose descriptions contain a word close to the search term, tolerating typos.
+     * Candidates come from the trigram index, so the cost depends on how many tasks share trigrams with the
+     * term rather than on the size of the list. The first call builds the index.
+     *
+     * @param searchTerm The term to search for, which may be misspelt.
+     * @return Up to FUZZY_RESULT_LIMIT matching tasks, best match first.
+     */
+    public ArrayList<Task> findTasksFuzzy(String searchTerm) {
+        assert searchTerm != null && !searchTerm.isEmpty() : "Search term should not be null or empty.";
+        int[] ids = trigramIndex().search(searchTerm, FUZZY_RESULT_LIMIT, FUZZY_BUDGET_NANOS,
+                id -> store.getDescription(indexOfId(id)));
+        ArrayList<Task> matchingTasks = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            matchingTasks.add(store.get(indexOfId(id)));
+        }
+        return matchingTasks;
+    }
+
+    /**
+     * Returns the position of the task with the given ID. IDs are assigned in increasing order and removals
+     * keep the remaining tasks in order, so the list is always sorted by ID and can be binary searched.
+     *
+     * @param id The ID of the task.
+     * @return The position of the task in the list, or a negative number if no task has this ID.
+     */
+    public int indexOfId(int id) {
+        return store.indexOfId(id);
+    }
+
+    /**
+     * Returns the positions of the completed tasks that were done on or before the given date, reading only
+     * the completed tasks.
+     *
+     * @param doneOnOrBefore The latest completion date to include, or null to include every completed task.
+     * @return The positions, in increasing order.
+     */
+    public int[] completedPositions(LocalDate doneOnOrBefore) {
+        int[] positions = new int[16];
+        int count = 0;
+        for (int i = store.nextCompleted(0); i >= 0; i = store.nextCompleted(i + 1)) {
+            if (doneOnOrBefore != null && store.getCompletedDay(i) > doneOnOrBefore.toEpochDay()) {
+                continue;
+            }
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            positions[count++] = i;
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    /**
+     * Removes every task from the list, newest first.
+     */
+    public void clear() {
+        for (int i = store.size() - 1; i >= 0; i--) {
+            removeAt(i);
+        }
+    }
+
     /**
      * Checks if the task list is empty.
      *
      * @return true if the task list is empty, false otherwise.
      */
     public boolean isEmpty() {
-        return taskList.isEmpty();
+        return store.size() == 0;
+    }
+
+    /**
+     * Returns the modification version of the list, which changes whenever a task is added, removed, marked,
+     * unmarked, tagged, untagged or has an occurrence skipped. A result computed from the list is still valid
+     * as long as the version has not changed since.
+     *
+     * @return The modification version.
+     */
+    public long getVersion() {
+        return version;
     }
 
     /**
@@ -137,6 +839,138 @@ public class TaskList {
      * @return The number of tasks in the task list.
      */
     public int size() {
-        return taskList.size();
+        return store.size();
+    }
+
+    /**
+     * Receives the changes made to a TaskList, in the order they are made. Positions are the positions of the
+     * tasks at the time of the change, so applying the same changes in order to a copy of the list keeps it
+     * identical.
+     */
+    public interface ChangeListener {
+        /**
+         * Called after a task was added to the end of the list.
+         *
+         * @param task The task that was added.
+         */
+        void taskAdded(Task task);
+
+        /**
+         * Called after the task at the given position was removed.
+         *
+         * @param position The position the task had.
+         */
+        void taskRemoved(int position);
+
+        /**
+         * Called after the task at the given position was replaced by another task in the same place.
+         *
+         * @param position The position of the task.
+         * @param task     The task now at that position.
+         */
+        void taskReplaced(int position, Task task);
+
+        /**
+         * Called after the task at the given position was marked or unmarked.
+         *
+         * @param position  The position of the task.
+         * @param completed Whether the task is now completed.
+         */
+        void taskCompletionChanged(int position, boolean completed);
+
+        /**
+         * Called after an occurrence of the recurring task at the given position was skipped.
+         *
+         * @param position The position of the task.
+         * @param date     The date of the skipped occurrence.
+         */
+        void occurrenceSkipped(int position, LocalDate date);
+
+        /**
+         * Called after a tag was added to or removed from the task at the given position.
+         *
+         * @param position The position of the task.
+         * @param tag      The tag.
+         * @param tagged   Whether the tag was added, rather than removed.
+         */
+        void taskTagged(int position, String tag, boolean tagged);
+    }
+
+    /**
+     * Receives only where in a TaskList tasks were inserted, removed or changed, for views that show the list
+     * by position and render a task only when it is on screen.
+     */
+    public interface PositionListener {
+        /**
+         * Called after a task was inserted at the given position.
+         *
+         * @param position The position of the new task.
+         */
+        void taskInserted(int position);
+
+        /**
+         * Called after the task at the given position was removed.
+         *
+         * @param position The position the task had.
+         */
+        void taskRemoved(int position);
+
+        /**
+         * Called after the task at the given position changed in place.
+         *
+         * @param position The position of the task.
+         */
+        void taskUpdated(int position);
+    }
+
+    /**
+     * The orders in which tasks can be listed, besides the order they were added in.
+     */
+    public enum SortOrder {
+        /** By due date: deadlines by their due time, events by their start and recurring tasks by their first
+         * occurrence, followed by todos. */
+        DEADLINE,
+        /** By task type, in the order todo, deadline, event, recurring. */
+        TYPE,
+        /** Tasks that are not done first, followed by those that are. */
+        STATUS;
+
+        /**
+         * Returns the sort key of a stored task in this order. Tasks with equal keys keep the order they were
+         * added in.
+         *
+         * @param store    The store holding the task.
+         * @param position The position of the task in the store.
+         * @return The sort key of the task.
+         */
+        long keyOf(TaskStore store, int position) {
+            switch (this) {
+                case DEADLINE:
+                    return store.getType(position) == TaskStore.TODO ? Long.MAX_VALUE
+                            : store.getStartSeconds(position);
+                case TYPE:
+                    return store.getType(position);
+                default:
+                    return store.isCompleted(position) ? 1 : 0;
+            }
+        }
+    }
+
+    /**
+     * An entry in a sorted view, ordered by its key and then by task ID.
+     */
+    private static class ViewEntry implements Comparable<ViewEntry> {
+        private final long key;
+        private final int id;
+
+        private ViewEntry(long key, int id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(ViewEntry other) {
+            return key != other.key ? Long.compare(key, other.key) : Integer.compare(id, other.id);
+        }
     }
 }
@@ -0,0 +1,353 @@
+package barry;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * The TaskStore class keeps tasks in columns of primitives instead of one object per task: the type as a byte,
+ * completion as a bit, times as epoch seconds and descriptions as references into a StringPool.
+ * Task objects are only created when a task is retrieved. Recurring tasks are rare and carry a set of skipped
+ * dates, so they are kept whole in a side table keyed by task ID. Tags are kept in another side table, so that
+ * untagged tasks take no space for them.
+ */
+public class TaskStore {
+    static final byte TODO = 0;
+    static final byte DEADLINE = 1;
+    static final byte EVENT = 2;
+    static final byte RECURRING = 3;
+    private static final String[] NO_TAGS = new String[0];
+    /** The completion day of a task that is not done, or was done before completion dates were recorded. */
+    static final long NO_DAY = Long.MIN_VALUE;
+
+    private int size;
+    private int[] ids;
+    private byte[] types;
+    private BitSet completed;
+    private long[] startTimes;
+    private long[] endTimes;
+    private long[] completedDays;
+    private int[] descriptions;
+    private StringPool descriptionPool;
+    private HashMap<Integer, Task.RecurringTask> recurringTasks;
+    private HashMap<Integer, String[]> tags;
+
+    /**
+     * Constructs an empty TaskStore.
+     */
+    public TaskStore() {
+        this.ids = new int[16];
+        this.types = new byte[16];
+        this.completed = new BitSet();
+        this.startTimes = new long[16];
+        this.endTimes = new long[16];
+        this.completedDays = new long[16];
+        this.descriptions = new int[16];
+        this.descriptionPool = new StringPool();
+        this.recurringTasks = new HashMap<>();
+        this.tags = new HashMap<>();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends a task to the end of the store. Its ID must be greater than that of every task already stored.
+     *
+     * @param task The task to append.
+     */
+    public void add(Task task) {
+        assert size == 0 || ids[size - 1] < task.getId() : "Task IDs should be added in increasing order.";
+        if (size == ids.length) {
+            int capacity = size + (size >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            types = Arrays.copyOf(types, capacity);
+            startTimes = Arrays.copyOf(startTimes, capacity);
+            endTimes = Arrays.copyOf(endTimes, capacity);
+            completedDays = Arrays.copyOf(completedDays, capacity);
+            descriptions = Arrays.copyOf(descriptions, capacity);
+        }
+        write(size, task);
+        size++;
+    }
+
+    /**
+     * Replaces the task at the given position with another task that has the same ID.
+     *
+     * @param position The position of the task to replace.
+     * @param task     The task to store in its place.
+     */
+    public void set(int position, Task task) {
+        assert ids[position] == task.getId() : "A replacement task should keep the ID of the task it replaces.";
+        descriptionPool.release(descriptions[position]);
+        recurringTasks.remove(ids[position]);
+        tags.remove(ids[position]);
+        write(position, task);
+    }
+
+    /**
+     * Fills the columns at the given position from a task, which must not be referenced there yet.
+     */
+    private void write(int position, Task task) {
+        ids[position] = task.getId();
+        completed.set(position, task.isCompleted());
+        completedDays[position] = task.isCompleted() && task.getCompletedOn() != null
+                ? task.getCompletedOn().toEpochDay() : NO_DAY;
+        descriptions[position] = descriptionPool.acquire(task.getDescription());
+        startTimes[position] = 0;
+        endTimes[position] = 0;
+        types[position] = typeOf(task);
+        if (task instanceof Task.DeadlineTask) {
+            startTimes[position] = toSeconds(((Task.DeadlineTask) task).getBy());
+        } else if (task instanceof Task.EventTask) {
+            startTimes[position] = toSeconds(((Task.EventTask) task).getFrom());
+            endTimes[position] = toSeconds(((Task.EventTask) task).getTo());
+        } else if (task instanceof Task.RecurringTask) {
+            startTimes[position] = toSeconds(((Task.RecurringTask) task).getStart());
+            recurringTasks.put(task.getId(), ((Task.RecurringTask) task).copyRule());
+        }
+        if (!task.getTags().isEmpty()) {
+            tags.put(task.getId(), task.getTags().toArray(NO_TAGS));
+        }
+    }
+
+    /**
+     * Returns the type constant of a task.
+     *
+     * @param task The task.
+     * @return One of TODO, DEADLINE, EVENT and RECURRING.
+     */
+    public static byte typeOf(Task task) {
+        if (task instanceof Task.DeadlineTask) {
+            return DEADLINE;
+        } else if (task instanceof Task.EventTask) {
+            return EVENT;
+        } else if (task instanceof Task.RecurringTask) {
+            return RECURRING;
+        } else {
+            return TODO;
+        }
+    }
+
+    /**
+     * Removes the task at the given position, shifting later tasks down by one.
+     *
+     * @param position The position of the task to remove.
+     */
+    public void remove(int position) {
+        descriptionPool.release(descriptions[position]);
+        if (types[position] == RECURRING) {
+            recurringTasks.remove(ids[position]);
+        }
+        tags.remove(ids[position]);
+        int moved = size - position - 1;
+        System.arraycopy(ids, position + 1, ids, position, moved);
+        System.arraycopy(types, position + 1, types, position, moved);
+        System.arraycopy(startTimes, position + 1, startTimes, position, moved);
+        System.arraycopy(endTimes, position + 1, endTimes, position, moved);
+        System.arraycopy(completedDays, position + 1, completedDays, position, moved);
+        System.arraycopy(descriptions, position + 1, descriptions, position, moved);
+        // BitSet cannot shift, so clear the removed task's bit and move the bits after it down one at a time
+        completed.clear(position);
+        for (int i = completed.nextSetBit(position + 1); i >= 0; i = completed.nextSetBit(i + 1)) {
+            completed.set(i - 1);
+            completed.clear(i);
+        }
+        size--;
+    }
+
+    /**
+     * Removes the tasks at the given positions in one pass, moving every remaining task at most once.
+     *
+     * @param positions The positions of the tasks to remove, in increasing order.
+     */
+    public void removeAll(int[] positions) {
+        if (positions.length == 0) {
+            return;
+        }
+        int next = 0;
+        int kept = positions[0];
+        for (int i = positions[0]; i < size; i++) {
+            if (next < positions.length && positions[next] == i) {
+                descriptionPool.release(descriptions[i]);
+                if (types[i] == RECURRING) {
+                    recurringTasks.remove(ids[i]);
+                }
+                tags.remove(ids[i]);
+                next++;
+                continue;
+            }
+            ids[kept] = ids[i];
+            types[kept] = types[i];
+            startTimes[kept] = startTimes[i];
+            endTimes[kept] = endTimes[i];
+            completedDays[kept] = completedDays[i];
+            descriptions[kept] = descriptions[i];
+            completed.set(kept, completed.get(i));
+            kept++;
+        }
+        assert next == positions.length : "Positions to remove should be in increasing order and in range.";
+        completed.clear(kept, size);
+        size = kept;
+    }
+
+    /**
+     * Creates a Task object for the task at the given position. Changes to the returned object are not
+     * reflected in the store.
+     *
+     * @param position The position of the task.
+     * @return A task with the stored type, description, times and completion.
+     */
+    public Task get(int position) {
+        String description = getDescription(position);
+        Task task;
+        switch (types[position]) {
+            case DEADLINE:
+                task = new Task.DeadlineTask(description, toTime(startTimes[position]));
+                break;
+            case EVENT:
+                task = new Task.EventTask(description, toTime(startTimes[position]), toTime(endTimes[position]));
+                break;
+            case RECURRING:
+                task = recurringTasks.get(ids[position]).copyRule();
+                break;
+            default:
+                task = new Task.TodoTask(description);
+        }
+        task.setId(ids[position]);
+        if (completed.get(position)) {
+            task.mark();
+        } else {
+            task.unmark();
+        }
+        task.setCompletedOn(completedDays[position] == NO_DAY ? null
+                : LocalDate.ofEpochDay(completedDays[position]));
+        task.getTags().clear();
+        Collections.addAll(task.getTags(), getTags(position));
+        return task;
+    }
+
+    /**
+     * Skips the occurrence of the recurring task at the given position that falls on the given date.
+     *
+     * @param position The position of a recurring task.
+     * @param date     The date of the occurrence to skip.
+     * @throws BarryException If no occurrence of the task falls on the given date.
+     */
+    public void skip(int position, LocalDate date) throws BarryException {
+        assert types[position] == RECURRING : "Only recurring tasks have occurrences to skip.";
+        recurringTasks.get(ids[position]).skip(date);
+    }
+
+    /**
+     * Returns the tags of the task at the given position, in alphabetical order.
+     *
+     * @param position The position of the task.
+     * @return The tags, which must not be modified.
+     */
+    public String[] getTags(int position) {
+        return tags.getOrDefault(ids[position], NO_TAGS);
+    }
+
+    /**
+     * Replaces the tags of the task at the given position.
+     *
+     * @param position The position of the task.
+     * @param newTags  The new tags, in alphabetical order.
+     */
+    public void setTags(int position, String[] newTags) {
+        if (newTags.length == 0) {
+            tags.remove(ids[position]);
+        } else {
+            tags.put(ids[position], newTags);
+        }
+    }
+
+    public int getId(int position) {
+        return ids[position];
+    }
+
+    public byte getType(int position) {
+        return types[position];
+    }
+
+    public boolean isCompleted(int position) {
+        return completed.get(position);
+    }
+
+    public void setCompleted(int position, boolean isCompleted) {
+        completed.set(position, isCompleted);
+    }
+
+    /**
+     * Returns the day the task at the given position was marked as done.
+     *
+     * @param position The position of the task.
+     * @return The epoch day, or NO_DAY if the task is not done or the day is not known.
+     */
+    public long getCompletedDay(int position) {
+        return completedDays[position];
+    }
+
+    public void setCompletedDay(int position, long epochDay) {
+        completedDays[position] = epochDay;
+    }
+
+    /**
+     * Returns the position of the first completed task at or after the given position.
+     *
+     * @param from The position to start looking from.
+     * @return The position, or -1 if no task from there on is completed.
+     */
+    public int nextCompleted(int from) {
+        int position = completed.nextSetBit(from);
+        return position < size ? position : -1;
+    }
+
+    public String getDescription(int position) {
+        return descriptionPool.get(descriptions[position]);
+    }
+
+    /**
+     * Returns the due time of a deadline, or the start time of an event or recurring task, in epoch seconds.
+     *
+     * @param position The position of the task.
+     * @return The start time in epoch seconds, or 0 for a todo.
+     */
+    public long getStartSeconds(int position) {
+        return startTimes[position];
+    }
+
+    /**
+     * Returns the end time of an event in epoch seconds.
+     *
+     * @param position The position of the task.
+     * @return The end time in epoch seconds, or 0 if the task is not an event.
+     */
+    public long getEndSeconds(int position) {
+        return endTimes[position];
+    }
+
+    /**
+     * Returns the position of the task with the given ID by binary search, since IDs are stored in order.
+     *
+     * @param id The ID of the task.
+     * @return The position of the task, or a negative number if no task has this ID.
+     */
+    public int indexOfId(int id) {
+        return Arrays.binarySearch(ids, 0, size, id);
+    }
+
+    static long toSeconds(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    static LocalDateTime toTime(long seconds) {
+        return LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,477 @@
+package barry;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+
+/**
+ * The TaskTransfer class converts tasks to and from CSV and JSON so they can be moved between Barry and other
+ * systems. Records are written and read one at a time, so memory use does not grow with the number of tasks.
+ */
+public class TaskTransfer {
+    /** The fields of an exported task, in CSV column order. Fields that do not apply to a task are left empty. */
+    public static final String[] COLUMNS = { "type", "done", "description", "by", "from", "to", "every", "until",
+            "skipped", "tags", "done_on" };
+
+    /**
+     * The file formats tasks can be exported to and imported from.
+     */
+    public enum Format {
+        CSV, JSON;
+
+        /**
+         * Guesses the format of a file from its name, defaulting to CSV.
+         *
+         * @param fileName The name of the file.
+         * @return The format implied by the file extension.
+         */
+        public static Format fromFileName(String fileName) {
+            return fileName.toLowerCase().endsWith(".json") ? JSON : CSV;
+        }
+    }
+
+    /**
+     * Converts a task into its exported fields, in the order of COLUMNS.
+     *
+     * @param task The task to convert.
+     * @return The fields of the task, with null for fields that do not apply.
+     */
+    public static String[] toFields(Task task) {
+        String[] fields = new String[COLUMNS.length];
+        fields[1] = String.valueOf(task.isCompleted());
+        fields[2] = task.getDescription();
+        if (task instanceof Task.TodoTask) {
+            fields[0] = "T";
+        } else if (task instanceof Task.DeadlineTask) {
+            fields[0] = "D";
+            fields[3] = ((Task.DeadlineTask) task).getBy().toString();
+        } else if (task instanceof Task.EventTask) {
+            fields[0] = "E";
+            fields[4] = ((Task.EventTask) task).getFrom().toString();
+            fields[5] = ((Task.EventTask) task).getTo().toString();
+        } else if (task instanceof Task.RecurringTask) {
+            Task.RecurringTask recurringTask = (Task.RecurringTask) task;
+            fields[0] = "R";
+            fields[4] = recurringTask.getStart().toString();
+            fields[6] = String.valueOf(recurringTask.getIntervalDays());
+            fields[7] = recurringTask.getUntil() == null ? null : recurringTask.getUntil().toString();
+            fields[8] = recurringTask.getExceptions().isEmpty() ? null
+                    : String.join(";", recurringTask.getExceptions().stream().map(LocalDate::toString)
+                            .toArray(String[]::new));
+        }
+        fields[9] = task.getTags().isEmpty() ? null : String.join(" ", task.getTags());
+        fields[10] = task.getCompletedOn() == null ? null : task.getCompletedOn().toString();
+        return fields;
+    }
+
+    /**
+     * Converts exported fields, in the order of COLUMNS, back into a task.
+     *
+     * @param fields The fields of the task.
+     * @return The task described by the fields.
+     * @throws BarryException If the fields do not describe a valid task.
+     */
+    public static Task fromFields(String[] fields) throws BarryException {
+        if (isBlank(fields[0]) || isBlank(fields[2])) {
+            throw new BarryException("Every task needs a type and a description.");
+        }
+        if (!Task.isValidDescription(fields[2])) {
+            // Quoted CSV fields and JSON escapes can carry line breaks, but the task file keeps one task per line
+            throw new BarryException(Task.INVALID_DESCRIPTION_MESSAGE);
+        }
+        try {
+            Task task;
+            switch (fields[0]) {
+                case "T":
+                    task = new Task.TodoTask(fields[2]);
+                    break;
+                case "D":
+                    requireFields(fields, 3);
+                    task = new Task.DeadlineTask(fields[2], LocalDateTime.parse(fields[3]));
+                    break;
+                case "E":
+                    requireFields(fields, 4, 5);
+                    task = new Task.EventTask(fields[2], LocalDateTime.parse(fields[4]), LocalDateTime.parse(fields[5]));
+                    break;
+                case "R":
+                    requireFields(fields, 4, 6);
+                    int intervalDays = Integer.parseInt(fields[6]);
+                    if (intervalDays <= 0) {
+                        throw new BarryException("Recurring tasks need a positive interval.");
+                    }
+                    LocalDate until = isBlank(fields[7]) ? null : LocalDate.parse(fields[7]);
+                    Task.RecurringTask recurringTask = new Task.RecurringTask(fields[2],
+                            LocalDateTime.parse(fields[4]), intervalDays, until);
+                    if (!isBlank(fields[8])) {
+                        for (String skipped : fields[8].split(";")) {
+                            recurringTask.getExceptions().add(LocalDate.parse(skipped));
+                        }
+                    }
+                    task = recurringTask;
+                    break;
+                default:
+                    throw new BarryException("Unknown task type: " + fields[0]);
+            }
+            if (!isBlank(fields[9])) {
+                for (String tag : fields[9].trim().split("\\s+")) {
+                    task.getTags().add(Task.normalizeTag(tag));
+                }
+            }
+            if ("true".equals(fields[1]) || "1".equals(fields[1])) {
+                task.mark();
+                task.setCompletedOn(isBlank(fields[10]) ? null : LocalDate.parse(fields[10]));
+            }
+            return task;
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new BarryException("A task of type " + fields[0] + " has an invalid date or number.");
+        }
+    }
+
+    private static boolean isBlank(String field) {
+        return field == null || field.isEmpty();
+    }
+
+    /**
+     * Checks that the columns a task type cannot do without are present.
+     *
+     * @throws BarryException If one of the columns is missing or empty.
+     */
+    private static void requireFields(String[] fields, int... columns) throws BarryException {
+        for (int column : columns) {
+            if (isBlank(fields[column])) {
+                throw new BarryException("A task of type " + fields[0] + " needs a " + COLUMNS[column] + " field.");
+            }
+        }
+    }
+
+    /**
+     * Writes tasks to a file in the given format, one record at a time.
+     *
+     * @param tasks  The tasks to write.
+     * @param writer The writer to write to.
+     * @param format The format to write in.
+     * @return The number of tasks written.
+     * @throws IOException If an I/O error occurs during writing.
+     */
+    public static int write(Iterable<Task> tasks, Writer writer, Format format) throws IOException {
+        int count = 0;
+        if (format == Format.CSV) {
+            writer.write(String.join(",", COLUMNS));
+            writer.write("\n");
+        } else {
+            writer.write("[");
+        }
+        for (Task task : tasks) {
+            String[] fields = toFields(task);
+            if (format == Format.CSV) {
+                writeCsvRecord(fields, writer);
+            } else {
+                writer.write(count == 0 ? "\n" : ",\n");
+                writeJsonRecord(fields, writer);
+            }
+            count++;
+        }
+        if (format == Format.JSON) {
+            writer.write("\n]\n");
+        }
+        return count;
+    }
+
+    private static void writeCsvRecord(String[] fields, Writer writer) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String field = fields[i];
+            if (field == null) {
+                continue;
+            }
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0
+                    || field.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(field.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(field);
+            }
+        }
+        writer.write('\n');
+    }
+
+    private static void writeJsonRecord(String[] fields, Writer writer) throws IOException {
+        writer.write('{');
+        boolean first = true;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] == null) {
+                continue;
+            }
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            writer.write('"');
+            writer.write(COLUMNS[i]);
+            writer.write("\":");
+            if (i == 1 || i == 6) {
+                writer.write(fields[i]); // done is a boolean and every is a number
+            } else {
+                writeJsonString(fields[i], writer);
+            }
+        }
+        writer.write('}');
+    }
+
+    private static void writeJsonString(String value, Writer writer) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Reads exported records one at a time from a CSV or JSON file.
+     */
+    public static class RecordReader implements AutoCloseable {
+        private Reader reader;
+        private Format format;
+        private int[] columnOrder;
+        private int peeked = -2;
+
+        /**
+         * Constructs a RecordReader over the given reader. The reader should be buffered.
+         *
+         * @param reader The reader to read records from.
+         * @param format The format of the records.
+         * @throws IOException    If an I/O error occurs during reading.
+         * @throws BarryException If the file does not start the way the format requires.
+         */
+        public RecordReader(Reader reader, Format format) throws IOException, BarryException {
+            this.reader = reader;
+            this.format = format;
+            if (format == Format.CSV) {
+                String[] header = readCsvRecord();
+                if (header == null) {
+                    header = COLUMNS;
+                }
+                columnOrder = new int[header.length];
+                for (int i = 0; i < header.length; i++) {
+                    columnOrder[i] = columnIndex(header[i].trim());
+                }
+            } else if (nextNonSpace() != '[') {
+                throw new BarryException("A JSON task file should contain an array of tasks.");
+            }
+        }
+
+        /**
+         * Reads the next record.
+         *
+         * @return The fields of the next record in the order of COLUMNS, or null at the end of the file.
+         * @throws IOException    If an I/O error occurs during reading.
+         * @throws BarryException If the JSON is malformed; CSV records are always readable.
+         */
+        public String[] next() throws IOException, BarryException {
+            return format == Format.CSV ? nextCsv() : nextJson();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        private String[] nextCsv() throws IOException {
+            String[] record;
+            do {
+                record = readCsvRecord();
+                if (record == null) {
+                    return null;
+                }
+            } while (record.length == 1 && record[0].isEmpty());
+            String[] fields = new String[COLUMNS.length];
+            for (int i = 0; i < record.length && i < columnOrder.length; i++) {
+                if (columnOrder[i] >= 0 && !record[i].isEmpty()) {
+                    fields[columnOrder[i]] = record[i];
+                }
+            }
+            return fields;
+        }
+
+        private String[] readCsvRecord() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            ArrayList<String> record = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        break;
+                    } else if (c == '"') {
+                        if (peek() == '"') {
+                            read();
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == -1 || c == '\n') {
+                    break;
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    record.add(field.toString());
+                    field.setLength(0);
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+            record.add(field.toString());
+            return record.toArray(new String[0]);
+        }
+
+        private String[] nextJson() throws IOException, BarryException {
+            int c = nextNonSpace();
+            if (c == ',') {
+                c = nextNonSpace();
+            }
+            if (c == ']' || c == -1) {
+                return null;
+            }
+            if (c != '{') {
+                throw new BarryException("Expected a task object in the JSON file.");
+            }
+            String[] fields = new String[COLUMNS.length];
+            c = nextNonSpace();
+            while (c != '}') {
+                if (c == ',') {
+                    c = nextNonSpace();
+                }
+                if (c != '"') {
+                    throw new BarryException("Expected a field name in the JSON file.");
+                }
+                int column = columnIndex(readJsonString());
+                if (nextNonSpace() != ':') {
+                    throw new BarryException("Expected ':' after a field name in the JSON file.");
+                }
+                String value = readJsonValue();
+                if (column >= 0) {
+                    fields[column] = value;
+                }
+                c = nextNonSpace();
+                if (c == -1) {
+                    throw new BarryException("The JSON file ended in the middle of a task.");
+                }
+            }
+            return fields;
+        }
+
+        private String readJsonValue() throws IOException, BarryException {
+            int c = nextNonSpace();
+            if (c == '"') {
+                return readJsonString();
+            }
+            StringBuilder literal = new StringBuilder().append((char) c);
+            while (peek() != -1 && ",}] \t\r\n".indexOf(peek()) < 0) {
+                literal.append((char) read());
+            }
+            String value = literal.toString();
+            return value.equals("null") ? null : value;
+        }
+
+        private String readJsonString() throws IOException, BarryException {
+            StringBuilder value = new StringBuilder();
+            int c;
+            while ((c = read()) != '"') {
+                if (c == -1) {
+                    throw new BarryException("The JSON file ended in the middle of a string.");
+                }
+                if (c == '\\') {
+                    c = read();
+                    switch (c) {
+                        case 'n':
+                            value.append('\n');
+                            break;
+                        case 't':
+                            value.append('\t');
+                            break;
+                        case 'r':
+                            value.append('\r');
+                            break;
+                        case 'b':
+                            value.append('\b');
+                            break;
+                        case 'f':
+                            value.append('\f');
+                            break;
+                        case 'u':
+                            char[] hex = new char[4];
+                            for (int i = 0; i < 4; i++) {
+                                hex[i] = (char) read();
+                            }
+                            try {
+                                value.append((char) Integer.parseInt(new String(hex), 16));
+                            } catch (NumberFormatException e) {
+                                throw new BarryException("Invalid escape sequence in the JSON file.");
+                            }
+                            break;
+                        default:
+                            value.append((char) c);
+                    }
+                } else {
+                    value.append((char) c);
+                }
+            }
+            return value.toString();
+        }
+
+        private int nextNonSpace() throws IOException {
+            int c = read();
+            while (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                c = read();
+            }
+            return c;
+        }
+
+        private int read() throws IOException {
+            if (peeked != -2) {
+                int c = peeked;
+                peeked = -2;
+                return c;
+            }
+            return reader.read();
+        }
+
+        private int peek() throws IOException {
+            if (peeked == -2) {
+                peeked = reader.read();
+            }
+            return peeked;
+        }
+
+        private static int columnIndex(String name) {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (COLUMNS[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package barry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.function.IntFunction;
+
+/**
+ * The TrigramIndex class maps every three-character sequence of a task description to the IDs of the tasks
+ * containing it. It is used to find tasks whose descriptions are close to a search term, even when the term
+ * contains typos, without computing an edit distance against every task in the list.
+ */
+public class TrigramIndex {
+    private HashMap<String, IdList> postings;
+    private int[] sharedCounts;
+
+    /**
+     * Constructs an empty TrigramIndex.
+     */
+    public TrigramIndex() {
+        this.postings = new HashMap<>();
+        this.sharedCounts = new int[16];
+    }
+
+    /**
+     * Adds a task description to the index. Task IDs must be added in increasing order.
+     *
+     * @param id          The ID of the task.
+     * @param description The description of the task.
+     */
+    public void add(int id, String description) {
+        for (String trigram : trigrams(description)) {
+            postings.computeIfAbsent(trigram, k -> new IdList()).append(id);
+        }
+    }
+
+    /**
+     * Removes a task description from the index.
+     *
+     * @param id          The ID of the task.
+     * @param description The description the task was added with.
+     */
+    public void remove(int id, String description) {
+        for (String trigram : trigrams(description)) {
+            IdList ids = postings.get(trigram);
+            if (ids != null && ids.remove(id) && ids.size == 0) {
+                postings.remove(trigram);
+            }
+        }
+    }
+
+    /**
+     * Finds the tasks whose descriptions contain a word within a small edit distance of the search term.
+     * Shared trigram counts are accumulated in an array reused across searches, so searches must not run
+     * concurrently.
+     * Candidates are first gathered by counting shared trigrams, then verified and ranked by edit distance.
+     * If the time budget runs out, unverified candidates with the most shared trigrams fill the remaining slots.
+     *
+     * @param term         The search term, which may contain typos.
+     * @param limit        The maximum number of task IDs to return.
+     * @param budgetNanos  The time budget for the search in nanoseconds.
+     * @param descriptions Looks up the description of a candidate task by its ID.
+     * @return The IDs of the best matching tasks, best match first.
+     */
+    public int[] search(String term, int limit, long budgetNanos, IntFunction<String> descriptions) {
+        long deadline = System.nanoTime() + budgetNanos;
+        String query = term.toLowerCase();
+        HashSet<String> queryTrigrams = trigrams(query);
+        int maxEdits = maxEdits(query);
+        int minShared = Math.max(1, queryTrigrams.size() - 3 * maxEdits);
+
+        ArrayList<IdList> lists = new ArrayList<>();
+        for (String trigram : queryTrigrams) {
+            IdList ids = postings.get(trigram);
+            if (ids != null) {
+                lists.add(ids);
+            }
+        }
+        // A task sharing at least minShared trigrams must appear in one of the shortest
+        // (lists - minShared + 1) posting lists, so only those are scanned for candidates and the
+        // long, common lists are only probed for the candidates already found.
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        int scanned = Math.max(0, lists.size() - minShared + 1);
+        IdList touched = new IdList();
+        for (int l = 0; l < scanned && System.nanoTime() <= deadline; l++) {
+            IdList ids = lists.get(l);
+            for (int i = 0; i < ids.size; i++) {
+                int id = ids.ids[i];
+                if (id >= sharedCounts.length) {
+                    sharedCounts = Arrays.copyOf(sharedCounts, Math.max(id + 1, sharedCounts.length * 2));
+                }
+                if (sharedCounts[id]++ == 0) {
+                    touched.append(id);
+                }
+            }
+        }
+        for (int l = scanned; l < lists.size() && System.nanoTime() <= deadline; l++) {
+            IdList ids = lists.get(l);
+            for (int i = 0; i < touched.size; i++) {
+                if (Arrays.binarySearch(ids.ids, 0, ids.size, touched.ids[i]) >= 0) {
+                    sharedCounts[touched.ids[i]]++;
+                }
+            }
+        }
+
+        ArrayList<int[]> candidates = new ArrayList<>(); // {id, shared trigrams, edit distance}
+        for (int i = 0; i < touched.size; i++) {
+            int id = touched.ids[i];
+            if (sharedCounts[id] >= minShared) {
+                candidates.add(new int[] { id, sharedCounts[id], Integer.MAX_VALUE });
+            }
+            sharedCounts[id] = 0;
+        }
+        // Verify the most promising candidates first so that running out of time loses the least
+        candidates.sort((a, b) -> a[1] != b[1] ? Integer.compare(b[1], a[1]) : Integer.compare(a[0], b[0]));
+
+        ArrayList<int[]> matches = new ArrayList<>();
+        for (int c = 0; c < candidates.size(); c++) {
+            if (System.nanoTime() > deadline) {
+                // Out of time: fill up with the best unverified candidates rather than verifying them all
+                for (int i = c; i < candidates.size() && matches.size() < limit; i++) {
+                    matches.add(candidates.get(i));
+                }
+                break;
+            }
+            int[] candidate = candidates.get(c);
+            int distance = closestWordDistance(query, descriptions.apply(candidate[0]).toLowerCase());
+            if (distance <= maxEdits) {
+                candidate[2] = distance;
+                matches.add(candidate);
+            }
+        }
+        matches.sort((a, b) -> a[2] != b[2] ? Integer.compare(a[2], b[2])
+                : a[1] != b[1] ? Integer.compare(b[1], a[1]) : Integer.compare(a[0], b[0]));
+
+        int[] result = new int[Math.min(limit, matches.size())];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = matches.get(i)[0];
+        }
+        return result;
+    }
+
+    /**
+     * Returns how many edits away from a search term the closest word of a text is, if search would accept it.
+     * This checks texts that are not in the index, such as those of tasks that are not loaded.
+     *
+     * @param term The search term, which may contain typos.
+     * @param text The text to compare with the term.
+     * @return The number of edits, or -1 if the text is not close enough to match.
+     */
+    public static int distance(String term, String text) {
+        String query = term.toLowerCase();
+        int distance = closestWordDistance(query, text.toLowerCase());
+        return distance <= maxEdits(query) ? distance : -1;
+    }
+
+    /**
+     * Returns the most edits a word may be away from a query and still match it.
+     */
+    private static int maxEdits(String query) {
+        return query.length() <= 4 ? 1 : 2;
+    }
+
+    /**
+     * Estimates how many tasks contain the term, ignoring case, from the shortest posting list among its
+     * trigrams. Terms shorter than three characters have no trigrams and cannot be looked up.
+     *
+     * @param term A single word to look for.
+     * @return An upper bound on the number of tasks containing the term, or -1 if the term is too short.
+     */
+    public int estimateContaining(String term) {
+        int best = -1;
+        for (String trigram : innerTrigrams(term)) {
+            IdList ids = postings.get(trigram);
+            int size = ids == null ? 0 : ids.size;
+            if (best < 0 || size < best) {
+                best = size;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the IDs of the tasks whose descriptions have every trigram of the term, in increasing order.
+     * Every task containing the term is included, but a few that do not may be as well, so callers must
+     * check each one.
+     *
+     * @param term A single word of at least three characters.
+     * @return The IDs of the candidate tasks.
+     */
+    public int[] idsContaining(String term) {
+        ArrayList<String> trigrams = innerTrigrams(term);
+        assert !trigrams.isEmpty() : "Terms shorter than three characters cannot be looked up.";
+        IdList smallest = null;
+        for (String trigram : trigrams) {
+            IdList ids = postings.get(trigram);
+            if (ids == null) {
+                return new int[0];
+            }
+            if (smallest == null || ids.size < smallest.size) {
+                smallest = ids;
+            }
+        }
+        int[] result = new int[smallest.size];
+        int count = 0;
+        for (int i = 0; i < smallest.size; i++) {
+            int id = smallest.ids[i];
+            boolean inAll = true;
+            for (String trigram : trigrams) {
+                IdList ids = postings.get(trigram);
+                if (ids != smallest && Arrays.binarySearch(ids.ids, 0, ids.size, id) < 0) {
+                    inAll = false;
+                    break;
+                }
+            }
+            if (inAll) {
+                result[count++] = id;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Returns the trigrams inside a term, without padding, as a term can also match the middle of a word.
+     */
+    private static ArrayList<String> innerTrigrams(String term) {
+        ArrayList<String> trigrams = new ArrayList<>();
+        String lower = term.toLowerCase();
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            String trigram = lower.substring(i, i + 3);
+            if (!trigrams.contains(trigram)) {
+                trigrams.add(trigram);
+            }
+        }
+        return trigrams;
+    }
+
+    /**
+     * Returns the padded trigrams of each word in the text, so that word boundaries also count as matches.
+     */
+    private static HashSet<String> trigrams(String text) {
+        HashSet<String> trigrams = new HashSet<>();
+        for (String word : text.toLowerCase().split("\\s+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                trigrams.add(padded.substring(i, i + 3));
+            }
+        }
+        return trigrams;
+    }
+
+    /**
+     * Returns the smallest edit distance between the query and any word (or run of words) in the text.
+     */
+    private static int closestWordDistance(String query, String text) {
+        if (text.contains(query)) {
+            return 0;
+        }
+        int best = Integer.MAX_VALUE;
+        for (String word : text.split("\\s+")) {
+            best = Math.min(best, editDistance(query, word));
+        }
+        return best;
+    }
+
+    /**
+     * Computes the Levenshtein distance between two strings using two rolling rows.
+     */
+    private static int editDistance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    /**
+     * A growable, sorted array of task IDs. IDs are appended in increasing order, so it stays sorted.
+     */
+    private static class IdList {
+        private int[] ids = new int[4];
+        private int size;
+
+        private void append(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        private boolean remove(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+            return true;
+        }
+    }
+}
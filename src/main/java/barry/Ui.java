@@ -1,5 +1,6 @@
 package barry;
 
+import java.io.IOException;
 import java.util.Scanner;
 
 /**
@@ -19,6 +20,15 @@ public class Ui {
         this.scanner = new Scanner(System.in);
     }
 
+    /**
+     * Checks whether the user can enter another command, which is false once the input is closed.
+     * 
+     * @return true if there is another command to read, false otherwise.
+     */
+    public boolean hasCommand() {
+        return scanner.hasNextLine();
+    }
+
     /**
      * Reads the next command entered by the user via the command-line.
      * 
@@ -56,6 +66,16 @@ public class Ui {
         return (message + "\n");
     }
 
+    /**
+     * Ends a message that was written to a sink piece by piece, in the same way showMessage ends a message.
+     * 
+     * @param out The sink the message was written to.
+     * @throws IOException If the sink cannot be written to.
+     */
+    public void endMessage(Appendable out) throws IOException {
+        out.append('\n');
+    }
+
     /**
      * Displays an error message if tasks cannot be loaded from the storage file.
      * 
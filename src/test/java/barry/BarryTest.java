@@ -6,8 +6,11 @@ import org.junit.jupiter.api.Test;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.io.IOException;
+import java.nio.file.Files;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class BarryTest {
 
@@ -55,4 +58,57 @@ public class BarryTest {
         String expectedOutput = "Got it. I've added this task:\n[T][ ] apple\n\n";
         assertEquals(expectedOutput, outputStream.toString());
     }
+
+    @Test
+    public void testMalformedInputIsReportedWithoutThrowing() {
+        // Each of these used to throw past getResponse or only be caught by an assert
+        String[] inputs = {"mark abc", "delete", "deadline apple 2/2/2222 1900", "event talk /from 1/1/2025 0900",
+            "deadline apple /by 30/2/2222 2460", "todo", "query type:X", "unmark 99999999999",
+            "todo buy milk | eggs", "replicate /serve 70000", "replicate /serve -5", "replicate /follow 0",
+            "agenda -5", "agenda 0", "agenda 2000000000"};
+        for (String input : inputs) {
+            ParseResult<Command> result = Parser.tryParse(input);
+            assertFalse(result.isValid(), input);
+            assertFalse(result.getError().isEmpty(), input);
+        }
+
+        // A day past the end of the month is moved back, as the date formatter has always done
+        ParseResult<Command> result = Parser.tryParse("deadline apple /by 30/2/2024 2400");
+        assertTrue(result.isValid());
+    }
+
+    @Test
+    public void testStreamedResponseMatchesTheReturnedOne() throws Exception {
+        Barry barry = new Barry(Files.createTempDirectory("barry").resolve("tasks.txt").toString());
+        barry.getResponse("todo write report");
+        barry.getResponse("deadline submit report /by 2/2/2222 1900");
+        barry.getResponse("todo buy milk");
+        for (String input : new String[] {"list", "find report", "list /sort deadline", "mark abc", "delete 99"}) {
+            // Streaming first fills the result cache, so the returned response is checked against a cached one too
+            StringBuilder streamed = new StringBuilder();
+            barry.getResponse(input, streamed);
+            assertEquals(streamed.toString(), barry.getResponse(input), input);
+            assertFalse(streamed.toString().isEmpty(), input);
+        }
+    }
+
+    @Test
+    public void testFindWithRegexOrIgnoringCase() throws Exception {
+        ParseResult<Command> invalid = Parser.tryParse("find /re ^(buy|sell");
+        assertFalse(invalid.isValid());
+        assertTrue(invalid.getError().startsWith("The search pattern is not a valid regular expression"),
+                invalid.getError());
+
+        Storage scratch = new Storage(Files.createTempDirectory("barry").resolve("tasks.txt").toString());
+        taskList.addTask(new Task.TodoTask("Buy milk"));
+        taskList.addTask(new Task.TodoTask("sell car"));
+        taskList.addTask(new Task.TodoTask("rebuy (1+1)"));
+        String found = Parser.parse("find /re ^(buy|sell) ").execute(taskList, ui, scratch);
+        assertTrue(found.contains("sell car") && !found.contains("Buy milk") && !found.contains("rebuy"), found);
+        // /i searches for the term as typed, so characters that regular expressions treat specially are literal
+        found = Parser.parse("find /i BUY").execute(taskList, ui, scratch);
+        assertTrue(found.contains("Buy milk") && found.contains("rebuy") && !found.contains("sell"), found);
+        found = Parser.parse("find /i (1+1)").execute(taskList, ui, scratch);
+        assertTrue(found.contains("rebuy (1+1)") && !found.contains("Buy milk"), found);
+    }
 }
@@ -0,0 +1,120 @@
+package barry;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReplicationTest {
+
+    @Test
+    public void testFollowerCatchesUpFromSnapshotAndStream() throws Exception {
+        TaskList leaderTasks = new TaskList();
+        leaderTasks.addTask(new Task.TodoTask("before the follower connected"));
+        Replication.Leader leader = new Replication.Leader(leaderTasks, 0);
+
+        File followerFile = File.createTempFile("follower", ".txt");
+        followerFile.deleteOnExit();
+        TaskList followerTasks = new TaskList();
+        followerTasks.addTask(new Task.TodoTask("replaced by the snapshot"));
+        Replication.Follower follower = new Replication.Follower(followerTasks,
+                new Storage(followerFile.getPath()), leader.getPort());
+        try {
+            synchronized (leaderTasks) {
+                leaderTasks.addTask(new Task.TodoTask("first"));
+                leaderTasks.addTask(new Task.RecurringTask("gym", LocalDateTime.of(2025, 1, 1, 18, 0), 7, null));
+                leaderTasks.markTask(1);
+                leaderTasks.removeTask(0);
+                leaderTasks.skipOccurrence(1, LocalDate.of(2025, 1, 8));
+                leaderTasks.replaceTask(0, new Task.TodoTask("edited"));
+            }
+            awaitApplied(follower, 6);
+
+            synchronized (followerTasks) {
+                assertEquals(leaderTasks.size(), followerTasks.size());
+                for (int i = 0; i < leaderTasks.size(); i++) {
+                    assertEquals(leaderTasks.getTask(i).toString(), followerTasks.getTask(i).toString());
+                }
+            }
+
+            // Heartbeats from an idle leader change nothing, so the follower's task file is left alone
+            followerFile.setLastModified(1_000_000_000_000L);
+            Thread.sleep(1500);
+            assertEquals(1_000_000_000_000L, followerFile.lastModified());
+        } finally {
+            follower.close();
+            leader.close();
+        }
+    }
+
+    @Test
+    public void testFollowerRefusesLocalChanges() throws Exception {
+        Replication.Leader leader = new Replication.Leader(new TaskList(), 0);
+        File followerFile = File.createTempFile("follower", ".txt");
+        followerFile.deleteOnExit();
+        Barry barry = new Barry(followerFile.getPath());
+        try {
+            barry.getResponse("replicate /follow " + leader.getPort());
+            String refused = barry.getResponse("todo local");
+            assertTrue(refused.contains("replicate /stop"), refused);
+            assertEquals(0, barry.getTaskList().size());
+            assertFalse(barry.getResponse("list").contains("replicate /stop"));
+
+            barry.getResponse("replicate /stop");
+            barry.getResponse("todo local");
+            assertEquals(1, barry.getTaskList().size());
+        } finally {
+            barry.getResponse("replicate /stop");
+            leader.close();
+        }
+    }
+
+    @Test
+    public void testFollowerStopsOnATaskItCannotRead() throws Exception {
+        File followerFile = File.createTempFile("follower", ".txt");
+        followerFile.deleteOnExit();
+        TaskList followerTasks = new TaskList();
+        followerTasks.addTask(new Task.TodoTask("kept"));
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Replication.Follower follower = new Replication.Follower(followerTasks,
+                    new Storage(followerFile.getPath()), server.getLocalPort());
+            try (Socket socket = server.accept();
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                            StandardCharsets.UTF_8));
+                    Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+                out.write("LEADER\t1\n");
+                out.flush();
+                in.readLine();
+                out.write("SNAPSHOT\t1\t2\nT | 0 | fine\nX | 0 | from a newer version\n");
+                out.flush();
+                // The follower stops instead of reconnecting for another copy of the same snapshot
+                assertEquals(null, in.readLine());
+            }
+            assertTrue(follower.describeStatus().contains("X | 0 | from a newer version"),
+                    follower.describeStatus());
+            assertEquals(-1, follower.getApplied());
+            assertEquals("kept", followerTasks.getTask(0).getDescription());
+            follower.close();
+        }
+    }
+
+    private static void awaitApplied(Replication.Follower follower, long seq) throws InterruptedException {
+        for (int i = 0; i < 500 && follower.getApplied() < seq; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(seq, follower.getApplied());
+    }
+}
@@ -0,0 +1,225 @@
+package barry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Drives Barry through the same path as the GUI with a synthetic mix of commands at a target rate, and reports
+ * throughput, latency percentiles, heap use and task file size over time. Run it with
+ * {@code ./gradlew soak -PsoakArgs="duration=3600 rate=200"}.
+ *
+ * Commands are scheduled at fixed times and latency is measured from when a command was due, not from when it
+ * started, so a slow command also counts against the commands that queued up behind it. The command mix comes
+ * from a seeded random generator, so two builds given the same arguments receive the same sequence of commands.
+ *
+ * Arguments are key=value pairs:
+ * duration (seconds, default 60), rate (commands per second, default 200), interval (seconds between report
+ * rows, default 10), seed (default 42), dir (working directory, default build/soak).
+ * The time series is written to soak.csv and the totals to soak-summary.properties in the working directory.
+ */
+public class SoakHarness {
+    private static final String[] WORDS = {"report", "groceries", "meeting", "email", "invoice", "gym", "review",
+        "dentist", "laundry", "tutorial", "project", "budget", "call", "lecture", "assignment", "slides", "rent",
+        "birthday", "flight", "taxes"};
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("d/M/yyyy HHmm");
+
+    private final Random random;
+    private int taskCount;
+
+    private SoakHarness(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Runs the harness.
+     *
+     * @param args key=value arguments, described in the class comment.
+     * @throws IOException If the working directory or reports cannot be written.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        HashMap<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            options.put(parts[0], parts.length > 1 ? parts[1] : "");
+        }
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "60"));
+        int rate = Integer.parseInt(options.getOrDefault("rate", "200"));
+        long intervalSeconds = Long.parseLong(options.getOrDefault("interval", "10"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        File dir = new File(options.getOrDefault("dir", "build/soak"));
+        dir.mkdirs();
+        File taskFile = new File(dir, "tasks.txt");
+        taskFile.delete();
+
+        Barry barry = new Barry(taskFile.getPath());
+        SoakHarness generator = new SoakHarness(seed);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        Histogram total = new Histogram();
+        Histogram window = new Histogram();
+        long errors = 0;
+
+        try (PrintWriter csv = new PrintWriter(new File(dir, "soak.csv"))) {
+            csv.println("elapsed_s,commands,throughput_cps,p50_us,p95_us,p99_us,max_us,heap_used_mb,file_kb,tasks");
+            long periodNanos = 1_000_000_000L / rate;
+            long start = System.nanoTime();
+            long end = start + durationSeconds * 1_000_000_000L;
+            long nextReport = start + intervalSeconds * 1_000_000_000L;
+            long windowStart = start;
+            long due = start;
+            while (due < end) {
+                long now = System.nanoTime();
+                if (now < due) {
+                    Thread.sleep((due - now) / 1_000_000, (int) ((due - now) % 1_000_000));
+                }
+                String response = barry.getResponse(generator.nextCommand());
+                long latency = System.nanoTime() - due;
+                total.record(latency);
+                window.record(latency);
+                if (response.startsWith("Task number is out of range") || response.startsWith("I'm sorry")) {
+                    errors++;
+                }
+                due += periodNanos;
+
+                if (System.nanoTime() >= nextReport) {
+                    long reportTime = System.nanoTime();
+                    // Collect first, so heap growth reflects what Barry keeps rather than garbage not yet collected
+                    System.gc();
+                    long heapUsed = memory.getHeapMemoryUsage().getUsed();
+                    csv.printf("%d,%d,%.1f,%d,%d,%d,%d,%.1f,%d,%d%n",
+                            (reportTime - start) / 1_000_000_000L, window.count,
+                            window.count * 1e9 / (reportTime - windowStart),
+                            window.percentile(0.50) / 1000, window.percentile(0.95) / 1000,
+                            window.percentile(0.99) / 1000, window.max / 1000,
+                            heapUsed / 1048576.0, taskFile.length() / 1024, generator.taskCount);
+                    csv.flush();
+                    window = new Histogram();
+                    windowStart = System.nanoTime();
+                    nextReport = reportTime + intervalSeconds * 1_000_000_000L;
+                    // Time spent collecting is not the commands' fault, so the schedule moves past it
+                    due = Math.max(due, windowStart);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            try (PrintWriter summary = new PrintWriter(new File(dir, "soak-summary.properties"))) {
+                summary.println("duration_s=" + durationSeconds);
+                summary.println("target_rate_cps=" + rate);
+                summary.println("seed=" + seed);
+                summary.println("commands=" + total.count);
+                summary.println("errors=" + errors);
+                summary.printf("throughput_cps=%.1f%n", total.count * 1e9 / elapsed);
+                summary.println("p50_us=" + total.percentile(0.50) / 1000);
+                summary.println("p95_us=" + total.percentile(0.95) / 1000);
+                summary.println("p99_us=" + total.percentile(0.99) / 1000);
+                summary.println("p999_us=" + total.percentile(0.999) / 1000);
+                summary.println("max_us=" + total.max / 1000);
+                System.gc();
+                summary.printf("heap_used_mb=%.1f%n", memory.getHeapMemoryUsage().getUsed() / 1048576.0);
+                summary.println("file_kb=" + taskFile.length() / 1024);
+                summary.println("tasks=" + generator.taskCount);
+                summary.printf("result_cache_hit_rate=%.3f%n", barry.getResultCache().getHitRate());
+            }
+        }
+        System.out.println("Soak test finished. Reports are in " + dir.getAbsolutePath());
+    }
+
+    /**
+     * Picks the next command. Adds outnumber deletes, so the list keeps growing over a long run.
+     */
+    private String nextCommand() {
+        int roll = random.nextInt(100);
+        if (roll < 25 || taskCount == 0) {
+            taskCount++;
+            return "todo " + description();
+        } else if (roll < 35) {
+            taskCount++;
+            return "deadline " + description() + " /by " + dateTime().format(DATE_FORMAT);
+        } else if (roll < 40) {
+            taskCount++;
+            LocalDateTime from = dateTime();
+            return "event " + description() + " /from " + from.format(DATE_FORMAT)
+                    + " /to " + from.plusHours(1 + random.nextInt(3)).format(DATE_FORMAT);
+        } else if (roll < 52) {
+            return "mark " + (1 + random.nextInt(taskCount));
+        } else if (roll < 58) {
+            return "unmark " + (1 + random.nextInt(taskCount));
+        } else if (roll < 70) {
+            taskCount--;
+            return "delete " + (1 + random.nextInt(taskCount + 1));
+        } else if (roll < 95) {
+            return "find " + WORDS[random.nextInt(WORDS.length)];
+        } else {
+            return "list";
+        }
+    }
+
+    private String description() {
+        return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " "
+                + random.nextInt(1000);
+    }
+
+    /**
+     * Picks an hour within a month either side of now, so some deadlines are overdue.
+     */
+    private LocalDateTime dateTime() {
+        return LocalDateTime.now().plusDays(random.nextInt(60) - 30).withMinute(0);
+    }
+
+    /**
+     * Counts latencies in buckets whose width grows with the latency, so that percentiles stay within about
+     * 3% however long the run is, without keeping every sample.
+     */
+    private static class Histogram {
+        private static final int SUB_BUCKETS = 32;
+
+        private final long[] counts = new long[64 * SUB_BUCKETS];
+        private long count;
+        private long max;
+
+        private void record(long nanos) {
+            counts[bucketOf(Math.max(nanos, 1))]++;
+            count++;
+            max = Math.max(max, nanos);
+        }
+
+        private static int bucketOf(long value) {
+            int magnitude = 63 - Long.numberOfLeadingZeros(value);
+            if (magnitude < 5) {
+                return (int) value;
+            }
+            int sub = (int) ((value >>> (magnitude - 5)) & (SUB_BUCKETS - 1));
+            return (magnitude - 4) * SUB_BUCKETS + sub;
+        }
+
+        private static long upperBoundOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int magnitude = bucket / SUB_BUCKETS + 4;
+            long sub = bucket % SUB_BUCKETS;
+            return ((SUB_BUCKETS + sub + 1) << (magnitude - 5)) - 1;
+        }
+
+        /**
+         * Returns the latency in nanoseconds that the given fraction of samples did not exceed.
+         */
+        private long percentile(double fraction) {
+            long target = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target && seen > 0) {
+                    return Math.min(upperBoundOf(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
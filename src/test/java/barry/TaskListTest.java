@@ -0,0 +1,765 @@
+package barry;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TaskListTest {
+
+    @Test
+    public void testFuzzyFindToleratesTypos() throws BarryException {
+        TaskList tasks = new TaskList();
+        tasks.addTask(new Task.TodoTask("write report"));
+        tasks.addTask(new Task.TodoTask("buy groceries"));
+        tasks.addTask(new Task.TodoTask("read report from team"));
+
+        ArrayList<Task> matches = tasks.findTasksFuzzy("reprot");
+        assertEquals(2, matches.size());
+        assertEquals("write report", matches.get(0).getDescription());
+
+        // Removed tasks must drop out of the index, and IDs must still resolve after positions shift
+        tasks.removeTask(0);
+        matches = tasks.findTasksFuzzy("grocereis");
+        assertEquals(1, matches.size());
+        assertEquals("buy groceries", matches.get(0).getDescription());
+        assertTrue(tasks.findTasksFuzzy("write").isEmpty());
+    }
+
+    @Test
+    public void testPatternFindReturnsMatchesInListOrderOnALargeList() throws BarryException {
+        TaskList tasks = new TaskList();
+        int size = TaskList.PARALLEL_SCAN_THRESHOLD + 5_000;
+        ArrayList<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (i % 997 == 0) {
+                tasks.addTask(new Task.TodoTask((i % 2 == 0 ? "buy " : "sell ") + i));
+                expected.add(i);
+            } else {
+                tasks.addTask(new Task.TodoTask("chore " + i + " to buy"));
+            }
+        }
+
+        // The list is large enough to be searched in parallel, which must not change the order of the matches
+        ArrayList<Task> matches = tasks.findTasks(Pattern.compile("^(buy|sell) "));
+        assertEquals(expected.size(), matches.size());
+        for (int i = 0; i < matches.size(); i++) {
+            assertTrue(matches.get(i).getDescription().endsWith(" " + expected.get(i)), matches.get(i).toString());
+        }
+    }
+
+    @Test
+    public void testSortedViewsFollowMutations() throws BarryException {
+        TaskList tasks = new TaskList();
+        tasks.addTask(new Task.TodoTask("todo"));
+        tasks.addTask(new Task.DeadlineTask("later", LocalDateTime.of(2030, 1, 1, 0, 0)));
+        tasks.addTask(new Task.DeadlineTask("sooner", LocalDateTime.of(2025, 1, 1, 0, 0)));
+
+        Iterator<Integer> positions = tasks.sortedPositions(TaskList.SortOrder.DEADLINE);
+        assertEquals(2, positions.next());
+        assertEquals(1, positions.next());
+        assertEquals(0, positions.next());
+
+        tasks.markTask(0);
+        tasks.removeTask(1);
+        positions = tasks.sortedPositions(TaskList.SortOrder.STATUS);
+        assertEquals(1, positions.next());
+        assertEquals(0, positions.next());
+        assertFalse(positions.hasNext());
+    }
+
+    @Test
+    public void testStoreKeepsFieldsAcrossRemovals() throws BarryException {
+        TaskList tasks = new TaskList();
+        LocalDateTime from = LocalDateTime.of(2025, 3, 1, 9, 30);
+        tasks.addTask(new Task.TodoTask("first"));
+        tasks.addTask(new Task.EventTask("talk", from, from.plusHours(2)));
+        tasks.addTask(new Task.TodoTask("talk"));
+        tasks.markTask(1);
+        tasks.markTask(2);
+
+        tasks.removeTask(0);
+        assertEquals("[E][X] talk (from: Mar 01 2025, 09:30 AM to: Mar 01 2025, 11:30 AM)",
+                tasks.getTask(0).toString());
+        assertEquals("[T][X] talk", tasks.getTask(1).toString());
+
+        tasks.unmarkTask(0);
+        assertFalse(tasks.getTask(0).isCompleted());
+        assertTrue(tasks.getTask(1).isCompleted());
+        assertEquals(2, tasks.getTasks().size());
+    }
+
+    @Test
+    public void testRemovingADoneTaskLeavesTheNextOneOpen() throws BarryException {
+        TaskList tasks = new TaskList();
+        tasks.addTask(new Task.TodoTask("done"));
+        tasks.addTask(new Task.TodoTask("open"));
+        tasks.addTask(new Task.TodoTask("also done"));
+        tasks.addTask(new Task.TodoTask("last"));
+        tasks.markTask(0);
+        tasks.markTask(2);
+
+        tasks.removeTask(0);
+        assertEquals("[T][ ] open", tasks.getTask(0).toString());
+        assertEquals("[T][X] also done", tasks.getTask(1).toString());
+        assertEquals("[T][ ] last", tasks.getTask(2).toString());
+        assertEquals(1, tasks.countCompleted(TaskStore.TODO));
+
+        tasks.removeTask(1);
+        assertFalse(tasks.getTask(0).isCompleted());
+        assertFalse(tasks.getTask(1).isCompleted());
+        assertEquals(-1, tasks.getStore().nextCompleted(0));
+    }
+
+    @Test
+    public void testSummaryCountersFollowMutations() throws BarryException {
+        TaskList tasks = new TaskList();
+        LocalDateTime now = LocalDateTime.of(2025, 6, 1, 12, 0);
+        tasks.addTask(new Task.TodoTask("todo"));
+        tasks.addTask(new Task.DeadlineTask("overdue", now.minusDays(1)));
+        tasks.addTask(new Task.DeadlineTask("upcoming", now.plusDays(1)));
+        assertEquals(1, tasks.countOverdue(now));
+
+        tasks.markTask(1);
+        tasks.markTask(1); // marking twice must not count twice
+        assertEquals(1, tasks.countCompleted(TaskStore.DEADLINE));
+        assertEquals(0, tasks.countOverdue(now));
+
+        // Moving the clock past the second deadline makes it overdue
+        assertEquals(1, tasks.countOverdue(now.plusDays(2)));
+        tasks.removeTask(2);
+        assertEquals(0, tasks.countOverdue(now.plusDays(2)));
+        assertEquals(2, tasks.countTasks(TaskStore.DEADLINE) + tasks.countTasks(TaskStore.TODO));
+    }
+
+    @Test
+    public void testQueryMatchesScanWhicheverIndexIsUsed() throws BarryException {
+        TaskList tasks = new TaskList();
+        LocalDateTime start = LocalDateTime.of(2026, 1, 1, 9, 0);
+        for (int i = 0; i < 300; i++) {
+            String description = (i % 50 == 0 ? "Quarterly REPORT " : "chore ") + i;
+            if (i % 3 == 0) {
+                tasks.addTask(new Task.TodoTask(description));
+            } else {
+                tasks.addTask(new Task.DeadlineTask(description, start.plusDays(i)));
+            }
+        }
+        for (int i = 0; i < 300; i += 4) {
+            tasks.markTask(i);
+        }
+        for (int i = 0; i < 10; i++) {
+            tasks.addTask(new Task.EventTask("chore meeting " + i, start.plusDays(i), start.plusDays(i).plusHours(1)));
+        }
+        tasks.removeTask(7);
+
+        String[] queries = {"type:D done:false before:1/6/2026 text:report", "text:report", "type:T -done:true",
+            "before:5/1/2026 or text:report", "-text:chore", "after:31/12/2026", "type:E text:chore"};
+        for (String text : queries) {
+            Query query = Parser.parseQuery(text);
+            ArrayList<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < tasks.size(); i++) {
+                if (query.test(tasks.getStore(), i)) {
+                    expected.add(i);
+                }
+            }
+            ArrayList<Integer> actual = new ArrayList<>();
+            query.positions(tasks).forEachRemaining(actual::add);
+            assertEquals(expected, actual, text);
+        }
+
+        // The rare text term is more selective than the type and the date range
+        assertTrue(Parser.parseQuery("type:D done:false before:1/6/2026 text:report").explain(tasks)
+                .startsWith("text index"));
+        assertTrue(Parser.parseQuery("type:E text:chore").explain(tasks).startsWith("type index"));
+        assertTrue(Parser.parseQuery("-text:chore").explain(tasks).startsWith("scan"));
+    }
+
+    @Test
+    public void testIdBitmapMatchesReferenceSet() {
+        // Dense and sparse chunks, so every combination of array and bitmap chunks is exercised
+        Random random = new Random(7);
+        IdBitmap[] bitmaps = new IdBitmap[3];
+        ArrayList<TreeSet<Integer>> references = new ArrayList<>();
+        int[] densities = {2, 40, 1000};
+        for (int b = 0; b < bitmaps.length; b++) {
+            bitmaps[b] = new IdBitmap();
+            references.add(new TreeSet<>());
+            for (int id = 0; id < 200_000; id++) {
+                if (random.nextInt(densities[b]) == 0 && bitmaps[b].add(id)) {
+                    references.get(b).add(id);
+                }
+            }
+            for (int id = 0; id < 200_000; id += 3) {
+                assertEquals(references.get(b).remove(id), bitmaps[b].remove(id));
+            }
+            assertEquals(references.get(b).size(), bitmaps[b].cardinality());
+        }
+        for (int a = 0; a < bitmaps.length; a++) {
+            for (int b = 0; b < bitmaps.length; b++) {
+                TreeSet<Integer> and = new TreeSet<>(references.get(a));
+                and.retainAll(references.get(b));
+                TreeSet<Integer> or = new TreeSet<>(references.get(a));
+                or.addAll(references.get(b));
+                TreeSet<Integer> andNot = new TreeSet<>(references.get(a));
+                andNot.removeAll(references.get(b));
+                assertEquals(new ArrayList<>(and), toList(bitmaps[a].and(bitmaps[b])));
+                assertEquals(new ArrayList<>(or), toList(bitmaps[a].or(bitmaps[b])));
+                assertEquals(new ArrayList<>(andNot), toList(bitmaps[a].andNot(bitmaps[b])));
+            }
+        }
+    }
+
+    private static List<Integer> toList(IdBitmap bitmap) {
+        ArrayList<Integer> ids = new ArrayList<>();
+        bitmap.iterator().forEachRemaining((int id) -> ids.add(id));
+        assertEquals(ids.size(), bitmap.cardinality());
+        return ids;
+    }
+
+    @Test
+    public void testTagFindFollowsMutations() throws BarryException {
+        TaskList tasks = new TaskList();
+        Task report = new Task.TodoTask("write report");
+        report.getTags().add("work");
+        tasks.addTask(report);
+        tasks.addTask(new Task.TodoTask("buy groceries"));
+        tasks.addTask(new Task.TodoTask("call mum"));
+        tasks.tagTask(1, "home");
+        tasks.tagTask(2, "home");
+        tasks.tagTask(2, "urgent");
+        assertFalse(tasks.tagTask(2, "urgent"));
+
+        assertEquals(List.of(1, 2), positions(tasks.findTasksByTags(List.<String[]>of(new String[] {"home"}),
+                List.of())));
+        assertEquals(List.of(0, 2), positions(tasks.findTasksByTags(
+                List.<String[]>of(new String[] {"work", "urgent"}), List.of())));
+        assertEquals(List.of(1), positions(tasks.findTasksByTags(List.<String[]>of(new String[] {"home"}),
+                List.of("urgent"))));
+        assertEquals(List.of(0, 1), positions(tasks.findTasksByTags(List.of(), List.of("urgent"))));
+
+        // Positions shift after a removal, and removed tasks leave the index
+        tasks.removeTask(0);
+        assertTrue(tasks.untagTask(1, "urgent"));
+        assertEquals(List.of(0, 1), positions(tasks.findTasksByTags(List.<String[]>of(new String[] {"home"}),
+                List.of())));
+        assertTrue(tasks.idsWithTag("work").isEmpty());
+        assertEquals("[T][ ] call mum #home", tasks.getTask(1).toString());
+        assertEquals(List.of(0, 1), positions(Parser.parseQuery("tag:home").positions(tasks)));
+    }
+
+    private static List<Integer> positions(Iterator<Integer> iterator) {
+        ArrayList<Integer> positions = new ArrayList<>();
+        iterator.forEachRemaining(positions::add);
+        return positions;
+    }
+
+    @Test
+    public void testNextDueFollowsMutations() throws BarryException {
+        TaskList tasks = new TaskList();
+        LocalDateTime start = LocalDateTime.of(2026, 3, 1, 9, 0);
+        tasks.addTask(new Task.DeadlineTask("essay", start.plusDays(3)));
+        tasks.addTask(new Task.TodoTask("laundry"));
+        tasks.addTask(new Task.EventTask("concert", start.plusDays(1), start.plusDays(1).plusHours(2)));
+        tasks.addTask(new Task.DeadlineTask("taxes", start.plusDays(2)));
+        tasks.addTask(new Task.EventTask("trip", start.plusDays(5), start.plusDays(7)));
+
+        assertEquals(List.of(2, 3, 0), tasks.nextDue(3));
+        tasks.markTask(3);
+        assertEquals(List.of(2, 0, 4), tasks.nextDue(10));
+        tasks.removeTask(2);
+        tasks.unmarkTask(2);
+        assertEquals(List.of(2, 0), tasks.nextDue(2));
+    }
+
+    @Test
+    public void testResultCacheIsDroppedWhenListChanges() throws Exception {
+        TaskList tasks = new TaskList();
+        tasks.addTask(new Task.TodoTask("write report"));
+        ResultCache cache = new ResultCache();
+        Ui ui = new Ui();
+        Storage storage = new Storage(Files.createTempDirectory("barry").resolve("tasks.txt").toString());
+
+        StringBuilder first = new StringBuilder();
+        cache.execute("find report", new Command.FindCommand("report"), tasks, ui, storage, first);
+        StringBuilder second = new StringBuilder();
+        cache.execute("find report", new Command.FindCommand("report"), tasks, ui, storage, second);
+        assertEquals(first.toString(), second.toString());
+        assertEquals(1, cache.getHits());
+
+        long version = tasks.getVersion();
+        tasks.markTask(0);
+        assertTrue(tasks.getVersion() > version);
+        StringBuilder third = new StringBuilder();
+        cache.execute("find report", new Command.FindCommand("report"), tasks, ui, storage, third);
+        assertTrue(third.toString().contains("[X] write report"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        // Marking a task that is already done changes nothing, so the cached response stays valid
+        tasks.markTask(0);
+        cache.execute("find report", new Command.FindCommand("report"), tasks, ui, storage, new StringBuilder());
+        assertEquals(2, cache.getHits());
+
+        // A recurring task shows its next occurrence, which changes with the time, so its responses are not kept
+        tasks.addTask(new Task.RecurringTask("report weekly", LocalDateTime.of(2025, 1, 1, 9, 0), 7, null));
+        cache.execute("find report", new Command.FindCommand("report"), tasks, ui, storage, new StringBuilder());
+        cache.execute("find report", new Command.FindCommand("report"), tasks, ui, storage, new StringBuilder());
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+
+        // An archived recurring task is not in the list, so the command marks its response as not to be kept
+        TaskList archiving = new TaskList();
+        archiving.addTask(new Task.RecurringTask("report weekly", LocalDateTime.of(2025, 1, 1, 9, 0), 7, null));
+        archiving.addTask(new Task.TodoTask("report draft"));
+        archiving.markTask(0);
+        Storage archive = new Storage(Files.createTempDirectory("barry").resolve("tasks.txt").toString());
+        new Command.ArchiveCommand().execute(archiving, ui, archive);
+        ResultCache archiveCache = new ResultCache();
+        StringBuilder archived = new StringBuilder();
+        archiveCache.execute("find report", new Command.FindCommand("report"), archiving, ui, archive, archived);
+        archiveCache.execute("find report", new Command.FindCommand("report"), archiving, ui, archive,
+                new StringBuilder());
+        assertTrue(archived.toString().contains("From the archive:\n[R]"), archived.toString());
+        assertEquals(0, archiveCache.getHits());
+    }
+
+    @Test
+    public void testRecurringTasksAreCopiedInAndOutOfTheStore() throws BarryException {
+        LocalDate second = LocalDate.of(2025, 1, 8);
+        Task.RecurringTask gym = new Task.RecurringTask("gym", LocalDateTime.of(2025, 1, 1, 18, 0), 7, null);
+        TaskList tasks = new TaskList();
+        tasks.addTask(gym);
+
+        gym.skip(second);
+        ((Task.RecurringTask) tasks.getTask(0)).skip(LocalDate.of(2025, 1, 15));
+        assertTrue(((Task.RecurringTask) tasks.getTask(0)).getExceptions().isEmpty());
+
+        Task skipped = tasks.skipOccurrence(0, second);
+        assertEquals(List.of(second), List.copyOf(((Task.RecurringTask) skipped).getExceptions()));
+        assertEquals(List.of(second), List.copyOf(((Task.RecurringTask) tasks.getTask(0)).getExceptions()));
+    }
+
+    @Test
+    public void testPositionListenerKeepsAMirrorInStep() throws BarryException {
+        TaskList tasks = new TaskList();
+        tasks.addTask(new Task.TodoTask("existing"));
+        ArrayList<String> mirror = new ArrayList<>();
+        mirror.add(tasks.describeTask(0));
+        tasks.addPositionListener(new TaskList.PositionListener() {
+            @Override
+            public void taskInserted(int position) {
+                mirror.add(position, describe(tasks, position));
+            }
+
+            @Override
+            public void taskRemoved(int position) {
+                mirror.remove(position);
+            }
+
+            @Override
+            public void taskUpdated(int position) {
+                mirror.set(position, describe(tasks, position));
+            }
+        });
+
+        tasks.addTask(new Task.TodoTask("write report"));
+        tasks.addTask(new Task.DeadlineTask("taxes", LocalDateTime.of(2026, 4, 30, 23, 59)));
+        tasks.markTask(1);
+        tasks.tagTask(2, "home");
+        tasks.removeTask(0);
+        tasks.unmarkTask(0);
+        ArrayList<String> expected = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            expected.add(tasks.describeTask(i));
+        }
+        assertEquals(expected, mirror);
+    }
+
+    private static String describe(TaskList tasks, int position) {
+        try {
+            return tasks.describeTask(position);
+        } catch (BarryException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    public void testArchiveMovesDoneTasksAndFindStillReachesThem() throws Exception {
+        Path dir = Files.createTempDirectory("barry");
+        Storage storage = new Storage(dir.resolve("tasks.txt").toString());
+        TaskList tasks = new TaskList(storage.load());
+        for (int i = 0; i < 10; i++) {
+            Task task = new Task.TodoTask("report " + i);
+            if (i % 2 == 0) {
+                task.mark();
+                task.setCompletedOn(LocalDate.now().minusDays(i * 10));
+            }
+            tasks.addTask(task);
+        }
+        storage.save(tasks.getTasks());
+
+        // Only the tasks done more than 30 days ago go: reports 4, 6 and 8
+        assertEquals(3, storage.archive(tasks, LocalDate.now().minusDays(31)));
+        assertEquals(7, tasks.size());
+        assertEquals(7, new TaskList(new Storage(dir.resolve("tasks.txt").toString()).load()).size());
+        String found = new Command.FindCommand("report").execute(tasks, new Ui(), storage);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(found.contains("report " + i), found);
+        }
+        assertTrue(found.indexOf("From the archive:") < found.indexOf("report 4"));
+
+        assertEquals(2, storage.archive(tasks, null));
+        assertEquals(5, tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            assertFalse(tasks.getTask(i).isCompleted());
+        }
+        assertEquals(LocalDate.now().minusDays(40), readArchive(storage).get(0).getCompletedOn());
+        assertEquals(5, readArchive(storage).size());
+    }
+
+    @Test
+    public void testOldCompletedTasksAreSavedInMonthSegmentsAndLoadedOnDemand() throws Exception {
+        Path dir = Files.createTempDirectory("barry");
+        String taskFile = dir.resolve("tasks.txt").toString();
+        Storage storage = new Storage(taskFile);
+        TaskList tasks = new TaskList(storage.load());
+        YearMonth recent = YearMonth.now().minusMonths(6);
+        YearMonth older = YearMonth.now().minusMonths(7);
+        tasks.addTask(new Task.TodoTask("current"));
+        tasks.addTask(new Task.DeadlineTask("recent report", recent.atDay(10).atTime(9, 0)));
+        tasks.addTask(new Task.EventTask("recent trip", recent.atDay(3).atTime(9, 0), recent.atDay(5).atTime(9, 0)));
+        tasks.addTask(new Task.DeadlineTask("older report", older.atDay(10).atTime(9, 0)));
+        tasks.addTask(new Task.DeadlineTask("overdue report", older.atDay(12).atTime(9, 0)));
+        for (int i = 1; i <= 3; i++) {
+            tasks.markTask(i);
+        }
+        storage.save(tasks.getTasks());
+        File recentSegment = new File(taskFile + ".segments", recent + ".txt");
+        File olderSegment = new File(taskFile + ".segments", older + ".txt");
+        assertTrue(recentSegment.exists() && olderSegment.exists());
+
+        // Only the open tasks are read at start-up; the most recent segment is loaded first
+        Storage reloaded = new Storage(taskFile);
+        tasks = new TaskList(reloaded.load());
+        assertEquals(2, tasks.size());
+        assertTrue(new Command.ListCommand().execute(tasks, new Ui(), reloaded).contains("'list /all'"));
+
+        // The summary counts the tasks in segments without loading them, reading a segment only if it has no counts
+        new File(taskFile + ".segments", older + ".counts").delete();
+        String summary = new Command.SummaryCommand().execute(tasks, new Ui(), reloaded);
+        assertTrue(summary.contains("You have 5 task(s): 2 open, 3 done"), summary);
+        assertTrue(summary.contains("Deadlines: 3 (2 done)"), summary);
+
+        // Searches read the segments after the loaded tasks, without adding them to the list
+        String found = new Command.FindCommand("report").execute(tasks, new Ui(), reloaded);
+        assertTrue(found.indexOf("overdue report") < found.indexOf("recent report")
+                && found.indexOf("recent report") < found.indexOf("older report"), found);
+        found = new Command.PatternFindCommand(Pattern.compile("^older")).execute(tasks, new Ui(), reloaded);
+        assertTrue(found.contains("older report") && !found.contains("recent"), found);
+        found = new Command.FuzzyFindCommand("trp").execute(tasks, new Ui(), reloaded);
+        assertTrue(found.contains("recent trip"), found);
+        assertEquals(2, tasks.size());
+        assertTrue(reloaded.hasUnloadedSegments());
+        assertTrue(reloaded.loadOlderSegment(tasks));
+        assertEquals(4, tasks.size());
+        assertTrue(reloaded.hasUnloadedSegments());
+
+        // Changing a loaded task rewrites its segment only
+        olderSegment.setLastModified(1_000_000_000_000L);
+        tasks.tagTask(positionOf(tasks, "recent trip"), "travel");
+        reloaded.save(tasks.getTasks());
+        assertEquals(1_000_000_000_000L, olderSegment.lastModified());
+
+        // A task saved into a segment that is not loaded is counted once, from the task list
+        tasks.markTask(positionOf(tasks, "overdue report"));
+        reloaded.save(tasks.getTasks());
+        summary = new Command.SummaryCommand().execute(tasks, new Ui(), reloaded);
+        assertTrue(summary.contains("You have 5 task(s): 1 open, 4 done"), summary);
+        found = new Command.FindCommand("overdue").execute(tasks, new Ui(), reloaded);
+        assertEquals(found.indexOf("overdue report"), found.lastIndexOf("overdue report"), found);
+        tasks.unmarkTask(positionOf(tasks, "overdue report"));
+        reloaded.save(tasks.getTasks());
+
+        Storage again = new Storage(taskFile);
+        tasks = new TaskList(again.load());
+        String listed = new Command.ListCommand(null, true).execute(tasks, new Ui(), again);
+        assertEquals(5, tasks.size());
+        assertTrue(listed.contains("recent trip") && listed.contains("older report"), listed);
+        assertFalse(again.hasUnloadedSegments());
+        assertTrue(tasks.getTask(positionOf(tasks, "recent trip")).getTags().contains("travel"));
+
+        // Unmarking an old task moves it back to the task file, and its segment is deleted once empty
+        tasks.unmarkTask(positionOf(tasks, "older report"));
+        again.save(tasks.getTasks());
+        assertFalse(olderSegment.exists());
+        assertEquals(3, new TaskList(new Storage(taskFile).load()).size());
+    }
+
+    @Test
+    public void testExternalAppendEditAndDeleteAreAppliedAsDeltas() throws Exception {
+        Path dir = Files.createTempDirectory("barry");
+        Path taskFile = dir.resolve("tasks.txt");
+        Storage storage = new Storage(taskFile.toString());
+        TaskList tasks = new TaskList(storage.load());
+        for (int i = 0; i < 4; i++) {
+            tasks.addTask(new Task.TodoTask("report " + i));
+        }
+        storage.save(tasks.getTasks());
+
+        // Another program appends a record, so only the new bytes are read
+        Files.writeString(taskFile, "T | 1 | appended\n", StandardOpenOption.APPEND);
+        storage.detectExternalChange();
+        assertEquals(1, storage.applyExternalChanges(tasks));
+        assertEquals("[T][X] appended", tasks.getTask(4).toString());
+
+        // An edit replaces the task where it is, and a deletion only removes one
+        List<String> lines = new ArrayList<>(Files.readAllLines(taskFile));
+        lines.set(1, "T | 0 | report one");
+        lines.remove(2);
+        Files.writeString(taskFile, String.join("\n", lines) + "\n");
+        taskFile.toFile().setLastModified(taskFile.toFile().lastModified() + 2000);
+        storage.detectExternalChange();
+        assertEquals(2, storage.applyExternalChanges(tasks));
+        List<String> descriptions = new ArrayList<>();
+        for (Task task : tasks.getTasks()) {
+            descriptions.add(task.getDescription());
+        }
+        assertEquals(List.of("report 0", "report one", "report 3", "appended"), descriptions);
+
+        // The applied changes are now known, so saving rewrites the file without merging them in twice
+        tasks.markTask(0);
+        storage.save(tasks.getTasks());
+        TaskList reloaded = new TaskList(new Storage(taskFile.toString()).load());
+        assertEquals(4, reloaded.size());
+        assertTrue(reloaded.getTask(0).isCompleted());
+        assertEquals(0, storage.applyExternalChanges(tasks));
+    }
+
+    @Test
+    public void testStaleSavesFromTwoInstancesAreMerged() throws Exception {
+        Path dir = Files.createTempDirectory("barry");
+        String taskFile = dir.resolve("tasks.txt").toString();
+        Storage first = new Storage(taskFile);
+        TaskList firstTasks = new TaskList(first.load());
+        for (int i = 0; i < 3; i++) {
+            firstTasks.addTask(new Task.TodoTask("report " + i));
+        }
+        first.save(firstTasks.getTasks());
+        Storage second = new Storage(taskFile);
+        TaskList secondTasks = new TaskList(second.load());
+
+        // Each instance changes its own copy and saves without seeing the other's save
+        firstTasks.removeTask(0);
+        firstTasks.addTask(new Task.TodoTask("from first"));
+        first.save(firstTasks.getTasks());
+        secondTasks.markTask(2);
+        secondTasks.addTask(new Task.TodoTask("from second"));
+        second.save(secondTasks.getTasks());
+
+        List<String> merged = new ArrayList<>();
+        for (Task task : new Storage(taskFile).load()) {
+            merged.add(task.toString());
+        }
+        assertEquals(List.of("[T][ ] report 1", "[T][ ] from first", "[T][X] report 2", "[T][ ] from second"),
+                merged);
+
+        // The second instance is given the first one's changes, and the first picks up the merge
+        second.applyExternalChanges(secondTasks);
+        assertEquals(4, secondTasks.size());
+        assertTrue(secondTasks.findTasks("report 0").isEmpty());
+        first.detectExternalChange();
+        first.applyExternalChanges(firstTasks);
+        assertEquals(4, firstTasks.size());
+        assertTrue(firstTasks.getTask(positionOf(firstTasks, "report 2")).isCompleted());
+    }
+
+    @Test
+    public void testDamagedRecordsAreQuarantinedAndTheRestLoaded() throws Exception {
+        Path dir = Files.createTempDirectory("barry");
+        Path taskFile = dir.resolve("tasks.txt");
+        Storage storage = new Storage(taskFile.toString());
+        TaskList tasks = new TaskList(storage.load());
+        for (int i = 0; i < 5; i++) {
+            tasks.addTask(new Task.TodoTask("report " + i));
+        }
+        storage.save(tasks.getTasks());
+
+        // One record is changed on disk, a record without a checksum is added by hand, and a write is cut off
+        List<String> lines = new ArrayList<>(Files.readAllLines(taskFile));
+        lines.set(2, lines.get(2).replace("report 2", "report X"));
+        lines.add("T | 0 | written by hand");
+        Files.writeString(taskFile, String.join("\n", lines) + "\nT | 0 | cut of");
+
+        tasks = new TaskList(new Storage(taskFile.toString()).load());
+        assertEquals(5, tasks.size());
+        assertEquals("report 3", tasks.getTask(2).getDescription());
+        assertEquals("written by hand", tasks.getTask(4).getDescription());
+        List<String> quarantined = Files.readAllLines(dir.resolve("tasks.txt.quarantine"));
+        assertEquals(2, quarantined.size());
+        assertTrue(quarantined.get(0).contains("report X") && quarantined.get(1).endsWith("cut of"));
+
+        // The damaged records are gone from the task file, so the next load finds nothing to set aside
+        assertEquals(5, new TaskList(new Storage(taskFile.toString()).load()).size());
+        assertEquals(2, Files.readAllLines(dir.resolve("tasks.txt.quarantine")).size());
+    }
+
+    @Test
+    public void testMappedTasksAnswerReadCommandsAsTheLoadedList() throws Exception {
+        Path dir = Files.createTempDirectory("barry");
+        String taskFile = dir.resolve("tasks.txt").toString();
+        Storage storage = new Storage(taskFile);
+        TaskList tasks = new TaskList(storage.load());
+        YearMonth old = YearMonth.now().minusMonths(8);
+        LocalDateTime soon = LocalDateTime.now().plusDays(1).withSecond(0).withNano(0);
+        tasks.addTask(new Task.TodoTask("write report"));
+        tasks.addTask(new Task.DeadlineTask("submit report", soon.plusDays(2)));
+        tasks.addTask(new Task.EventTask("report review", soon, soon.plusHours(1)));
+        tasks.addTask(new Task.DeadlineTask("old report", old.atEndOfMonth().atTime(9, 0)));
+        tasks.addTask(new Task.DeadlineTask("caf\u00e9 bill", soon.plusDays(1)));
+        tasks.addTask(new Task.TodoTask("archived report"));
+        tasks.markTask(3);
+        tasks.markTask(5);
+        storage.save(tasks.getTasks());
+        storage.archive(tasks, null);
+
+        Storage readOnly = new Storage(taskFile);
+        MappedTasks mapped = readOnly.openMapped();
+        Command[] commands = {new Command.ListCommand(), new Command.ListCommand(null, true),
+            new Command.FindCommand("report"), new Command.FindCommand("caf\u00e9"), new Command.NextCommand(3)};
+        for (Command command : commands) {
+            Storage loadedStorage = new Storage(taskFile);
+            StringBuilder loaded = new StringBuilder();
+            command.execute(new TaskList(loadedStorage.load()), new Ui(), loadedStorage, loaded);
+            StringBuilder read = new StringBuilder();
+            command.execute(mapped, new Ui(), read);
+            assertEquals(loaded.toString(), read.toString());
+        }
+        StringBuilder found = new StringBuilder();
+        new Command.FindCommand("report").execute(mapped, new Ui(), found);
+        assertTrue(found.indexOf("From the archive:") < found.indexOf("archived report"), found.toString());
+    }
+
+    @Test
+    public void testExportedTasksImportUnchangedInEitherFormat() throws Exception {
+        Path dir = Files.createTempDirectory("barry");
+        LocalDateTime start = LocalDateTime.of(2026, 2, 3, 9, 15);
+        TaskList tasks = new TaskList();
+        tasks.addTask(new Task.TodoTask("say \"hi\", then leave"));
+        tasks.addTask(new Task.DeadlineTask("back\\slash caf\u00e9", start));
+        tasks.addTask(new Task.EventTask("talk, Q&A", start, start.plusHours(2)));
+        Task.RecurringTask gym = new Task.RecurringTask("gym", start, 7, LocalDate.of(2026, 6, 30));
+        gym.getExceptions().add(LocalDate.of(2026, 2, 10));
+        gym.getExceptions().add(LocalDate.of(2026, 2, 17));
+        tasks.addTask(gym);
+        tasks.markTask(0);
+        tasks.tagTask(2, "work");
+        tasks.tagTask(2, "urgent");
+
+        for (String name : new String[] {"backup.csv", "backup.json", "backup.json.gz"}) {
+            String path = dir.resolve(name).toString();
+            Storage storage = new Storage(dir.resolve(name + ".tasks").toString());
+            new Command.ExportCommand(path, TaskTransfer.Format.fromFileName(name.replace(".gz", "")))
+                    .execute(tasks, new Ui(), storage);
+            TaskList imported = new TaskList(storage.load());
+            String response = new Command.ImportCommand(path).execute(imported, new Ui(), storage);
+            assertFalse(response.contains("skipped"), response);
+            assertEquals(tasks.size(), imported.size());
+            for (int i = 0; i < tasks.size(); i++) {
+                assertEquals(Arrays.asList(TaskTransfer.toFields(tasks.getTask(i))),
+                        Arrays.asList(TaskTransfer.toFields(imported.getTask(i))), name);
+            }
+        }
+
+        // A line break inside a quoted field would split the task in the task file, so the record is skipped
+        Path csv = dir.resolve("broken.csv");
+        Files.writeString(csv, String.join(",", TaskTransfer.COLUMNS) + "\nT,false,\"line one\nD | 0 | x\"\n"
+                + "T,false,line two\nD,false,no due date\nR,false,gym,,2026-01-01T09:00\n");
+        Storage storage = new Storage(dir.resolve("broken.tasks").toString());
+        TaskList imported = new TaskList(storage.load());
+        String response = new Command.ImportCommand(csv.toString()).execute(imported, new Ui(), storage);
+        assertTrue(response.contains("3 record(s) were invalid"), response);
+        assertEquals(1, imported.size());
+        assertEquals("line two", new TaskList(new Storage(dir.resolve("broken.tasks").toString()).load())
+                .getTask(0).getDescription());
+
+        // A file that cannot be read to the end keeps the tasks before the error, and says how many there were
+        Path json = dir.resolve("truncated.json");
+        Files.writeString(json, "[{\"type\":\"T\",\"description\":\"a\"},{\"type\":\"T\",\"description\":\"b\"},{oops");
+        response = new Command.ImportCommand(json.toString()).execute(imported, new Ui(), storage);
+        assertTrue(response.startsWith("I've imported 2 task(s) from " + json + " before this error: "), response);
+        assertEquals(3, new TaskList(new Storage(dir.resolve("broken.tasks").toString()).load()).size());
+    }
+
+    @Test
+    public void testCompressedTaskFileLoadsAndSaves() throws Exception {
+        Path dir = Files.createTempDirectory("barry");
+        Path taskFile = dir.resolve("tasks.txt");
+        Storage storage = new Storage(taskFile.toString(), true);
+        TaskList tasks = new TaskList(storage.load());
+        for (int i = 0; i < 100; i++) {
+            tasks.addTask(new Task.TodoTask("report " + i));
+        }
+        storage.save(tasks.getTasks());
+        byte[] header = Files.readAllBytes(taskFile);
+        assertEquals((byte) 0x1f, header[0]);
+        assertEquals((byte) 0x8b, header[1]);
+
+        // Loading detects the compression by itself, and the file stays compressed when saved again
+        Storage reloaded = new Storage(taskFile.toString());
+        tasks = new TaskList(reloaded.load());
+        assertTrue(reloaded.isCompressed());
+        assertEquals(100, tasks.size());
+        tasks.markTask(42);
+        Task appended = new Task.TodoTask("appended");
+        tasks.addTask(appended);
+        reloaded.append(new ArrayList<>(List.of(appended)), tasks.size() - 1);
+        assertEquals(101, new TaskList(new Storage(taskFile.toString()).load()).size());
+        reloaded.save(tasks.getTasks());
+        assertEquals((byte) 0x1f, Files.readAllBytes(taskFile)[0]);
+
+        Storage plain = new Storage(taskFile.toString());
+        tasks = new TaskList(plain.load());
+        assertEquals(101, tasks.size());
+        assertTrue(tasks.getTask(42).isCompleted());
+        assertEquals("appended", tasks.getTask(100).getDescription());
+
+        // Switching compression off writes plain text that loads the same
+        plain.setCompressed(false);
+        plain.save(tasks.getTasks());
+        assertTrue(Files.readAllLines(taskFile).get(0).startsWith("T | 0 | report 0"));
+        assertEquals(101, new TaskList(new Storage(taskFile.toString()).load()).size());
+    }
+
+    private static int positionOf(TaskList tasks, String description) throws BarryException {
+        for (int i = 0; i < tasks.size(); i++) {
+            if (tasks.getTask(i).getDescription().equals(description)) {
+                return i;
+            }
+        }
+        throw new AssertionError(description);
+    }
+
+    private static List<Task> readArchive(Storage storage) throws Exception {
+        ArrayList<Task> archived = new ArrayList<>();
+        try (Storage.ArchiveReader reader = storage.readArchive()) {
+            reader.forEachRemaining(archived::add);
+        }
+        return archived;
+    }
+}
@@ -0,0 +1,122 @@
+package barry;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TaskTest {
+
+    @Test
+    public void testRecurringNextOccurrence() {
+        // Weekly task starting on a Monday evening
+        LocalDateTime start = LocalDateTime.of(2025, 1, 6, 18, 0);
+        Task.RecurringTask task = new Task.RecurringTask("gym", start, 7, null);
+
+        assertEquals(start, task.nextOccurrence(start.minusDays(3)));
+        assertEquals(start.plusDays(7), task.nextOccurrence(start.plusMinutes(1)));
+        assertEquals(start.plusDays(700), task.nextOccurrence(start.plusDays(694)));
+    }
+
+    @Test
+    public void testRecurringSkipsExceptionsAndStopsAtUntil() throws BarryException {
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 9, 0);
+        Task.RecurringTask task = new Task.RecurringTask("standup", start, 2, LocalDate.of(2025, 1, 7));
+        task.skip(LocalDate.of(2025, 1, 3));
+
+        Iterator<LocalDateTime> occurrences = task.occurrencesFrom(start);
+        assertEquals(start, occurrences.next());
+        assertEquals(start.plusDays(4), occurrences.next());
+        assertEquals(start.plusDays(6), occurrences.next());
+        assertFalse(occurrences.hasNext());
+        assertNull(task.nextOccurrence(start.plusDays(7)));
+
+        // Dates that the rule never produces cannot be skipped
+        assertThrows(BarryException.class, () -> task.skip(LocalDate.of(2025, 1, 2)));
+    }
+
+    @Test
+    public void testCodecRoundTripsEveryTaskType() {
+        LocalDateTime start = LocalDateTime.of(2026, 3, 2, 18, 30);
+        Task todo = new Task.TodoTask("caf\u00e9 run");
+        todo.mark();
+        todo.setCompletedOn(LocalDate.of(2026, 3, 1));
+        todo.getTags().add("home");
+        Task deadline = new Task.DeadlineTask("report", start.withSecond(15)); // seconds take the slow path
+        Task event = new Task.EventTask("trip", start, LocalDateTime.of(10000, 1, 1, 0, 0));
+        Task.RecurringTask recurring = new Task.RecurringTask("gym", start, 7, LocalDate.of(2026, 12, 31));
+        recurring.getExceptions().add(LocalDate.of(2026, 3, 9));
+        recurring.getExceptions().add(LocalDate.of(2026, 3, 16));
+        recurring.getTags().add("health");
+        recurring.getTags().add("weekly");
+        recurring.mark();
+        recurring.setCompletedOn(LocalDate.of(2026, 4, 1));
+        Task.RecurringTask endless = new Task.RecurringTask("water plants", start, 3, null);
+
+        for (Task task : List.of(todo, deadline, event, recurring, endless)) {
+            StringBuilder record = new StringBuilder();
+            assertTrue(TaskCodec.encode(task, record));
+            Task decoded = TaskCodec.decode(record.toString());
+            assertEquals(Arrays.asList(TaskTransfer.toFields(task)), Arrays.asList(TaskTransfer.toFields(decoded)),
+                    record.toString());
+        }
+
+        StringBuilder record = new StringBuilder();
+        TaskCodec.encode(recurring, record);
+        assertEquals("R | 1@2026-04-01 | gym | 2026-03-02T18:30 | 7 | 2026-12-31 | 2026-03-09,2026-03-16"
+                + " | health,weekly", record.toString());
+    }
+
+    @Test
+    public void testCodecReadsRecordsInTheOldFormat() {
+        // Records written before completion dates, tags and the digit-by-digit date writer
+        Task todo = TaskCodec.decode("T | 1 | read book");
+        assertEquals("[T][X] read book", todo.toString());
+        assertNull(todo.getCompletedOn());
+
+        Task deadline = TaskCodec.decode("D | 0 | submit report | 2024-11-01T19:23");
+        assertEquals(LocalDateTime.of(2024, 11, 1, 19, 23), ((Task.DeadlineTask) deadline).getBy());
+
+        Task.EventTask event = (Task.EventTask) TaskCodec.decode(
+                "E | 0 | project meeting | 2024-11-01T19:23 | 2024-11-01T20:23:30");
+        assertEquals(LocalDateTime.of(2024, 11, 1, 19, 23), event.getFrom());
+        assertEquals(LocalDateTime.of(2024, 11, 1, 20, 23, 30), event.getTo());
+
+        Task.RecurringTask recurring = (Task.RecurringTask) TaskCodec.decode(
+                "R | 0 | gym | 2025-01-06T18:00 | 7 | - | 2025-01-13 | health");
+        assertNull(recurring.getUntil());
+        assertEquals(List.of(LocalDate.of(2025, 1, 13)), List.copyOf(recurring.getExceptions()));
+        assertEquals(List.of("health"), List.copyOf(recurring.getTags()));
+
+        assertNull(TaskCodec.decode("X | 0 | unknown type"));
+        assertNull(TaskCodec.decode("T0 | read book"));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> TaskCodec.decode("D | 0 | no date"));
+    }
+
+    @Test
+    public void testTaskFileInTheOldFormatLoadsAndIsRewrittenWithChecksums() throws Exception {
+        Path taskFile = Files.createTempDirectory("barry").resolve("tasks.txt");
+        Files.writeString(taskFile, "T | 1 | read book\nD | 0 | submit report | 2099-11-01T19:23\n"
+                + "E | 0 | project meeting | 2099-11-01T19:23 | 2099-11-01T20:23\n");
+        Storage storage = new Storage(taskFile.toString());
+        TaskList tasks = new TaskList(storage.load());
+        assertEquals(3, tasks.size());
+        assertEquals("[D][ ] submit report (by: Nov 01 2099, 07:23 PM)", tasks.getTask(1).toString());
+
+        storage.save(tasks.getTasks());
+        List<String> lines = Files.readAllLines(taskFile);
+        assertTrue(lines.get(1).startsWith("D | 0 | submit report | 2099-11-01T19:23\t"), lines.get(1));
+        assertEquals(3, new TaskList(new Storage(taskFile.toString()).load()).size());
+    }
+}